@@ -79,9 +79,8 @@ public class CalendarEventDetailActivity extends Activity implements NoticeDialo
                 // Get the calendar event to update
                 mItem = mCalendarModel
                         .getCalendar()
-                        .ITEM_MAP
-                                .get(getIntent().getStringExtra(
-                                        CalendarEventDetailFragment.ARG_ITEM_ID));
+                        .getItem(getIntent().getStringExtra(
+                                CalendarEventDetailFragment.ARG_ITEM_ID));
 
                 // Pass the id of the event to the view fragment that will be opened
                 arguments.putString(
@@ -153,24 +152,15 @@ public class CalendarEventDetailActivity extends Activity implements NoticeDialo
     public void onDialogPositiveClick(Fragment dialog, O365Calendar_Event editedEvent,
             boolean newItemFlag)
     {
-        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
-        // post the event to server based on formAction
-        mDialog = new ProgressDialog(this);
-        if (newItemFlag)
-            mDialog.setTitle("Adding an event...");
-        else
-            mDialog.setTitle("Updating an event...");
-        mDialog.setMessage("Please wait.");
-        mDialog.setCancelable(true);
-        mDialog.setIndeterminate(true);
-        mDialog.show();
-
-        // Register callback with the model for notification of op complete
-        mCalendarModel.setEventOperationCompleteListener(this);
+        // The model applies the change to the cached events before posting it,
+        // so the list can be shown again without waiting for the service. The
+        // list activity is the model's operation listener, so the result of the
+        // post, or its rollback, is shown there after this activity has finished.
         if (newItemFlag)
             mCalendarModel.postCreatedEvent(this, editedEvent);
         else
             mCalendarModel.postUpdatedEvent(this, editedEvent);
+        this.finish();
     }
 
     @Override
@@ -187,7 +177,7 @@ public class CalendarEventDetailActivity extends Activity implements NoticeDialo
             public void run() {
                 setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
 
-                if (mDialog.isShowing())
+                if (mDialog != null && mDialog.isShowing())
                 {
                     mDialog.dismiss();
                 }
@@ -198,7 +188,8 @@ public class CalendarEventDetailActivity extends Activity implements NoticeDialo
                         .findFragmentById(R.id.calendarevent_list);
             }
         });
-        this.finish();
+        if (!isFinishing())
+            this.finish();
     }
 }
 // *********************************************************
@@ -57,17 +57,15 @@ public class CalendarEventDetailFragment extends Fragment
 
                 mItem = ((CalendarEventDetailActivity) getActivity()).mCalendarModel
                         .getCalendar()
-                        .ITEM_MAP
-                                .get(getArguments()
-                                        .getString(ARG_ITEM_ID));
+                        .getItem(getArguments()
+                                .getString(ARG_ITEM_ID));
 
             else
 
                 mItem = ((CalendarEventListActivity) getActivity()).mCalendarModel
                         .getCalendar()
-                        .ITEM_MAP
-                                .get(getArguments()
-                                        .getString(ARG_ITEM_ID));
+                        .getItem(getArguments()
+                                .getString(ARG_ITEM_ID));
 
         }
     }
@@ -96,19 +94,23 @@ public class CalendarEventDetailFragment extends Fragment
         ((EditText) rootView.findViewById(R.id.attendeesText))
                 .setText(mItem.getAttendees());
 
+        // Each call converts the stored epoch time, so convert once per field
+        Calendar startDateTime = mItem.getStartDateTime();
+        Calendar endDateTime = mItem.getEndDateTime();
+
         DatePicker startDatePicker = ((DatePicker) rootView.findViewById(R.id.StartDatePicker));
         startDatePicker.setEnabled(false);
         startDatePicker.init(
-                mItem.getStartDateTime().get(Calendar.YEAR)
-                , mItem.getStartDateTime().get(Calendar.MONTH)
-                , mItem.getStartDateTime().get(Calendar.DAY_OF_MONTH), null);
+                startDateTime.get(Calendar.YEAR)
+                , startDateTime.get(Calendar.MONTH)
+                , startDateTime.get(Calendar.DAY_OF_MONTH), null);
 
         DatePicker endDatePicker = ((DatePicker) rootView.findViewById(R.id.EndDatePicker));
         endDatePicker.setEnabled(false);
         endDatePicker.init(
-                mItem.getEndDateTime().get(Calendar.YEAR)
-                , mItem.getEndDateTime().get(Calendar.MONTH)
-                , mItem.getEndDateTime().get(Calendar.DAY_OF_MONTH), null);
+                endDateTime.get(Calendar.YEAR)
+                , endDateTime.get(Calendar.MONTH)
+                , endDateTime.get(Calendar.DAY_OF_MONTH), null);
 
         // Fill other calendar fields from calendar item
 
@@ -118,22 +120,21 @@ public class CalendarEventDetailFragment extends Fragment
 
         startClock.setEnabled(false);
         startClock.setCurrentHour(
-                mItem.getStartDateTime()
+                startDateTime
                         .get(Calendar.HOUR_OF_DAY));
 
         startClock.setCurrentMinute(
-                mItem.getStartDateTime()
+                startDateTime
                         .get(Calendar.MINUTE));
 
         TimePicker endClock = ((TimePicker) rootView.findViewById(R.id.endTimePicker));
         endClock.setEnabled(false);
         endClock.setCurrentHour(
-                mItem
-                        .getEndDateTime()
+                endDateTime
                         .get(Calendar.HOUR_OF_DAY));
 
         endClock.setCurrentMinute(
-                mItem.getEndDateTime()
+                endDateTime
                         .get(Calendar.MINUTE));
 
     }
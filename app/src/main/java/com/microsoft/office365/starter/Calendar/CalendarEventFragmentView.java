@@ -5,8 +5,7 @@
 package com.microsoft.office365.starter.Calendar;
 
 import java.util.Calendar;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
 import android.os.Bundle;
 import android.app.Activity;
 import android.app.Fragment;
@@ -20,7 +19,9 @@ import android.widget.ArrayAdapter;
 import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 import com.microsoft.office365.starter.R;
+import com.microsoft.office365.starter.helpers.EmailAddressValidator;
 import com.microsoft.office365.starter.interfaces.NoticeDialogListener;
 
 public class CalendarEventFragmentView extends Fragment implements View.OnClickListener,
@@ -59,11 +60,15 @@ public class CalendarEventFragmentView extends Fragment implements View.OnClickL
             {
                 mEventModel = mCalendarModel
                         .getCalendar()
-                        .ITEM_MAP
-                                .get(itemId);
+                        .getItem(itemId);
 
                 // Set event create mode flag to false.
                 mCreateMode = false;
+
+                // The view edits the cached event in place. Remember it as it is now so
+                // the model can roll the edit back if the service rejects it.
+                if (mEventModel != null)
+                    mEventModel.beginEdit();
             }
         }
         else
@@ -94,16 +99,15 @@ public class CalendarEventFragmentView extends Fragment implements View.OnClickL
             public void onClick(View v) {
                 // Update event model with strings from create fragment
                 saveEventDetails();
+                warnOfConflicts();
                 if (mCreateMode == false)
                     mListener.onDialogPositiveClick(CalendarEventFragmentView.this,
                             mEventModel, false);
 
                 else
-                {
-                    addItem(mEventModel);
+                    // postCreatedEvent adds the event to the cached events
                     mListener.onDialogPositiveClick(CalendarEventFragmentView.this,
                             mEventModel, true);
-                }
             }
         });
         rootView.findViewById(R.id.actionbar_cancel).setOnClickListener(new View.OnClickListener() {
@@ -148,18 +152,6 @@ public class CalendarEventFragmentView extends Fragment implements View.OnClickL
         }
     }
 
-    private void addItem(O365CalendarModel.O365Calendar_Event item) {
-        mCalendarModel
-                .getCalendar()
-                .ITEMS
-                .add(item);
-        mCalendarModel
-                .getCalendar()
-                .ITEM_MAP
-                .put(item.getID()
-                        , item);
-    }
-
     private void loadEventDetails()
     {
         if (mCreateMode == true)
@@ -319,17 +311,31 @@ public class CalendarEventFragmentView extends Fragment implements View.OnClickL
         }
     }
 
-    // Saves the user's choices in the event model before posting new event to Outlook service
-    private void saveEventDetails()
+    // Tells the user when the event overlaps busy time already on the cached calendar. The
+    // event is still posted; the warning only saves a trip to the calendar to find out.
+    private void warnOfConflicts()
     {
-        Pattern pattern;
-        Matcher matcher;
+        if (mCalendarModel.getCalendar().getItems().isEmpty())
+            return;
 
-        String EMAIL_PATTERN =
-                "^[_A-Za-z0-9-\\+]+(\\.[_A-Za-z0-9-]+)*@"
-                        + "[A-Za-z0-9-]+(\\.[A-Za-z0-9]+)*(\\.[A-Za-z]{2,})$";
+        List<O365CalendarModel.O365Calendar_Event> conflicts = mCalendarModel
+                .getFreeBusy()
+                .getConflicts(mEventModel);
+        if (conflicts.isEmpty())
+            return;
 
-        pattern = Pattern.compile(EMAIL_PATTERN);
+        String subject = conflicts.get(0).getSubject();
+        String warning = "This event conflicts with \""
+                + (subject == null ? "" : subject.trim()) + "\"";
+        if (conflicts.size() > 1)
+            warning += " and " + (conflicts.size() - 1) + " other event(s)";
+
+        Toast.makeText(getActivity(), warning, Toast.LENGTH_LONG).show();
+    }
+
+    // Saves the user's choices in the event model before posting new event to Outlook service
+    private void saveEventDetails()
+    {
         Editable subject = ((EditText) rootView.findViewById(R.id.subjectText))
                 .getText();
         mEventModel.updateSubject(subject.toString());
@@ -348,9 +354,9 @@ public class CalendarEventFragmentView extends Fragment implements View.OnClickL
         for (String attendeeString : attendeeArray)
         {
             // Validate the attendee string as an email
-            matcher = pattern.matcher(attendeeString.trim());
-            if (matcher.matches())
-                sBuilder.append(attendeeString.trim() + ";");
+            String trimmedAttendee = attendeeString.trim();
+            if (EmailAddressValidator.isEmailAddress(trimmedAttendee))
+                sBuilder.append(trimmedAttendee).append(';');
         }
         mEventModel.setAttendees(sBuilder.toString());
 
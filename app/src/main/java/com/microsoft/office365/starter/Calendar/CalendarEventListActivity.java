@@ -15,6 +15,7 @@ import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.os.Bundle;
+import android.text.format.DateFormat;
 import android.app.FragmentTransaction;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -30,6 +31,11 @@ import android.app.FragmentManager.OnBackStackChangedListener;
 
 import static com.microsoft.office365.starter.Calendar.O365CalendarModel.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
 /**
  * An activity representing a list of CalendarEvents. This activity has different presentations for
  * handset and tablet-size devices. On handsets, the activity presents a list of items, which when
@@ -63,7 +69,6 @@ public class CalendarEventListActivity extends Activity implements
     private android.app.FragmentManager mFragmentManager;
     private CalendarEventListActivity mParentActivity;
     private DeleteDialogFragment mDeleteFragment;
-    private int mEventPageNumber;
     private int mEventPageSize = 11;
 
     /** The m stored rotation. */
@@ -103,11 +108,12 @@ public class CalendarEventListActivity extends Activity implements
         CalendarEventListFragment calenderListFragment = (CalendarEventListFragment) getFragmentManager()
                 .findFragmentById(R.id.calendarevent_list);
 
-        // create new adapter and initialize with empty events collection
+        // create new adapter and initialize with empty events collection. The adapter
+        // keeps its own copy of the events, refreshed from the model on the UI thread.
         mListAdapter = new ArrayAdapter<O365CalendarModel.O365Calendar_Event>(
                 CalendarEventListActivity.this,
                 android.R.layout.simple_list_item_activated_1,
-                android.R.id.text1, calendarEvents.ITEMS);
+                android.R.id.text1, new ArrayList<O365CalendarModel.O365Calendar_Event>());
         calenderListFragment.setListAdapter(mListAdapter);
 
         calenderListFragment
@@ -116,18 +122,9 @@ public class CalendarEventListActivity extends Activity implements
                         .getColor(R.color.ListBackground));
 
        // calenderListFragment.getListView().SETSCR
-        if ((mApplication.getCalendarModel() != null) && !mApplication
-                .getCalendarModel()
-                .getCalendar()
-                .ITEMS.isEmpty())
-        {
-            CalendarEventListFragment calendarEventListFragment = (CalendarEventListFragment) getFragmentManager()
-                    .findFragmentById(R.id.calendarevent_list);
-            mListAdapter = new ArrayAdapter<O365CalendarModel.O365Calendar_Event>(this,
-                    android.R.layout.simple_list_item_activated_1,
-                    android.R.id.text1, mApplication.getCalendarModel().getCalendar().ITEMS);
-            calendarEventListFragment.setListAdapter(mListAdapter);
-        }
+        List<O365CalendarModel.O365Calendar_Event> cachedEvents = calendarEvents.getItems();
+        if (!cachedEvents.isEmpty())
+            showEvents(cachedEvents);
         else
             helperGetEventList();
 
@@ -150,6 +147,17 @@ public class CalendarEventListActivity extends Activity implements
     {
         super.onResume();
 
+        // Pick up time zone, locale and clock changes made while the activity was paused.
+        // Cached event labels are only formatted again if one of them changed.
+        O365CalendarModel.setDisplayTimeZone(TimeZone.getDefault());
+        O365CalendarModel.setLabelFormat(Locale.getDefault(), DateFormat.is24HourFormat(this));
+        showEvents(calendarEvents.getItems());
+
+        // The list reports the results of event changes, including the ones posted
+        // by a CalendarEventDetailActivity that has already finished, and the
+        // rollback of a change the service rejected
+        mCalendarModel.setEventOperationCompleteListener(this);
+
         // Reload the event list when the activity resumes
         // only if the list is not currently being loaded from the onCreated callback
         if (mDialog != null && !mDialog.isShowing())
@@ -248,7 +256,7 @@ public class CalendarEventListActivity extends Activity implements
             return;
         }
 
-        O365Calendar_Event event = calendarEvents.ITEM_MAP.get(this.selectedEventId);
+        O365Calendar_Event event = calendarEvents.getItem(this.selectedEventId);
         if (event == null)
         {
             Toast.makeText(CalendarEventListActivity.this, "Null event selected",
@@ -371,20 +379,17 @@ public class CalendarEventListActivity extends Activity implements
         if (dialog == mDeleteFragment)
         {
 
-            setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
             mParentActivity = this;
-            mDialog = new ProgressDialog(this);
-            mDialog.setTitle("Removing an event...");
-            mDialog.setMessage("Please wait.");
-            mDialog.setCancelable(true);
-            mDialog.setIndeterminate(true);
-            mDialog.show();
             mCalendarModel.setEventOperationCompleteListener(this);
             /*
       The dummy content this fragment is presenting.
      */
-            O365Calendar_Event mItem = mCalendarModel.getCalendar().ITEM_MAP.get(this.selectedEventId);
+            O365Calendar_Event mItem = mCalendarModel.getCalendar().getItem(this.selectedEventId);
+
+            // The model removes the event from the list before the service
+            // answers, and puts it back if the delete fails
             mCalendarModel.postDeletedEvent(this, mItem);
+            showEvents(calendarEvents.getItems());
         }
     }
 
@@ -494,11 +499,9 @@ public class CalendarEventListActivity extends Activity implements
         // when events are retrieved from Outlook service
         mCalendarModel.setEventAddedListener(this);
         
-        //Set the event page size to 11, and start paging at first event
-        mCalendarModel.getEventList(mEventPageSize, mEventPageNumber);
-
-        //TODO move this code to a "next page of events" button
-       // mEventPageNumber += mEventPageSize;
+        //Set the event page size to 11, and start paging at first event. Later pages
+        //are requested by the model as the list scrolls toward its end
+        mCalendarModel.getEventList(mEventPageSize, 0);
     }
 
     @Override
@@ -517,15 +520,16 @@ public class CalendarEventListActivity extends Activity implements
             public void run() {
                 CalendarEventListFragment calendarListFragment = (CalendarEventListFragment) getFragmentManager()
                         .findFragmentById(R.id.calendarevent_list);
+
+                showEvents(eventCollection.getEventCollection());
+
+                // A page appended while scrolling only needs the list refreshed.
+                // The selection, detail pane and progress dialog are untouched.
+                if (eventCollection.isAppendedPage())
+                    return;
+
                 if (!eventCollection.getEventCollection().isEmpty())
                 {
-                    // Not necessary to check the ArrayAdapter type because the type is always set
-                    // as cast in the
-                    // following code
-                    ((ArrayAdapter<O365CalendarModel.O365Calendar_Event>) calendarListFragment
-                            .getListAdapter())
-                            .notifyDataSetChanged();
-
                     calendarListFragment.getListView().setVisibility(View.VISIBLE);
                     calendarListFragment.setListAdapter(mListAdapter);
 
@@ -550,6 +554,16 @@ public class CalendarEventListActivity extends Activity implements
         });
     }
 
+    // Copies a snapshot of the model's events into the list adapter. Must be called on
+    // the UI thread.
+    private void showEvents(List<O365CalendarModel.O365Calendar_Event> events)
+    {
+        mListAdapter.setNotifyOnChange(false);
+        mListAdapter.clear();
+        mListAdapter.addAll(events);
+        mListAdapter.notifyDataSetChanged();
+    }
+
     // Callback is called by model when a CRUD operation is finished.
     @Override
     public void onOperationComplete(final OperationResult opResult) {
@@ -562,7 +576,7 @@ public class CalendarEventListActivity extends Activity implements
                 
                 //Close progress dialog and unlock device orientation changes
                 setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
-                if (mDialog.isShowing())
+                if (mDialog != null && mDialog.isShowing())
                     mDialog.dismiss();
 
 
@@ -572,10 +586,8 @@ public class CalendarEventListActivity extends Activity implements
                 CalendarEventListFragment calenderListFragment = (CalendarEventListFragment) getFragmentManager()
                         .findFragmentById(R.id.calendarevent_list);
 
-                //Notify the list adaptor that the underlying event list has changed
-                ((ArrayAdapter<O365CalendarModel.O365Calendar_Event>) calenderListFragment
-                        .getListAdapter())
-                        .notifyDataSetChanged();
+                //Show the events as they are after the operation
+                showEvents(calendarEvents.getItems());
 
                 //Update the detail fragment with the results of the operation
                 if (!opResult.getOperation().contains("Remove event"))
@@ -591,7 +603,11 @@ public class CalendarEventListActivity extends Activity implements
                         if (!resultId.contains("-1"))
                         {
                             CalendarEventListActivity.this.selectedEventId = resultId;
-                            actionGetSelectedItem();
+
+                            // In small screen layout, the detail fragments are not loaded
+                            // into the list activity
+                            if (mTwoPane)
+                                actionGetSelectedItem();
                         }
                     }
                 }
@@ -627,10 +643,6 @@ public class CalendarEventListActivity extends Activity implements
                     helperEnableActionButtons();
 
                 helperEnableActionMenuItems();
-
-                // figure out if user added an event and call this method if they did
-                if (opResult.getOperation().equals("Add event"))
-                    helperGetEventList();
             }
         });
     }
@@ -640,24 +652,16 @@ public class CalendarEventListActivity extends Activity implements
             boolean newItemFlag) {
         this.getFragmentManager()
                 .popBackStack();
-        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
-
-        mDialog = new ProgressDialog(this);
-        if (newItemFlag)
-            mDialog.setTitle("Adding an event...");
-        else
-            mDialog.setTitle("Updating an event...");
-        mDialog.setMessage("Please wait.");
-        mDialog.setCancelable(true);
-        mDialog.setIndeterminate(true);
-        mDialog.show();
 
-        // Register callback with the model for notification of op complete
+        // Register callback with the model for notification of op complete.
+        // The model applies the change to the cached events before posting it,
+        // so the list shows it right away, marked as saving.
         mCalendarModel.setEventOperationCompleteListener(this);
         if (newItemFlag)
             mCalendarModel.postCreatedEvent(this, editedEvent);
         else
             mCalendarModel.postUpdatedEvent(this, editedEvent);
+        showEvents(calendarEvents.getItems());
 
         // Close the update fragment and return to the previous view fragment
         this.getFragmentManager()
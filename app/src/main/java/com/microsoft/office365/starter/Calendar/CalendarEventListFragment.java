@@ -9,10 +9,12 @@ import android.app.ProgressDialog;
 import android.os.Bundle;
 import android.app.ListFragment;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.Toast;
 
+import com.microsoft.office365.starter.O365APIsStart_Application;
 import com.microsoft.office365.starter.interfaces.OnEventsAddedListener;
 
 /**
@@ -86,6 +88,25 @@ public class CalendarEventListFragment extends ListFragment implements OnEventsA
             setActivatedPosition(savedInstanceState
                     .getInt(STATE_ACTIVATED_POSITION));
 
+        // Let the model load the next page of events as the user scrolls
+        // toward the end of the list
+        getListView().setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem,
+                    int visibleItemCount, int totalItemCount) {
+                O365CalendarModel calendarModel = ((O365APIsStart_Application) getActivity()
+                        .getApplication()).getCalendarModel();
+                if (totalItemCount == 0 || calendarModel == null)
+                    return;
+
+                calendarModel.onEventListScrolled(
+                        firstVisibleItem, firstVisibleItem + visibleItemCount - 1);
+            }
+        });
     }
 
     @Override
@@ -151,12 +172,11 @@ public class CalendarEventListFragment extends ListFragment implements OnEventsA
         // Notify the active callbacks interface (the activity, if the
         // fragment is attached to one) that an item has been selected.
 
+        // The adapter holds the copy of the events the user is looking at
         if (getActivity() instanceof  CalendarEventListActivity)
             mCallbacks.onItemSelected(
-                    ((CalendarEventListActivity) getActivity())
-                            .calendarEvents
-                            .ITEMS
-                            .get(position)
+                    ((O365CalendarModel.O365Calendar_Event) getListAdapter()
+                            .getItem(position))
                             .getID());
     }
 
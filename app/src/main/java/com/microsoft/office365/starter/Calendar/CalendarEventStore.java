@@ -0,0 +1,710 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Calendar;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.microsoft.office365.starter.helpers.RecipientListCodec;
+import com.microsoft.outlookservices.BodyType;
+import com.microsoft.outlookservices.DayOfWeek;
+import com.microsoft.outlookservices.Event;
+import com.microsoft.outlookservices.FreeBusyStatus;
+import com.microsoft.outlookservices.ItemBody;
+import com.microsoft.outlookservices.Location;
+import com.microsoft.outlookservices.PatternedRecurrence;
+import com.microsoft.outlookservices.RecurrencePattern;
+import com.microsoft.outlookservices.RecurrencePatternType;
+import com.microsoft.outlookservices.RecurrenceRange;
+import com.microsoft.outlookservices.RecurrenceRangeType;
+import com.microsoft.outlookservices.WeekIndex;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * On-device store of the events of the user's calendars, so the calendar opens from disk before
+ * the service answers, and works offline.
+ * <p>
+ * Events are synced one window of one calendar at a time. A window is a [start, end) range of
+ * event times; a
+ * window without a start holds every event that starts before its end, which is how the paged
+ * event list is tracked. Each window keeps a watermark: every event in the window whose
+ * DateTimeLastModified is older than the watermark is already stored as it is on the service.
+ * A later sync of the window only downloads events modified since the watermark, and lists
+ * the Ids in the window to find the events that were deleted.
+ */
+public class CalendarEventStore extends SQLiteOpenHelper
+{
+    private static final String DATABASE_NAME = "calendar_store.db";
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String TABLE_EVENTS = "events";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_CALENDAR_ID = "calendar_id";
+    private static final String COLUMN_CHANGE_KEY = "change_key";
+    private static final String COLUMN_SUBJECT = "subject";
+    private static final String COLUMN_LOCATION = "location";
+    private static final String COLUMN_BODY = "body";
+    private static final String COLUMN_BODY_IS_HTML = "body_is_html";
+    private static final String COLUMN_ATTENDEES = "attendees";
+    private static final String COLUMN_START = "start_millis";
+    private static final String COLUMN_END = "end_millis";
+    private static final String COLUMN_LAST_MODIFIED = "last_modified";
+    private static final String COLUMN_SHOW_AS = "show_as";
+    private static final String COLUMN_IS_CANCELLED = "is_cancelled";
+    private static final String COLUMN_SERIES_MASTER_ID = "series_master_id";
+    private static final String COLUMN_RECURRENCE = "recurrence";
+    private static final String COLUMN_START_TIME_ZONE = "start_time_zone";
+
+    private static final String[] EVENT_COLUMNS = {
+            COLUMN_ID,
+            COLUMN_CHANGE_KEY,
+            COLUMN_SUBJECT,
+            COLUMN_LOCATION,
+            COLUMN_BODY,
+            COLUMN_BODY_IS_HTML,
+            COLUMN_ATTENDEES,
+            COLUMN_START,
+            COLUMN_END,
+            COLUMN_LAST_MODIFIED,
+            COLUMN_SHOW_AS,
+            COLUMN_IS_CANCELLED,
+            COLUMN_SERIES_MASTER_ID,
+            COLUMN_RECURRENCE,
+            COLUMN_START_TIME_ZONE
+    };
+
+    private static final String TABLE_WINDOWS = "sync_windows";
+    private static final String COLUMN_WINDOW_START = "window_start";
+    private static final String COLUMN_WINDOW_END = "window_end";
+    private static final String COLUMN_WATERMARK = "watermark";
+
+    // Separates the fields of a stored recurrence
+    private static final String RECURRENCE_SEPARATOR = "|";
+
+    private static CalendarEventStore sInstance;
+
+    /**
+     * A synced window and its watermark. A window without a start has a start of
+     * O365CalendarModel.NO_TIME.
+     */
+    public static final class SyncWindow
+    {
+        private final long mStartMillis;
+        private final long mEndMillis;
+        private final long mWatermark;
+
+        SyncWindow(long startMillis, long endMillis, long watermark)
+        {
+            mStartMillis = startMillis;
+            mEndMillis = endMillis;
+            mWatermark = watermark;
+        }
+
+        public long getStartMillis()
+        {
+            return mStartMillis;
+        }
+
+        public long getEndMillis()
+        {
+            return mEndMillis;
+        }
+
+        public long getWatermark()
+        {
+            return mWatermark;
+        }
+
+        // True when this window holds every event of [startMillis, endMillis)
+        public boolean covers(long startMillis, long endMillis)
+        {
+            return mStartMillis <= startMillis && mEndMillis >= endMillis;
+        }
+    }
+
+    // Returns the process wide store. The application context is used so the store
+    // never holds on to an activity.
+    public static synchronized CalendarEventStore getInstance(Context context)
+    {
+        if (sInstance == null)
+        {
+            sInstance = new CalendarEventStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private CalendarEventStore(Context context)
+    {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+        db.execSQL("CREATE TABLE " + TABLE_EVENTS + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_CALENDAR_ID + " TEXT NOT NULL, "
+                + COLUMN_CHANGE_KEY + " TEXT, "
+                + COLUMN_SUBJECT + " TEXT, "
+                + COLUMN_LOCATION + " TEXT, "
+                + COLUMN_BODY + " TEXT, "
+                + COLUMN_BODY_IS_HTML + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_ATTENDEES + " TEXT, "
+                + COLUMN_START + " INTEGER NOT NULL, "
+                + COLUMN_END + " INTEGER NOT NULL, "
+                + COLUMN_LAST_MODIFIED + " INTEGER NOT NULL, "
+                + COLUMN_SHOW_AS + " TEXT, "
+                + COLUMN_IS_CANCELLED + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_SERIES_MASTER_ID + " TEXT, "
+                + COLUMN_RECURRENCE + " TEXT, "
+                + COLUMN_START_TIME_ZONE + " TEXT)");
+        db.execSQL("CREATE INDEX events_start ON " + TABLE_EVENTS + " ("
+                + COLUMN_CALENDAR_ID + ", " + COLUMN_START + ")");
+        db.execSQL("CREATE TABLE " + TABLE_WINDOWS + " ("
+                + COLUMN_CALENDAR_ID + " TEXT NOT NULL, "
+                + COLUMN_WINDOW_START + " INTEGER NOT NULL, "
+                + COLUMN_WINDOW_END + " INTEGER NOT NULL, "
+                + COLUMN_WATERMARK + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_CALENDAR_ID + ", " + COLUMN_WINDOW_START + ", "
+                + COLUMN_WINDOW_END + "))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+        // The store only caches the service, so it is rebuilt by the next sync.
+        // Version 2 added the calendar of each event and window, version 3 the
+        // time zone of each event.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_EVENTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_WINDOWS);
+        onCreate(db);
+    }
+
+    // Returns every stored event of a calendar, ordered by start
+    public List<Event> readEvents(String calendarId)
+    {
+        List<Event> events = new ArrayList<Event>();
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_EVENTS
+                , EVENT_COLUMNS
+                , COLUMN_CALENDAR_ID + " = ?"
+                , new String[]{calendarId}
+                , null
+                , null
+                , COLUMN_START);
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                events.add(readEvent(cursor));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return events;
+    }
+
+    // Returns the stored events of a calendar that overlap [startMillis, endMillis), ordered
+    // by start
+    public List<Event> readEventsInWindow(String calendarId, long startMillis, long endMillis)
+    {
+        List<Event> events = new ArrayList<Event>();
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_EVENTS
+                , EVENT_COLUMNS
+                , COLUMN_CALENDAR_ID + " = ? AND " + COLUMN_END + " > ? AND "
+                        + COLUMN_START + " < ?"
+                , new String[]{calendarId, Long.toString(startMillis), Long.toString(endMillis)}
+                , null
+                , null
+                , COLUMN_START);
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                events.add(readEvent(cursor));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return events;
+    }
+
+    // Returns the ids of the stored events of a calendar that overlap [startMillis, endMillis).
+    // A start of NO_TIME matches every event that starts before endMillis.
+    public Set<String> readIdsInWindow(String calendarId, long startMillis, long endMillis)
+    {
+        Set<String> ids = new HashSet<String>();
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_EVENTS
+                , new String[]{COLUMN_ID}
+                , COLUMN_CALENDAR_ID + " = ? AND " + COLUMN_END + " > ? AND "
+                        + COLUMN_START + " < ?"
+                , new String[]{calendarId, Long.toString(startMillis), Long.toString(endMillis)}
+                , null
+                , null
+                , null);
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                ids.add(cursor.getString(0));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    // Returns the number of stored events of a calendar that start before endMillis
+    public int countEventsStartingBefore(String calendarId, long endMillis)
+    {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT COUNT(*) FROM " + TABLE_EVENTS + " WHERE " + COLUMN_CALENDAR_ID
+                        + " = ? AND " + COLUMN_START + " < ?"
+                , new String[]{calendarId, Long.toString(endMillis)});
+        try
+        {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    public void writeEvents(String calendarId, List<Event> events)
+    {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try
+        {
+            for (Event event : events)
+            {
+                if (event.getId() == null || event.getStart() == null || event.getEnd() == null)
+                {
+                    continue;
+                }
+
+                db.insertWithOnConflict(
+                        TABLE_EVENTS
+                        , null
+                        , toContentValues(calendarId, event)
+                        , SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    // Returns the calendars that have a synced event list
+    public List<String> readListCalendarIds()
+    {
+        List<String> calendarIds = new ArrayList<String>();
+        Cursor cursor = getReadableDatabase().query(
+                true
+                , TABLE_WINDOWS
+                , new String[]{COLUMN_CALENDAR_ID}
+                , COLUMN_WINDOW_START + " = ?"
+                , new String[]{Long.toString(O365CalendarModel.NO_TIME)}
+                , null
+                , null
+                , null
+                , null);
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                calendarIds.add(cursor.getString(0));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return calendarIds;
+    }
+
+    // Drops the events and windows of a calendar the user no longer has
+    public void deleteCalendar(String calendarId)
+    {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try
+        {
+            db.delete(TABLE_EVENTS, COLUMN_CALENDAR_ID + " = ?", new String[]{calendarId});
+            db.delete(TABLE_WINDOWS, COLUMN_CALENDAR_ID + " = ?", new String[]{calendarId});
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteEvents(Collection<String> ids)
+    {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try
+        {
+            for (String id : ids)
+            {
+                db.delete(TABLE_EVENTS, COLUMN_ID + " = ?", new String[]{id});
+            }
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    // Returns the stored window of a calendar that holds every event of
+    // [startMillis, endMillis), or null
+    public SyncWindow findWindow(String calendarId, long startMillis, long endMillis)
+    {
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_WINDOWS
+                , new String[]{COLUMN_WINDOW_START, COLUMN_WINDOW_END, COLUMN_WATERMARK}
+                , COLUMN_CALENDAR_ID + " = ? AND " + COLUMN_WINDOW_START + " <= ? AND "
+                        + COLUMN_WINDOW_END + " >= ?"
+                , new String[]{calendarId, Long.toString(startMillis), Long.toString(endMillis)}
+                , null
+                , null
+                , COLUMN_WINDOW_END + " - " + COLUMN_WINDOW_START
+                , "1");
+        try
+        {
+            if (!cursor.moveToFirst())
+            {
+                return null;
+            }
+
+            return new SyncWindow(cursor.getLong(0), cursor.getLong(1), cursor.getLong(2));
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    // Returns the window of the paged event list of a calendar, the window without a start
+    // that has the latest end, or null
+    public SyncWindow findListWindow(String calendarId)
+    {
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_WINDOWS
+                , new String[]{COLUMN_WINDOW_START, COLUMN_WINDOW_END, COLUMN_WATERMARK}
+                , COLUMN_CALENDAR_ID + " = ? AND " + COLUMN_WINDOW_START + " = ?"
+                , new String[]{calendarId, Long.toString(O365CalendarModel.NO_TIME)}
+                , null
+                , null
+                , COLUMN_WINDOW_END + " DESC"
+                , "1");
+        try
+        {
+            if (!cursor.moveToFirst())
+            {
+                return null;
+            }
+
+            return new SyncWindow(cursor.getLong(0), cursor.getLong(1), cursor.getLong(2));
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    // Records that [startMillis, endMillis) of a calendar is synced up to watermark. Windows
+    // of the calendar that the new window holds completely are dropped.
+    public void writeWindow(String calendarId, long startMillis, long endMillis, long watermark)
+    {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try
+        {
+            db.delete(
+                    TABLE_WINDOWS
+                    , COLUMN_CALENDAR_ID + " = ? AND " + COLUMN_WINDOW_START + " >= ? AND "
+                            + COLUMN_WINDOW_END + " <= ?"
+                    , new String[]{calendarId, Long.toString(startMillis),
+                            Long.toString(endMillis)});
+
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_CALENDAR_ID, calendarId);
+            values.put(COLUMN_WINDOW_START, startMillis);
+            values.put(COLUMN_WINDOW_END, endMillis);
+            values.put(COLUMN_WATERMARK, watermark);
+            db.insertWithOnConflict(TABLE_WINDOWS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    // Returns the DateTimeLastModified of an event in epoch millis, or 0 when unknown
+    public static long getLastModified(Event event)
+    {
+        Calendar lastModified = event.getDateTimeLastModified();
+        return lastModified == null ? 0 : lastModified.getTimeInMillis();
+    }
+
+    private static ContentValues toContentValues(String calendarId, Event event)
+    {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ID, event.getId());
+        values.put(COLUMN_CALENDAR_ID, calendarId);
+        values.put(COLUMN_CHANGE_KEY, event.getChangeKey());
+        values.put(COLUMN_SUBJECT, event.getSubject());
+
+        Location location = event.getLocation();
+        values.put(COLUMN_LOCATION, location == null ? null : location.getDisplayName());
+
+        ItemBody body = event.getBody();
+        values.put(COLUMN_BODY, body == null ? null : body.getContent());
+        values.put(COLUMN_BODY_IS_HTML,
+                body != null && body.getContentType() == BodyType.HTML ? 1 : 0);
+
+        values.put(COLUMN_ATTENDEES, RecipientListCodec.format(event.getAttendees()));
+        values.put(COLUMN_START, event.getStart().getTimeInMillis());
+        values.put(COLUMN_END, event.getEnd().getTimeInMillis());
+        values.put(COLUMN_LAST_MODIFIED, getLastModified(event));
+
+        FreeBusyStatus showAs = event.getShowAs();
+        values.put(COLUMN_SHOW_AS, showAs == null ? null : showAs.name());
+
+        Boolean isCancelled = event.getIsCancelled();
+        values.put(COLUMN_IS_CANCELLED, isCancelled != null && isCancelled ? 1 : 0);
+        values.put(COLUMN_SERIES_MASTER_ID, event.getSeriesMasterId());
+        values.put(COLUMN_RECURRENCE, formatRecurrence(event.getRecurrence()));
+        values.put(COLUMN_START_TIME_ZONE, event.getStartTimeZone());
+        return values;
+    }
+
+    // Rebuilds an Event from a row read with EVENT_COLUMNS
+    private static Event readEvent(Cursor cursor)
+    {
+        Event event = new Event();
+        event.setId(cursor.getString(0));
+        event.setChangeKey(cursor.getString(1));
+        event.setSubject(cursor.getString(2));
+
+        if (!cursor.isNull(3))
+        {
+            Location location = new Location();
+            location.setDisplayName(cursor.getString(3));
+            event.setLocation(location);
+        }
+        if (!cursor.isNull(4))
+        {
+            ItemBody body = new ItemBody();
+            body.setContent(cursor.getString(4));
+            body.setContentType(cursor.getInt(5) != 0 ? BodyType.HTML : BodyType.Text);
+            event.setBody(body);
+        }
+
+        event.setAttendees(RecipientListCodec.parseAttendees(cursor.getString(6)));
+        event.setStart(toCalendar(cursor.getLong(7)));
+        event.setEnd(toCalendar(cursor.getLong(8)));
+        event.setDateTimeLastModified(toCalendar(cursor.getLong(9)));
+
+        if (!cursor.isNull(10))
+        {
+            event.setShowAs(FreeBusyStatus.valueOf(cursor.getString(10)));
+        }
+        event.setIsCancelled(cursor.getInt(11) != 0);
+        event.setSeriesMasterId(cursor.getString(12));
+        event.setRecurrence(parseRecurrence(cursor.getString(13)));
+        event.setStartTimeZone(cursor.getString(14));
+        return event;
+    }
+
+    // Writes a recurrence as its fields separated by RECURRENCE_SEPARATOR, or null
+    private static String formatRecurrence(PatternedRecurrence recurrence)
+    {
+        if (recurrence == null || recurrence.getPattern() == null || recurrence.getRange() == null)
+        {
+            return null;
+        }
+
+        RecurrencePattern pattern = recurrence.getPattern();
+        RecurrenceRange range = recurrence.getRange();
+
+        int daysOfWeek = 0;
+        if (pattern.getDaysOfWeek() != null)
+        {
+            for (DayOfWeek day : pattern.getDaysOfWeek())
+            {
+                daysOfWeek |= 1 << day.ordinal();
+            }
+        }
+
+        return nameOf(pattern.getType())
+                + RECURRENCE_SEPARATOR + pattern.getInterval()
+                + RECURRENCE_SEPARATOR + pattern.getMonth()
+                + RECURRENCE_SEPARATOR + pattern.getDayOfMonth()
+                + RECURRENCE_SEPARATOR + daysOfWeek
+                + RECURRENCE_SEPARATOR + nameOf(pattern.getFirstDayOfWeek())
+                + RECURRENCE_SEPARATOR + nameOf(pattern.getIndex())
+                + RECURRENCE_SEPARATOR + nameOf(range.getType())
+                + RECURRENCE_SEPARATOR + dateOf(range.getStartDate())
+                + RECURRENCE_SEPARATOR + dateOf(range.getEndDate())
+                + RECURRENCE_SEPARATOR + range.getNumberOfOccurrences();
+    }
+
+    private static PatternedRecurrence parseRecurrence(String stored)
+    {
+        if (stored == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            String[] fields = stored.split("\\" + RECURRENCE_SEPARATOR, -1);
+
+            RecurrencePattern pattern = new RecurrencePattern();
+            if (fields[0].length() > 0)
+            {
+                pattern.setType(RecurrencePatternType.valueOf(fields[0]));
+            }
+            pattern.setInterval(Integer.parseInt(fields[1]));
+            pattern.setMonth(Integer.parseInt(fields[2]));
+            pattern.setDayOfMonth(Integer.parseInt(fields[3]));
+
+            int daysOfWeek = Integer.parseInt(fields[4]);
+            List<DayOfWeek> days = new ArrayList<DayOfWeek>();
+            for (DayOfWeek day : DayOfWeek.values())
+            {
+                if ((daysOfWeek & (1 << day.ordinal())) != 0)
+                {
+                    days.add(day);
+                }
+            }
+            pattern.setDaysOfWeek(days);
+            if (fields[5].length() > 0)
+            {
+                pattern.setFirstDayOfWeek(DayOfWeek.valueOf(fields[5]));
+            }
+            if (fields[6].length() > 0)
+            {
+                pattern.setIndex(WeekIndex.valueOf(fields[6]));
+            }
+
+            RecurrenceRange range = new RecurrenceRange();
+            if (fields[7].length() > 0)
+            {
+                range.setType(RecurrenceRangeType.valueOf(fields[7]));
+            }
+            range.setStartDate(parseDate(fields[8]));
+            range.setEndDate(parseDate(fields[9]));
+            range.setNumberOfOccurrences(Integer.parseInt(fields[10]));
+
+            PatternedRecurrence recurrence = new PatternedRecurrence();
+            recurrence.setPattern(pattern);
+            recurrence.setRange(range);
+            return recurrence;
+        }
+        catch (RuntimeException ex)
+        {
+            Log.e("Unreadable stored recurrence: " + ex.getMessage(),
+                    "CalendarEventStore.parseRecurrence");
+            return null;
+        }
+    }
+
+    private static String nameOf(Enum<?> value)
+    {
+        return value == null ? "" : value.name();
+    }
+
+    // Range dates are plain dates, stored as yyyy-m-d so no time zone can move them
+    private static String dateOf(Calendar date)
+    {
+        if (date == null)
+        {
+            return "";
+        }
+
+        return date.get(Calendar.YEAR)
+                + "-" + date.get(Calendar.MONTH)
+                + "-" + date.get(Calendar.DAY_OF_MONTH);
+    }
+
+    private static Calendar parseDate(String date)
+    {
+        if (date.length() == 0)
+        {
+            return null;
+        }
+
+        String[] parts = date.split("-");
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                Integer.parseInt(parts[2]));
+        return calendar;
+    }
+
+    private static Calendar toCalendar(long millis)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
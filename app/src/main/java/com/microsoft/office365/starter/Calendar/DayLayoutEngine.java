@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Calendar;
+
+import com.microsoft.office365.starter.Calendar.O365CalendarModel.CalendarEvents;
+import com.microsoft.office365.starter.Calendar.O365CalendarModel.O365Calendar_Event;
+import com.microsoft.office365.starter.Calendar.RecurrenceExpander.Occurrence;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+
+/**
+ * Lays out the events of a day for a day or week grid, where events that overlap are drawn side
+ * by side.
+ *
+ * The occurrences of the day are swept once in start order. The sweep splits them into
+ * clusters, runs of events that overlap one another directly or through other events, and gives
+ * each event the lowest column that is free when it starts. Columns are freed through a heap of
+ * the running events ordered by end, so a day of n events is laid out in O(n log n). Every event
+ * of a cluster is as wide as the grid divided by the number of columns the cluster needed.
+ *
+ * Layouts are kept for the days that were asked for last. CalendarEvents reports every event it
+ * adds, removes or moves, and only the clusters of the cached days that the event leaves or
+ * joins are swept again. A change to a recurring series drops the cached days instead, since
+ * any number of its occurrences may have moved.
+ */
+public class DayLayoutEngine
+{
+    // Number of days whose layout is kept
+    private static final int MAX_CACHED_DAYS = 14;
+
+    // Events shorter than this are laid out as if they lasted this long, so an event that is
+    // too short to read still gets a column of its own rather than being drawn over
+    private static final long MIN_BOX_MILLIS = 15 * 60 * 1000;
+
+    private final CalendarEvents mCalendarEvents;
+
+    // Layouts by the start of their day, least recently used first
+    private final Map<Long, DayLayout> mDays =
+            new LinkedHashMap<Long, DayLayout>(MAX_CACHED_DAYS, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, DayLayout> eldest)
+        {
+            return size() > MAX_CACHED_DAYS;
+        }
+    };
+
+    // The zone the cached days were cut in
+    private String mTimeZoneId;
+
+    public DayLayoutEngine(CalendarEvents calendarEvents)
+    {
+        mCalendarEvents = calendarEvents;
+    }
+
+    /**
+     * Where an occurrence is drawn in the grid of its day. The start and end are clipped to the
+     * day. The left edge and the width are fractions of the width of the day.
+     */
+    public static final class EventBox
+    {
+        private final Occurrence mOccurrence;
+        private final long mStartMillis;
+        private final long mEndMillis;
+
+        // The end used for overlap, at least MIN_BOX_MILLIS after the start
+        private final long mLayoutEndMillis;
+        private int mColumn;
+        private int mColumnCount;
+
+        EventBox(Occurrence occurrence, long dayStartMillis, long dayEndMillis)
+        {
+            mOccurrence = occurrence;
+            mStartMillis = Math.max(occurrence.getStartMillis(), dayStartMillis);
+            mEndMillis = Math.min(occurrence.getEndMillis(), dayEndMillis);
+            mLayoutEndMillis = Math.max(mEndMillis, mStartMillis + MIN_BOX_MILLIS);
+        }
+
+        public Occurrence getOccurrence()
+        {
+            return mOccurrence;
+        }
+
+        public O365Calendar_Event getEvent()
+        {
+            return mOccurrence.getEvent();
+        }
+
+        public long getStartMillis()
+        {
+            return mStartMillis;
+        }
+
+        public long getEndMillis()
+        {
+            return mEndMillis;
+        }
+
+        public int getColumn()
+        {
+            return mColumn;
+        }
+
+        public int getColumnCount()
+        {
+            return mColumnCount;
+        }
+
+        public float getLeft()
+        {
+            return (float) mColumn / mColumnCount;
+        }
+
+        public float getWidth()
+        {
+            return 1f / mColumnCount;
+        }
+    }
+
+    // A maximal run of events that overlap one another directly or through other events.
+    // Clusters do not overlap, so a change only affects the clusters its event touches.
+    private static final class Cluster
+    {
+        private final List<EventBox> mBoxes = new ArrayList<EventBox>();
+        private final long mStartMillis;
+        private long mEndMillis;
+
+        Cluster(long startMillis)
+        {
+            mStartMillis = startMillis;
+            mEndMillis = startMillis;
+        }
+
+        boolean overlaps(long startMillis, long endMillis)
+        {
+            return mStartMillis < endMillis && mEndMillis > startMillis;
+        }
+
+        boolean contains(O365Calendar_Event event)
+        {
+            for (EventBox box : mBoxes)
+            {
+                if (box.getEvent() == event)
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The layout of one day
+     */
+    public static final class DayLayout
+    {
+        private final long mStartMillis;
+        private final long mEndMillis;
+
+        // Ordered by start
+        private final List<Cluster> mClusters;
+
+        // Every box ordered by start, built when first asked for after a change
+        private List<EventBox> mBoxes;
+
+        DayLayout(long startMillis, long endMillis, List<Cluster> clusters)
+        {
+            mStartMillis = startMillis;
+            mEndMillis = endMillis;
+            mClusters = clusters;
+        }
+
+        public long getStartMillis()
+        {
+            return mStartMillis;
+        }
+
+        public long getEndMillis()
+        {
+            return mEndMillis;
+        }
+
+        // Returns the boxes of the day ordered by start
+        public synchronized List<EventBox> getBoxes()
+        {
+            if (mBoxes == null)
+            {
+                List<EventBox> boxes = new ArrayList<EventBox>();
+                for (Cluster cluster : mClusters)
+                    boxes.addAll(cluster.mBoxes);
+                mBoxes = Collections.unmodifiableList(boxes);
+            }
+            return mBoxes;
+        }
+
+        // Takes event out of the day and puts newBox in, if it is not null, sweeping only
+        // the clusters the old and the new box touch
+        synchronized void replace(O365Calendar_Event event, EventBox newBox)
+        {
+            List<EventBox> boxes = new ArrayList<EventBox>();
+            boolean hadEvent = false;
+            for (int i = mClusters.size() - 1; i >= 0; i--)
+            {
+                Cluster cluster = mClusters.get(i);
+                boolean hasEvent = cluster.contains(event);
+                if (!hasEvent && (newBox == null
+                        || !cluster.overlaps(newBox.mStartMillis, newBox.mLayoutEndMillis)))
+                    continue;
+
+                for (EventBox box : cluster.mBoxes)
+                {
+                    if (box.getEvent() != event)
+                        boxes.add(box);
+                }
+                mClusters.remove(i);
+                hadEvent |= hasEvent;
+            }
+
+            if (newBox == null && !hadEvent)
+                return;
+            if (newBox != null)
+                boxes.add(newBox);
+
+            // The swept clusters never overlap the untouched ones, so sorting by start puts
+            // them back in place. The list is almost in order, which the sort takes in one pass.
+            Collections.sort(boxes, BY_START);
+            mClusters.addAll(sweep(boxes));
+            Collections.sort(mClusters, CLUSTERS_BY_START);
+            mBoxes = null;
+        }
+    }
+
+    // Returns the layout of the day that holds timeMillis, in the display time zone
+    public synchronized DayLayout getDayLayout(long timeMillis)
+    {
+        TimeZone timeZone = O365CalendarModel.getDisplayTimeZone();
+        if (!timeZone.getID().equals(mTimeZoneId))
+        {
+            mDays.clear();
+            mTimeZoneId = timeZone.getID();
+        }
+
+        Calendar day = new GregorianCalendar(timeZone);
+        day.setTimeInMillis(timeMillis);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        long dayStart = day.getTimeInMillis();
+
+        DayLayout layout = mDays.get(dayStart);
+        if (layout != null)
+            return layout;
+
+        // Not always 24 hours, because of daylight saving time
+        day.add(Calendar.DAY_OF_MONTH, 1);
+        long dayEnd = day.getTimeInMillis();
+
+        List<EventBox> boxes = new ArrayList<EventBox>();
+        for (Occurrence occurrence : mCalendarEvents.getOccurrencesInRange(dayStart, dayEnd))
+        {
+            if (isShown(occurrence.getEvent()))
+                boxes.add(new EventBox(occurrence, dayStart, dayEnd));
+        }
+
+        // The occurrences come ordered by start. Longer events go first among those that
+        // start together, so they get the leftmost column.
+        Collections.sort(boxes, BY_START);
+        layout = new DayLayout(dayStart, dayEnd, sweep(boxes));
+        mDays.put(dayStart, layout);
+        return layout;
+    }
+
+    // Called by CalendarEvents after an event was added, removed, or had its times changed
+    public synchronized void onEventChanged(O365Calendar_Event event)
+    {
+        if (mDays.isEmpty())
+            return;
+
+        // A change to a series can move all of its occurrences, and an instance read from the
+        // service decides whether its series is expanded at all
+        if (RecurrenceExpander.isRecurring(event) || event.getEvent().getSeriesMasterId() != null)
+        {
+            mDays.clear();
+            return;
+        }
+
+        boolean isCached = mCalendarEvents.getItem(event.getID()) == event
+                && isShown(event);
+        for (DayLayout layout : mDays.values())
+        {
+            EventBox newBox = null;
+            if (isCached && event.getStartMillis() < layout.mEndMillis
+                    && event.getEndMillis() > layout.mStartMillis)
+            {
+                newBox = new EventBox(new Occurrence(
+                        event, event.getStartMillis(), event.getEndMillis(), false),
+                        layout.mStartMillis, layout.mEndMillis);
+            }
+            layout.replace(event, newBox);
+        }
+    }
+
+    // Drops every cached layout
+    public synchronized void invalidate()
+    {
+        mDays.clear();
+    }
+
+    // Splits boxes ordered by start into clusters and assigns their columns
+    private static List<Cluster> sweep(List<EventBox> boxes)
+    {
+        List<Cluster> clusters = new ArrayList<Cluster>();
+        PriorityQueue<EventBox> running = new PriorityQueue<EventBox>(16, BY_LAYOUT_END);
+        PriorityQueue<Integer> freeColumns = new PriorityQueue<Integer>();
+        Cluster cluster = null;
+        int columnCount = 0;
+
+        for (EventBox box : boxes)
+        {
+            // Nothing still running reaches this box, so the cluster is complete
+            if (cluster != null && box.mStartMillis >= cluster.mEndMillis)
+            {
+                finishCluster(cluster, columnCount);
+                clusters.add(cluster);
+                cluster = null;
+                running.clear();
+                freeColumns.clear();
+                columnCount = 0;
+            }
+            if (cluster == null)
+                cluster = new Cluster(box.mStartMillis);
+
+            // Free the columns of the boxes that ended at or before this one starts
+            while (!running.isEmpty() && running.peek().mLayoutEndMillis <= box.mStartMillis)
+                freeColumns.add(running.poll().mColumn);
+
+            box.mColumn = freeColumns.isEmpty() ? columnCount++ : freeColumns.poll();
+            running.add(box);
+            cluster.mBoxes.add(box);
+            cluster.mEndMillis = Math.max(cluster.mEndMillis, box.mLayoutEndMillis);
+        }
+        if (cluster != null)
+        {
+            finishCluster(cluster, columnCount);
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+
+    private static void finishCluster(Cluster cluster, int columnCount)
+    {
+        for (EventBox box : cluster.mBoxes)
+            box.mColumnCount = columnCount;
+    }
+
+    // Cancelled events are not drawn
+    private static boolean isShown(O365Calendar_Event event)
+    {
+        if (!event.hasTimes())
+            return false;
+
+        Boolean isCancelled = event.getEvent().getIsCancelled();
+        return isCancelled == null || !isCancelled;
+    }
+
+    private static final Comparator<EventBox> BY_START = new Comparator<EventBox>()
+    {
+        @Override
+        public int compare(EventBox lhs, EventBox rhs)
+        {
+            if (lhs.mStartMillis != rhs.mStartMillis)
+                return lhs.mStartMillis < rhs.mStartMillis ? -1 : 1;
+            if (lhs.mLayoutEndMillis != rhs.mLayoutEndMillis)
+                return lhs.mLayoutEndMillis > rhs.mLayoutEndMillis ? -1 : 1;
+
+            // Events with the same times keep their columns from one layout to the next
+            String lhsId = lhs.getEvent().getID();
+            String rhsId = rhs.getEvent().getID();
+            return lhsId == null || rhsId == null ? 0 : lhsId.compareTo(rhsId);
+        }
+    };
+
+    private static final Comparator<Cluster> CLUSTERS_BY_START = new Comparator<Cluster>()
+    {
+        @Override
+        public int compare(Cluster lhs, Cluster rhs)
+        {
+            long lhsStart = lhs.mStartMillis;
+            long rhsStart = rhs.mStartMillis;
+            return lhsStart < rhsStart ? -1 : (lhsStart == rhsStart ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<EventBox> BY_LAYOUT_END = new Comparator<EventBox>()
+    {
+        @Override
+        public int compare(EventBox lhs, EventBox rhs)
+        {
+            long lhsEnd = lhs.mLayoutEndMillis;
+            long rhsEnd = rhs.mLayoutEndMillis;
+            return lhsEnd < rhsEnd ? -1 : (lhsEnd == rhsEnd ? 0 : 1);
+        }
+    };
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Calendar;
+
+import com.microsoft.office365.starter.Calendar.O365CalendarModel.O365Calendar_Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An interval index over the cached calendar events. The events are kept in an array sorted by
+ * start time, and that array is read as an implicit balanced tree: the middle element of every
+ * range is the node and the two halves are its subtrees. Each node also stores the latest end
+ * time in its subtree, so an overlap query skips any subtree that ends before the window starts,
+ * and stops at the first node that starts after the window ends. A query costs O(log n + k) for
+ * k matches, whatever the number of cached events.
+ *
+ * Adding or removing events only marks the tree as stale. The next query rebuilds it once, so a
+ * page of events costs a single sort instead of one per event.
+ */
+public class EventIntervalTree
+{
+    private static final O365Calendar_Event[] NO_EVENTS = new O365Calendar_Event[0];
+
+    private final Set<O365Calendar_Event> mEvents = new HashSet<O365Calendar_Event>();
+    private boolean mStale;
+
+    // The sorted tree. Start and end times are copied when the tree is built, so an event that
+    // is edited in place cannot unsort it before reindex is called.
+    private O365Calendar_Event[] mNodes = NO_EVENTS;
+    private long[] mStarts = new long[0];
+    private long[] mEnds = new long[0];
+    private long[] mMaxEnds = new long[0];
+
+    public synchronized void add(O365Calendar_Event event)
+    {
+        if (event != null && mEvents.add(event))
+            mStale = true;
+    }
+
+    public synchronized void addAll(List<O365Calendar_Event> events)
+    {
+        for (O365Calendar_Event event : events)
+            add(event);
+    }
+
+    public synchronized void remove(O365Calendar_Event event)
+    {
+        if (mEvents.remove(event))
+            mStale = true;
+    }
+
+    // Call after the start or end of an indexed event has changed
+    public synchronized void reindex(O365Calendar_Event event)
+    {
+        if (mEvents.contains(event))
+            mStale = true;
+    }
+
+    public synchronized void clear()
+    {
+        mEvents.clear();
+        mStale = true;
+    }
+
+    public synchronized int size()
+    {
+        return mEvents.size();
+    }
+
+    // Returns the events that overlap the window [startMillis, endMillis), ordered by start.
+    public synchronized List<O365Calendar_Event> getOverlapping(long startMillis, long endMillis)
+    {
+        List<O365Calendar_Event> matches = new ArrayList<O365Calendar_Event>();
+        if (endMillis <= startMillis)
+            return matches;
+
+        if (mStale)
+            rebuild();
+
+        collect(0, mNodes.length, startMillis, endMillis, matches);
+        return matches;
+    }
+
+    // Returns the events that are in progress at the given time, ordered by start.
+    public synchronized List<O365Calendar_Event> getEventsAt(long timeMillis)
+    {
+        return getOverlapping(timeMillis, timeMillis + 1);
+    }
+
+    // Visits the subtree stored in [low, high) in order, so matches come out sorted by start
+    private void collect(int low, int high, long startMillis, long endMillis,
+            List<O365Calendar_Event> matches)
+    {
+        while (low < high)
+        {
+            int node = (low + high) >>> 1;
+
+            // Nothing in this subtree ends after the window starts
+            if (mMaxEnds[node] <= startMillis)
+                return;
+
+            collect(low, node, startMillis, endMillis, matches);
+
+            // This node and everything to its right start at or after the window ends
+            if (mStarts[node] >= endMillis)
+                return;
+
+            if (mEnds[node] > startMillis)
+                matches.add(mNodes[node]);
+
+            low = node + 1;
+        }
+    }
+
+    private void rebuild()
+    {
+        final List<O365Calendar_Event> events = new ArrayList<O365Calendar_Event>(mEvents.size());
+        final List<long[]> spans = new ArrayList<long[]>(mEvents.size());
+        for (O365Calendar_Event event : mEvents)
+        {
+            if (!event.hasTimes())
+                continue;
+
+            long startMillis = event.getStartMillis();
+            // A zero length event still occupies its start instant
+            long endMillis = Math.max(event.getEndMillis(), startMillis + 1);
+            events.add(event);
+            spans.add(new long[] { startMillis, endMillis });
+        }
+
+        Integer[] order = new Integer[events.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer lhs, Integer rhs)
+            {
+                long lhsStart = spans.get(lhs)[0];
+                long rhsStart = spans.get(rhs)[0];
+                if (lhsStart != rhsStart)
+                    return lhsStart < rhsStart ? -1 : 1;
+                long lhsEnd = spans.get(lhs)[1];
+                long rhsEnd = spans.get(rhs)[1];
+                return lhsEnd < rhsEnd ? -1 : (lhsEnd == rhsEnd ? 0 : 1);
+            }
+        });
+
+        int count = order.length;
+        mNodes = new O365Calendar_Event[count];
+        mStarts = new long[count];
+        mEnds = new long[count];
+        mMaxEnds = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            mNodes[i] = events.get(order[i]);
+            mStarts[i] = spans.get(order[i])[0];
+            mEnds[i] = spans.get(order[i])[1];
+        }
+        computeMaxEnd(0, count);
+        mStale = false;
+    }
+
+    // Fills mMaxEnds for the subtree stored in [low, high) and returns its value
+    private long computeMaxEnd(int low, int high)
+    {
+        if (low >= high)
+            return Long.MIN_VALUE;
+
+        int node = (low + high) >>> 1;
+        long maxEnd = Math.max(mEnds[node],
+                Math.max(computeMaxEnd(low, node), computeMaxEnd(node + 1, high)));
+        mMaxEnds[node] = maxEnd;
+        return maxEnd;
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Calendar;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats the label an event shows in the event list: its start date and time followed by its
+ * subject. One instance exists per combination of locale, 12 or 24 hour clock and time zone.
+ * O365CalendarModel replaces the instance only when one of those settings changes, so an event
+ * can tell that its cached label is still good by comparing references.
+ */
+public final class EventLabelFormat
+{
+    private final Locale mLocale;
+    private final boolean mIs24Hour;
+    private final TimeZone mTimeZone;
+
+    // Formatters are not thread safe and are only used under the instance lock
+    private final DateFormat mDateFormat;
+    private final DateFormat mTimeFormat;
+    private final Date mDate = new Date();
+    private final StringBuilder mBuilder = new StringBuilder();
+
+    public EventLabelFormat(Locale locale, boolean is24Hour, TimeZone timeZone)
+    {
+        mLocale = locale;
+        mIs24Hour = is24Hour;
+        mTimeZone = timeZone;
+
+        mDateFormat = DateFormat.getDateInstance(DateFormat.SHORT, locale);
+        mDateFormat.setTimeZone(timeZone);
+        mTimeFormat = new SimpleDateFormat(is24Hour ? "H:mm" : "h:mm a", locale);
+        mTimeFormat.setTimeZone(timeZone);
+    }
+
+    public Locale getLocale()
+    {
+        return mLocale;
+    }
+
+    public boolean is24Hour()
+    {
+        return mIs24Hour;
+    }
+
+    public TimeZone getTimeZone()
+    {
+        return mTimeZone;
+    }
+
+    // True when this format already matches the given settings
+    public boolean matches(Locale locale, boolean is24Hour, TimeZone timeZone)
+    {
+        return mLocale.equals(locale)
+                && mIs24Hour == is24Hour
+                && mTimeZone.getID().equals(timeZone.getID());
+    }
+
+    // Returns the list label of an event. An event without a start shows only its subject.
+    public synchronized String format(long startMillis, String subject)
+    {
+        if (subject == null)
+            subject = "";
+        if (startMillis == O365CalendarModel.NO_TIME)
+            return subject;
+
+        mDate.setTime(startMillis);
+        mBuilder.setLength(0);
+        mBuilder.append(mDateFormat.format(mDate))
+                .append(' ')
+                .append(mTimeFormat.format(mDate))
+                .append(' ')
+                .append(subject);
+        return mBuilder.toString();
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
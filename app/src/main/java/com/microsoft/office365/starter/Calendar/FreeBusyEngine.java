@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Calendar;
+
+import com.microsoft.office365.starter.Calendar.O365CalendarModel.CalendarEvents;
+import com.microsoft.office365.starter.Calendar.O365CalendarModel.O365Calendar_Event;
+import com.microsoft.office365.starter.Calendar.RecurrenceExpander.Occurrence;
+import com.microsoft.outlookservices.FreeBusyStatus;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Computes free/busy time and scheduling conflicts over the cached calendar events. Every query
+ * first asks CalendarEvents for the occurrences in its window, which come back ordered by start
+ * with recurring series already expanded, and then makes a single sweep over them. A window holding thousands of
+ * events is answered in a few milliseconds, so the event editor can check a proposed time on the
+ * UI thread before the event is posted to the Outlook service.
+ *
+ * Events shown as free and cancelled events never make anyone busy and are ignored.
+ */
+public class FreeBusyEngine
+{
+    private final CalendarEvents mCalendarEvents;
+
+    public FreeBusyEngine(CalendarEvents calendarEvents)
+    {
+        mCalendarEvents = calendarEvents;
+    }
+
+    /**
+     * A span of time, as epoch milliseconds with an exclusive end.
+     */
+    public static final class TimeSpan
+    {
+        private final long mStartMillis;
+        private final long mEndMillis;
+
+        public TimeSpan(long startMillis, long endMillis)
+        {
+            mStartMillis = startMillis;
+            mEndMillis = endMillis;
+        }
+
+        public long getStartMillis()
+        {
+            return mStartMillis;
+        }
+
+        public long getEndMillis()
+        {
+            return mEndMillis;
+        }
+
+        public long getDurationMillis()
+        {
+            return mEndMillis - mStartMillis;
+        }
+    }
+
+    /**
+     * Two events whose times overlap, the one that starts first as getFirst.
+     */
+    public static final class Conflict
+    {
+        private final O365Calendar_Event mFirst;
+        private final O365Calendar_Event mSecond;
+
+        Conflict(O365Calendar_Event first, O365Calendar_Event second)
+        {
+            mFirst = first;
+            mSecond = second;
+        }
+
+        public O365Calendar_Event getFirst()
+        {
+            return mFirst;
+        }
+
+        public O365Calendar_Event getSecond()
+        {
+            return mSecond;
+        }
+    }
+
+    // Returns the cached events that would overlap the proposed event, ordered by start. The
+    // proposed event itself is skipped, so an event being edited does not conflict with its
+    // own cached copy.
+    public List<O365Calendar_Event> getConflicts(O365Calendar_Event proposedEvent)
+    {
+        List<O365Calendar_Event> conflicts = new ArrayList<O365Calendar_Event>();
+        if (proposedEvent == null || !proposedEvent.hasTimes())
+            return conflicts;
+
+        return getConflicts(proposedEvent.getStartMillis(), proposedEvent.getEndMillis(),
+                proposedEvent.getID());
+    }
+
+    // Returns the busy cached events that overlap [startMillis, endMillis), ordered by start.
+    // The event with ignoredEventId is skipped when it is not null.
+    public List<O365Calendar_Event> getConflicts(long startMillis, long endMillis,
+            String ignoredEventId)
+    {
+        List<O365Calendar_Event> conflicts = new ArrayList<O365Calendar_Event>();
+        for (Occurrence occurrence : getBusyOccurrences(startMillis, endMillis))
+        {
+            O365Calendar_Event event = occurrence.getEvent();
+            if (ignoredEventId != null && ignoredEventId.equals(event.getID()))
+                continue;
+            // A series conflicts once, however many of its occurrences overlap
+            if (!conflicts.isEmpty() && conflicts.contains(event))
+                continue;
+
+            conflicts.add(event);
+        }
+        return conflicts;
+    }
+
+    // Returns the busy time in [startMillis, endMillis) as disjoint spans ordered by start.
+    // Overlapping and touching events are merged into one span, clipped to the window.
+    public List<TimeSpan> getBusySpans(long startMillis, long endMillis)
+    {
+        List<TimeSpan> busySpans = new ArrayList<TimeSpan>();
+        long spanStart = 0;
+        long spanEnd = Long.MIN_VALUE;
+        for (Occurrence occurrence : getBusyOccurrences(startMillis, endMillis))
+        {
+            long eventStart = Math.max(occurrence.getStartMillis(), startMillis);
+            long eventEnd = Math.min(occurrence.getEndMillis(), endMillis);
+            if (eventEnd <= eventStart)
+                continue;
+
+            // Events arrive by start, so a gap before this one closes the current span
+            if (eventStart > spanEnd)
+            {
+                if (spanEnd != Long.MIN_VALUE)
+                    busySpans.add(new TimeSpan(spanStart, spanEnd));
+                spanStart = eventStart;
+                spanEnd = eventEnd;
+            }
+            else if (eventEnd > spanEnd)
+                spanEnd = eventEnd;
+        }
+        if (spanEnd != Long.MIN_VALUE)
+            busySpans.add(new TimeSpan(spanStart, spanEnd));
+
+        return busySpans;
+    }
+
+    // Returns the gaps of at least minimumMillis between the busy spans of [startMillis,
+    // endMillis), ordered by start
+    public List<TimeSpan> getFreeSpans(long startMillis, long endMillis, long minimumMillis)
+    {
+        List<TimeSpan> freeSpans = new ArrayList<TimeSpan>();
+        long freeStart = startMillis;
+        for (TimeSpan busy : getBusySpans(startMillis, endMillis))
+        {
+            if (busy.getStartMillis() - freeStart >= minimumMillis)
+                freeSpans.add(new TimeSpan(freeStart, busy.getStartMillis()));
+            freeStart = busy.getEndMillis();
+        }
+        if (endMillis - freeStart >= minimumMillis && endMillis > freeStart)
+            freeSpans.add(new TimeSpan(freeStart, endMillis));
+
+        return freeSpans;
+    }
+
+    // Returns every pair of busy occurrences in [startMillis, endMillis) that overlap each
+    // other. The sweep keeps the occurrences that are still running in a heap ordered by end,
+    // so each one is compared only with the occurrences it actually overlaps.
+    public List<Conflict> getAllConflicts(long startMillis, long endMillis)
+    {
+        List<Conflict> conflicts = new ArrayList<Conflict>();
+        PriorityQueue<Occurrence> running = new PriorityQueue<Occurrence>(16, BY_END);
+
+        for (Occurrence occurrence : getBusyOccurrences(startMillis, endMillis))
+        {
+            // Drop the occurrences that ended at or before this one starts
+            while (!running.isEmpty()
+                    && running.peek().getEndMillis() <= occurrence.getStartMillis())
+                running.poll();
+
+            for (Occurrence overlapping : running)
+                conflicts.add(new Conflict(overlapping.getEvent(), occurrence.getEvent()));
+
+            running.add(occurrence);
+        }
+        return conflicts;
+    }
+
+    // Returns the occurrences in the window that make someone busy, ordered by start
+    private List<Occurrence> getBusyOccurrences(long startMillis, long endMillis)
+    {
+        List<Occurrence> busy = new ArrayList<Occurrence>();
+        for (Occurrence occurrence : mCalendarEvents.getOccurrencesInRange(startMillis, endMillis))
+        {
+            if (isBusy(occurrence.getEvent()))
+                busy.add(occurrence);
+        }
+        return busy;
+    }
+
+    private static boolean isBusy(O365Calendar_Event event)
+    {
+        if (!event.hasTimes())
+            return false;
+
+        Boolean isCancelled = event.getEvent().getIsCancelled();
+        if (isCancelled != null && isCancelled)
+            return false;
+
+        return event.getEvent().getShowAs() != FreeBusyStatus.Free;
+    }
+
+    private static final Comparator<Occurrence> BY_END = new Comparator<Occurrence>()
+    {
+        @Override
+        public int compare(Occurrence lhs, Occurrence rhs)
+        {
+            long lhsEnd = lhs.getEndMillis();
+            long rhsEnd = rhs.getEndMillis();
+            return lhsEnd < rhsEnd ? -1 : (lhsEnd == rhsEnd ? 0 : 1);
+        }
+    };
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
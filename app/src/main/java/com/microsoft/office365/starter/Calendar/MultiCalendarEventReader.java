@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Calendar;
+
+import android.util.Log;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.microsoft.outlookservices.Event;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Reads the events of several calendars as a single stream ordered by start.
+ *
+ * Every calendar is read in pages of its own, ordered by start, and the pages of all calendars
+ * that run out of buffered events are requested at the same time. The per-calendar streams are
+ * combined with a k-way merge: a priority queue holds one cursor per calendar, ordered by the
+ * start of the next buffered event of that calendar, so taking the next event costs O(log k)
+ * for k calendars and the combined stream is never sorted as a whole. An event is only taken
+ * while every calendar that is not yet exhausted has a buffered event, so a page of the merged
+ * stream is always the true next page, whatever the calendars hold. A calendar whose page
+ * request fails is left out until the next read, which asks for that page again.
+ *
+ * A reader keeps its position between calls to readNext. Only one read may be in flight at a
+ * time.
+ */
+public class MultiCalendarEventReader
+{
+    // Reads one page of a calendar, ordered by start
+    public interface PageSource
+    {
+        ListenableFuture<List<Event>> readPage(String calendarId, int skip, int top);
+    }
+
+    /**
+     * An event of the merged stream, and the calendar it was read from
+     */
+    public static final class MergedEvent
+    {
+        private final Event mEvent;
+        private final String mCalendarId;
+
+        MergedEvent(Event event, String calendarId)
+        {
+            mEvent = event;
+            mCalendarId = calendarId;
+        }
+
+        public Event getEvent()
+        {
+            return mEvent;
+        }
+
+        public String getCalendarId()
+        {
+            return mCalendarId;
+        }
+    }
+
+    // The read position in one calendar and the events read ahead of it
+    private static final class CalendarCursor
+    {
+        private final String mCalendarId;
+        private final int mOrder;
+        private final ArrayDeque<Event> mBuffer = new ArrayDeque<Event>();
+        private int mNextSkip;
+        private boolean mIsExhausted;
+
+        // Set when a page request of the current read failed. The calendar is left out of
+        // the rest of that read and asked again on the next one.
+        private boolean mHasFailedRead;
+
+        CalendarCursor(String calendarId, int order, int skip)
+        {
+            mCalendarId = calendarId;
+            mOrder = order;
+            mNextSkip = skip;
+        }
+
+        long getHeadStartMillis()
+        {
+            return startMillisOf(mBuffer.peekFirst());
+        }
+
+        boolean needsPage()
+        {
+            return mBuffer.isEmpty() && !mIsExhausted && !mHasFailedRead;
+        }
+    }
+
+    // Earliest next event first. Calendars with events at the same time keep the order they
+    // were given in, so the merged stream is the same on every read.
+    private static final Comparator<CalendarCursor> BY_HEAD_START = new Comparator<CalendarCursor>()
+    {
+        @Override
+        public int compare(CalendarCursor lhs, CalendarCursor rhs)
+        {
+            long lhsStart = lhs.getHeadStartMillis();
+            long rhsStart = rhs.getHeadStartMillis();
+            if (lhsStart != rhsStart)
+                return lhsStart < rhsStart ? -1 : 1;
+            return lhs.mOrder - rhs.mOrder;
+        }
+    };
+
+    private final PageSource mSource;
+    private final int mPageSize;
+    private final List<CalendarCursor> mCursors = new ArrayList<CalendarCursor>();
+
+    // The cursors that have a buffered event
+    private final PriorityQueue<CalendarCursor> mQueue;
+
+    // Starts each calendar at the given number of events already read, or at its first
+    // event when the calendar has no entry in positions
+    public MultiCalendarEventReader(PageSource source, List<String> calendarIds,
+            Map<String, Integer> positions, int pageSize)
+    {
+        mSource = source;
+        mPageSize = pageSize;
+        mQueue = new PriorityQueue<CalendarCursor>(
+                Math.max(1, calendarIds.size()), BY_HEAD_START);
+
+        for (String calendarId : calendarIds)
+        {
+            Integer position = positions.get(calendarId);
+            mCursors.add(new CalendarCursor(
+                    calendarId, mCursors.size(), position == null ? 0 : position));
+        }
+    }
+
+    // Merges lists that are each ordered by start into one list ordered by start
+    public static List<MergedEvent> merge(Map<String, List<Event>> eventsByCalendar)
+    {
+        int count = 0;
+        int order = 0;
+        PriorityQueue<CalendarCursor> queue = new PriorityQueue<CalendarCursor>(
+                Math.max(1, eventsByCalendar.size()), BY_HEAD_START);
+        for (Map.Entry<String, List<Event>> entry : eventsByCalendar.entrySet())
+        {
+            CalendarCursor cursor = new CalendarCursor(entry.getKey(), order++, 0);
+            cursor.mBuffer.addAll(entry.getValue());
+            count += entry.getValue().size();
+            if (!cursor.mBuffer.isEmpty())
+                queue.add(cursor);
+        }
+
+        List<MergedEvent> merged = new ArrayList<MergedEvent>(count);
+        while (!queue.isEmpty())
+            merged.add(takeHead(queue));
+        return merged;
+    }
+
+    // True until every calendar has been read to its end and every read event taken
+    public boolean hasMore()
+    {
+        if (!mQueue.isEmpty())
+            return true;
+
+        for (CalendarCursor cursor : mCursors)
+        {
+            if (!cursor.mIsExhausted)
+                return true;
+        }
+        return false;
+    }
+
+    // Returns the next count events of the merged stream. Fewer are returned only at the end
+    // of every calendar, or when a calendar could not be read. A calendar that could not be
+    // read is asked again on the next call, and its events that start before events already
+    // returned are returned then.
+    public ListenableFuture<List<MergedEvent>> readNext(int count)
+    {
+        for (CalendarCursor cursor : mCursors)
+            cursor.mHasFailedRead = false;
+        return readNext(count, new ArrayList<MergedEvent>(count));
+    }
+
+    private ListenableFuture<List<MergedEvent>> readNext(final int count,
+            final List<MergedEvent> eventsRead)
+    {
+        final List<CalendarCursor> cursorsToRead = new ArrayList<CalendarCursor>();
+        for (CalendarCursor cursor : mCursors)
+        {
+            if (cursor.needsPage())
+                cursorsToRead.add(cursor);
+        }
+
+        if (!cursorsToRead.isEmpty())
+        {
+            // One round trip per calendar, all in flight together
+            List<ListenableFuture<List<Event>>> pages =
+                    new ArrayList<ListenableFuture<List<Event>>>(cursorsToRead.size());
+            for (CalendarCursor cursor : cursorsToRead)
+                pages.add(mSource.readPage(cursor.mCalendarId, cursor.mNextSkip, mPageSize));
+
+            // A calendar that cannot be read, such as a shared calendar the user lost access
+            // to, is skipped for this read rather than failing the whole stream
+            return Futures.transform(Futures.successfulAsList(pages),
+                    new AsyncFunction<List<List<Event>>, List<MergedEvent>>()
+            {
+                @Override
+                public ListenableFuture<List<MergedEvent>> apply(List<List<Event>> results)
+                {
+                    for (int i = 0; i < cursorsToRead.size(); i++)
+                        addPage(cursorsToRead.get(i), results.get(i));
+                    return readNext(count, eventsRead);
+                }
+            });
+        }
+
+        while (eventsRead.size() < count && !mQueue.isEmpty())
+        {
+            CalendarCursor cursor = mQueue.peek();
+            eventsRead.add(takeHead(mQueue));
+
+            // The next event of this calendar has to be read before the merge can go on
+            if (cursor.needsPage())
+                return readNext(count, eventsRead);
+        }
+        return Futures.immediateFuture(eventsRead);
+    }
+
+    private void addPage(CalendarCursor cursor, List<Event> page)
+    {
+        if (page == null)
+        {
+            Log.e("Failed to read calendar " + cursor.mCalendarId,
+                    "MultiCalendarEventReader.addPage");
+            cursor.mHasFailedRead = true;
+            return;
+        }
+
+        cursor.mBuffer.addAll(page);
+        cursor.mNextSkip += page.size();
+        if (page.size() < mPageSize)
+            cursor.mIsExhausted = true;
+        if (!cursor.mBuffer.isEmpty())
+            mQueue.add(cursor);
+    }
+
+    // Takes the earliest event of the queue and puts its cursor back if it has more
+    private static MergedEvent takeHead(PriorityQueue<CalendarCursor> queue)
+    {
+        CalendarCursor cursor = queue.poll();
+        MergedEvent head = new MergedEvent(cursor.mBuffer.pollFirst(), cursor.mCalendarId);
+        if (!cursor.mBuffer.isEmpty())
+            queue.add(cursor);
+        return head;
+    }
+
+    private static long startMillisOf(Event event)
+    {
+        if (event == null)
+            return Long.MAX_VALUE;
+
+        Calendar start = event.getStart();
+        return start == null ? Long.MAX_VALUE : start.getTimeInMillis();
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -7,26 +7,31 @@ package com.microsoft.office365.starter.Calendar;
 import android.app.Activity;
 import android.os.Parcel;
 import android.util.Log;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.microsoft.office365.starter.helpers.APIErrorMessageHelper;
+import com.microsoft.office365.starter.helpers.AsyncController;
 import com.microsoft.outlookservices.Attendee;
 import com.microsoft.outlookservices.BodyType;
-import com.microsoft.outlookservices.EmailAddress;
 import com.microsoft.outlookservices.Event;
 import com.microsoft.outlookservices.ItemBody;
 import com.microsoft.outlookservices.Location;
 import com.microsoft.office365.starter.O365APIsStart_Application;
 import com.microsoft.office365.starter.helpers.Constants;
+import com.microsoft.office365.starter.helpers.RecipientListCodec;
 import com.microsoft.office365.starter.interfaces.OnEventsAddedListener;
 import com.microsoft.office365.starter.interfaces.OnOperationCompleteListener;
 import com.microsoft.office365.starter.interfaces.OnEventsAddedListener.setEventCollection;
 import com.microsoft.office365.starter.interfaces.OnOperationCompleteListener.OperationResult;
 
+import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -40,11 +45,146 @@ import java.util.regex.Pattern;
  */
 public class O365CalendarModel  {
 
-    private CalendarEvents mCalendarEvents;
+    // Number of events requested per round trip when reading a date range
+    private static final int RANGE_PAGE_SIZE = 50;
+
+    // Number of event Ids requested per round trip when looking for deleted events
+    private static final int ID_PAGE_SIZE = 500;
+
+    private static final Comparator<O365Calendar_Event> BY_START =
+            new Comparator<O365Calendar_Event>()
+    {
+        @Override
+        public int compare(O365Calendar_Event lhs, O365Calendar_Event rhs)
+        {
+            long lhsStart = startMillisOf(lhs);
+            long rhsStart = startMillisOf(rhs);
+            return lhsStart < rhsStart ? -1 : (lhsStart == rhsStart ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<RecurrenceExpander.Occurrence> OCCURRENCES_BY_START =
+            new Comparator<RecurrenceExpander.Occurrence>()
+    {
+        @Override
+        public int compare(RecurrenceExpander.Occurrence lhs, RecurrenceExpander.Occurrence rhs)
+        {
+            long lhsStart = lhs.getStartMillis();
+            long rhsStart = rhs.getStartMillis();
+            return lhsStart < rhsStart ? -1 : (lhsStart == rhsStart ? 0 : 1);
+        }
+    };
+
+    private static long startMillisOf(O365Calendar_Event event)
+    {
+        return event.hasTimes() ? event.getStartMillis() : Long.MAX_VALUE;
+    }
+
+    // Marks an event start or end that has not been set
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    // A change that has been applied to the cached events but not yet confirmed by the
+    // Outlook service
+    public enum PendingChange
+    {
+        None, Create, Update, Delete
+    }
+
+    // The zone every event is shown in. Events keep their times as epoch milliseconds and are
+    // only turned into Calendar objects in this zone when a view or a post needs one.
+    private static volatile TimeZone sDisplayTimeZone = TimeZone.getDefault();
+
+    public static TimeZone getDisplayTimeZone()
+    {
+        return sDisplayTimeZone;
+    }
+
+    // Call when the device time zone changes
+    public static void setDisplayTimeZone(TimeZone timeZone)
+    {
+        if (timeZone.getID().equals(sDisplayTimeZone.getID()))
+            return;
+
+        sDisplayTimeZone = timeZone;
+        EventLabelFormat labelFormat = sLabelFormat;
+        sLabelFormat = new EventLabelFormat(
+                labelFormat.getLocale(), labelFormat.is24Hour(), timeZone);
+    }
+
+    // Formats the event list labels. Every event caches its label together with the format it
+    // was made with, so replacing this format is what invalidates the cached labels.
+    private static volatile EventLabelFormat sLabelFormat = new EventLabelFormat(
+            Locale.getDefault(), false, sDisplayTimeZone);
+
+    // Call when the locale or the 12/24 hour clock setting may have changed. Labels are
+    // only formatted again when one of them actually did.
+    public static void setLabelFormat(Locale locale, boolean is24Hour)
+    {
+        if (sLabelFormat.matches(locale, is24Hour, sDisplayTimeZone))
+            return;
+
+        sLabelFormat = new EventLabelFormat(locale, is24Hour, sDisplayTimeZone);
+    }
+
+    // Created with the model, so every thread sees the same cached events
+    private final CalendarEvents mCalendarEvents = new CalendarEvents();
+    private FreeBusyEngine mFreeBusy;
     private O365APIsStart_Application mApplication;
     private OnEventsAddedListener mEventAddedListener;
     private OnOperationCompleteListener mEventOperationCompleteListener;
-    private UUID tempNewEventId;
+
+    // The calendars the event list and date range reads are made from
+    private volatile List<String> mCalendarIds;
+
+    // The Id of the user's primary calendar, read when the first event is posted
+    private volatile String mPrimaryCalendarId;
+
+    // Paging state. mEventReader merges the pages of every calendar into the event list
+    // and keeps the read position in each of them. mNextEventNumber is the number of
+    // events listed so far, mHasMoreEvents goes false once every calendar has been read
+    // to its end and
+    // mIsLoadingEvents keeps the list from requesting the same page twice while
+    // scrolling. mPageGeneration changes whenever the first page is requested again, so
+    // a page that was in flight during a refresh is dropped instead of appended.
+    private int mEventPageSize;
+    private volatile MultiCalendarEventReader mEventReader;
+    private int mNextEventNumber;
+    private volatile boolean mHasMoreEvents = true;
+    private volatile boolean mIsLoadingEvents;
+    private final AtomicInteger mPageGeneration = new AtomicInteger();
+
+    // Number of rows from the end of the list at which the next page is requested
+    private static final int PREFETCH_THRESHOLD = 5;
+
+    // Reads one page of the event list of a calendar for mEventReader, and records it in
+    // the local store
+    private final MultiCalendarEventReader.PageSource mEventPageSource =
+            new MultiCalendarEventReader.PageSource()
+    {
+        @Override
+        public ListenableFuture<List<Event>> readPage(final String calendarId, final int skip,
+                int top)
+        {
+            ListenableFuture<List<Event>> page = mApplication.getCalendarClient()
+                    .getMe()
+                    .getCalendars().getById(calendarId)
+                    .getEvents()
+                    .top(top)
+                    .orderBy("Start")
+                    .skip(skip)
+                    .read();
+
+            return Futures.transform(page, new Function<List<Event>, List<Event>>()
+            {
+                @Override
+                public List<Event> apply(List<Event> result)
+                {
+                    saveEventPageToStore(calendarId, result, skip == 0);
+                    return result;
+                }
+            });
+        }
+    };
 
 
     public void setEventAddedListener(OnEventsAddedListener eventSelectionListener) {
@@ -57,27 +197,36 @@ public class O365CalendarModel  {
         this.mEventOperationCompleteListener = eventOperationCompleteListener;
     }
 
-    // Returns an instance of the CalendarEvents class after constructing it if necessary
+    // Returns the cached calendar events
     public CalendarEvents getCalendar()
     {
-        if (mCalendarEvents == null)
-            mCalendarEvents = new CalendarEvents();
         return mCalendarEvents;
     }
 
+    // Returns the free/busy engine over the cached events
+    public FreeBusyEngine getFreeBusy()
+    {
+        if (mFreeBusy == null)
+            mFreeBusy = new FreeBusyEngine(getCalendar());
+        return mFreeBusy;
+    }
+
+    // Returns the engine that lays out the cached events of a day for a day or week grid
+    public DayLayoutEngine getDayLayout()
+    {
+        return getCalendar().getDayLayout();
+    }
+
     // This overload is called when a user is creating a new event.
     public O365CalendarModel.O365Calendar_Event createEvent(String subject)
     {
         // Create a temporary unique event Id for the new event. The
         // temporary Id is used by the ListView to uniquely id the new event
         // when it is added to the local cache before posting to the Outlook service
+        // The event keeps the temp Id until postCreatedEvent replaces it with
+        // the Id assigned by Outlook service upon successful add
         UUID ID = java.util.UUID.randomUUID();
 
-        // Cache the temp Id in the calendar model so the model can retrieve the
-        // Event out of the ITEMS_MAP map and update with the Id assigned by
-        // Outlook service upon successful add
-        tempNewEventId = ID;
-
         // The com.microsoft.office365.OutlookServices.Event is created
         // and cached in the event model
         Event newEvent = new Event();
@@ -102,9 +251,12 @@ public class O365CalendarModel  {
         if (eventToUpdate == null)
             return;
 
-        Event event = eventToUpdate.getEvent();
-        if (event.getEnd().before(event.getStart()))
+        if (eventToUpdate.getEndMillis() < eventToUpdate.getStartMillis())
         {
+            // Undo the edits the view made to the cached event
+            eventToUpdate.revertEdit();
+            getCalendar().reindexEvent(eventToUpdate);
+
             OperationResult opResult = new OperationResult(
                     "Update event"
                     , "Event was not updated. End cannot be before start."
@@ -114,6 +266,12 @@ public class O365CalendarModel  {
             return;
         }
 
+        // The edits are already in the cached event. Show them right away as pending
+        // and reconcile with the service response.
+        getCalendar().reindexEvent(eventToUpdate);
+        getCalendar().setPendingChange(eventToUpdate, PendingChange.Update);
+        Event event = eventToUpdate.getEventToPost();
+
         ListenableFuture<Event> updatedEvent = mApplication.getCalendarClient()
                 .getMe()
                 .getEvents()
@@ -131,7 +289,12 @@ public class O365CalendarModel  {
                         , "Event updated"
                         , eventToUpdate.id);
 
-                eventToUpdate.thisEvent = result;
+                // Take the service copy, with its new ChangeKey, as the cached event
+                eventToUpdate.setEvent(result);
+                eventToUpdate.endEdit();
+                saveEventToStore(eventToUpdate.getCalendarId(), result);
+                getCalendar().reindexEvent(eventToUpdate);
+                getCalendar().setPendingChange(eventToUpdate, PendingChange.None);
                 mEventOperationCompleteListener.onOperationComplete(opResult);
             }
 
@@ -139,6 +302,12 @@ public class O365CalendarModel  {
             public void onFailure(final Throwable t)
             {
                 Log.e(t.getMessage(), "Update event");
+
+                // Roll the cached event back to what it was before the edit
+                eventToUpdate.revertEdit();
+                getCalendar().reindexEvent(eventToUpdate);
+                getCalendar().setPendingChange(eventToUpdate, PendingChange.None);
+
                 // Notify caller that the operation failed
                 OperationResult opResult = new OperationResult(
                         "Update event"
@@ -167,6 +336,11 @@ public class O365CalendarModel  {
             mEventOperationCompleteListener.onOperationComplete(opResult);
             return null;
         }
+        // Remove the event from the list right away. It is put back if the
+        // service does not delete it.
+        getCalendar().setPendingChange(eventToDelete, PendingChange.Delete);
+        getCalendar().removeEvent(eventToDelete);
+
         String eventId = eventToDelete.getEvent().getId();
         ListenableFuture<Event> deletedEvent = mApplication.getCalendarClient()
                 .getMe()
@@ -178,10 +352,8 @@ public class O365CalendarModel  {
             @Override
             public void onSuccess(final Event result)
             {
-                // Remove event from calendar events collection. This collection is
-                // the source of the ArrayAdapter attached to the event list in the UI
-                mCalendarEvents.ITEMS.remove(eventToDelete);
-                mCalendarEvents.ITEM_MAP.remove(eventToDelete.id);
+                getCalendar().setPendingChange(eventToDelete, PendingChange.None);
+                deleteEventFromStore(eventToDelete.id);
 
                 OperationResult opResult = new OperationResult(
                         "Remove event"
@@ -194,6 +366,10 @@ public class O365CalendarModel  {
             public void onFailure(final Throwable t)
             {
                 Log.e(t.getMessage(), "Delete event");
+
+                // Put the event back into the list
+                getCalendar().setPendingChange(eventToDelete, PendingChange.None);
+                getCalendar().mergeEvent(eventToDelete);
                 OperationResult opResult = new OperationResult(
                         "Remove event"
                         , "Remove event failed: "
@@ -212,9 +388,7 @@ public class O365CalendarModel  {
     {
         try
         {
-            Event newEvent = eventToAdd.getEvent();
-
-            if (newEvent.getEnd().before(newEvent.getStart()))
+            if (eventToAdd.getEndMillis() < eventToAdd.getStartMillis())
             {
                 OperationResult opResult = new OperationResult(
                         "Add event"
@@ -225,14 +399,29 @@ public class O365CalendarModel  {
                 return;
             }
 
-            // This request returns the user's primary calendar. if you want to get
-            // a different calendar in the user's calendar collection in Office 365,
-            //
-            ListenableFuture<Event> addedEvent = mApplication.getCalendarClient()
-                    .getMe()
-                    .getCalendars()
-                    .getById(Constants.CALENDER_ID)
-                    .getEvents().add(newEvent);
+            // Show the new event in the list right away, under its temp Id
+            final String localId = eventToAdd.getID();
+            getCalendar().mergeEvent(eventToAdd);
+            getCalendar().setPendingChange(eventToAdd, PendingChange.Create);
+
+            final Event newEvent = eventToAdd.getEventToPost();
+
+            // The event is posted to the user's primary calendar, by its real Id, so that
+            // it is stored under the same calendar Id the event list is read from
+            ListenableFuture<Event> addedEvent = Futures.transform(readPrimaryCalendarId(),
+                    new AsyncFunction<String, Event>()
+            {
+                @Override
+                public ListenableFuture<Event> apply(String primaryCalendarId)
+                {
+                    eventToAdd.setCalendarId(primaryCalendarId);
+                    return mApplication.getCalendarClient()
+                            .getMe()
+                            .getCalendars()
+                            .getById(primaryCalendarId)
+                            .getEvents().add(newEvent);
+                }
+            });
 
             // addedEvent.
             Futures.addCallback(addedEvent, new FutureCallback<Event>()
@@ -246,14 +435,10 @@ public class O365CalendarModel  {
                             , "Added event"
                             , result.getId());
 
-                    eventToAdd.setEvent(result);
-
-                    // Update event collection.ITEM_MAP with updated Event.ID
-                    if (mCalendarEvents.ITEM_MAP.containsKey(tempNewEventId.toString()))
-                        mCalendarEvents.ITEM_MAP.remove(tempNewEventId.toString());
-
-                    tempNewEventId = null;
-                    mCalendarEvents.ITEM_MAP.put(result.getId(), eventToAdd);
+                    // Swap the temp Id for the Id assigned by Outlook service
+                    getCalendar().setPendingChange(eventToAdd, PendingChange.None);
+                    getCalendar().replaceEvent(localId, eventToAdd, result);
+                    saveEventToStore(eventToAdd.getCalendarId(), result);
                     mEventOperationCompleteListener.onOperationComplete(opResult);
                 }
 
@@ -266,7 +451,9 @@ public class O365CalendarModel  {
                             , "Error on add event: " + APIErrorMessageHelper.getErrorMessage(t.getMessage())
                             , "-1");
 
-                    tempNewEventId = null;
+                    // Take the event that was never created back out of the list
+                    getCalendar().setPendingChange(eventToAdd, PendingChange.None);
+                    getCalendar().removeEvent(eventToAdd);
                     mEventOperationCompleteListener.onOperationComplete(opResult);
                 }
             });
@@ -286,264 +473,1461 @@ public class O365CalendarModel  {
     }
 
     //Get a set of calendar events, starting with the event at skipToEventNumber
-    //Size of calendar event set is set by pageSize
-    public void getEventList(int pageSize, int skipToEventNumber)
+    //Size of calendar event set is set by pageSize. The first page replaces the cached
+    //events, later pages are appended to them. Every calendar of the user is listed, merged
+    //into one list ordered by start.
+    public void getEventList(int pageSize, final int skipToEventNumber)
     {
-        if (mCalendarEvents == null)
-            mCalendarEvents = new CalendarEvents();
+        final boolean isFirstPage = skipToEventNumber == 0 || mEventReader == null;
+        final int generation = isFirstPage
+                ? mPageGeneration.incrementAndGet()
+                : mPageGeneration.get();
+
+        mEventPageSize = pageSize;
+        mIsLoadingEvents = true;
+
+        // The first page is shown from the local store and then brought up to date
+        if (isFirstPage)
+            loadEventsFromStore(generation);
+        else
+            readEventPage(pageSize, false, generation);
+    }
 
-        // retrieve a page of primary calendar events asynchronously and sorted by
-        // the start date of the calendar event
-        ListenableFuture<List<Event>> results = mApplication.getCalendarClient()
-                .getMe()
-                .getCalendars().getById(Constants.CALENDER_ID)
-                .getEvents()
-                .top(pageSize)
-                .orderBy("Start")
-                .skip(skipToEventNumber)
-                .read();
-              
+    // Reads the next page of the merged event list. The pages of the calendars it is
+    // made from are recorded in the local store by mEventPageSource.
+    private void readEventPage(final int pageSize, final boolean isFirstPage,
+            final int generation)
+    {
+        final MultiCalendarEventReader reader = mEventReader;
+        ListenableFuture<List<MultiCalendarEventReader.MergedEvent>> results =
+                reader.readNext(pageSize);
 
-        Futures.addCallback(results, new FutureCallback<List<Event>>() {
+        Futures.addCallback(results, new FutureCallback<List<MultiCalendarEventReader.MergedEvent>>() {
 
             @Override
-            public void onSuccess(final List<Event> result)
+            public void onSuccess(final List<MultiCalendarEventReader.MergedEvent> result)
             {
-                loadEventsIntoModel(result);
-                setEventCollection eventData = new setEventCollection(mCalendarEvents.ITEMS);
-
+                // A refresh was requested while this page was loading
+                if (generation != mPageGeneration.get())
+                    return;
+
+                // Later pages are merged by id, so an event that moved across a page
+                // boundary between requests is not listed twice
+                if (isFirstPage)
+                    loadEventsIntoModel(result);
+                else
+                    mergeEventsIntoModel(result);
+
+                mNextEventNumber += result.size();
+                mHasMoreEvents = reader.hasMore();
+                mIsLoadingEvents = false;
+
+                setEventCollection eventData = new setEventCollection(
+                        getCalendar().getItems(), !isFirstPage);
                 mEventAddedListener.OnEventsAdded(eventData);
             }
 
             @Override
             public void onFailure(final Throwable t)
             {
-                //Clear any calendar list content
-                mCalendarEvents = null;
+                // A refresh was requested while this page was loading
+                if (generation != mPageGeneration.get())
+                    return;
+
+                mIsLoadingEvents = false;
+
                 Log.e("Failed to get events: "
                                 + APIErrorMessageHelper.getErrorMessage(t.getMessage())
                         ,"O365CalendarModel.getEventList");
-                setEventCollection eventData = new setEventCollection(mCalendarEvents.ITEMS);
+                setEventCollection eventData = new setEventCollection(
+                        getCalendar().getItems(), !isFirstPage);
                 mEventAddedListener.OnEventsAdded(eventData);
             }
         });
-        return;
     }
 
-    private void loadEventsIntoModel(List<Event> events)
+    // Shows the stored events of every calendar whose event list has been synced before, and
+    // then brings the list windows of the store up to date, all calendars at once. Only
+    // events changed since the last sync are downloaded. Calendars without a stored list are
+    // read from their first event. The store is read on a background thread and nothing
+    // waits on the service; each step continues from the callback of the one before.
+    private void loadEventsFromStore(final int generation)
     {
-        try
+        AsyncController.getInstance().postAsyncTask(new Callable<Void>()
         {
-            this.getCalendar().ITEMS.clear();
-            this.getCalendar().ITEM_MAP.clear();
-            for (Event e : events)
+            @Override
+            public Void call()
             {
-                O365Calendar_Event calendarEvent = this.createEvent(e.getId(), e);
-                ItemBody itemBody = e.getBody();
-                if (itemBody != null)
-                    calendarEvent.setItemBody(e.getBody());
+                CalendarEventStore store = getStore();
+                final Map<String, CalendarEventStore.SyncWindow> listWindows =
+                        new HashMap<String, CalendarEventStore.SyncWindow>();
+                Map<String, List<Event>> storedEvents = new LinkedHashMap<String, List<Event>>();
+                try
+                {
+                    for (String calendarId : store.readListCalendarIds())
+                    {
+                        CalendarEventStore.SyncWindow listWindow = store.findListWindow(calendarId);
+                        if (listWindow == null)
+                            continue;
+
+                        listWindows.put(calendarId, listWindow);
+                        storedEvents.put(calendarId, store.readEvents(calendarId));
+                    }
+                }
+                catch (Exception ex)
+                {
+                    Log.e("Failed to read stored events: " + ex.getMessage(),
+                            "O365CalendarModel.loadEventsFromStore");
+                    listWindows.clear();
+                    storedEvents.clear();
+                }
 
-                Location location = e.getLocation();
-                if (location != null)
-                    calendarEvent.setLocation(e.getLocation());
+                if (generation != mPageGeneration.get())
+                    return null;
 
-                java.util.Calendar startDate = e.getStart();
-                java.util.Calendar endDate = e.getEnd();
+                if (!listWindows.isEmpty())
+                {
+                    loadEventsIntoModel(MultiCalendarEventReader.merge(storedEvents));
+                    mEventAddedListener.OnEventsAdded(
+                            new setEventCollection(getCalendar().getItems(), false));
+                }
+
+                Futures.addCallback(readCalendarIds(), new FutureCallback<List<String>>()
+                {
+                    @Override
+                    public void onSuccess(List<String> calendarIds)
+                    {
+                        syncListWindows(generation, listWindows, calendarIds);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t)
+                    {
+                        Log.e("Failed to get calendars: "
+                                        + APIErrorMessageHelper.getErrorMessage(t.getMessage())
+                                , "O365CalendarModel.loadEventsFromStore");
+                        syncListWindows(generation, listWindows, listWindows.isEmpty()
+                                ? Collections.singletonList(Constants.CALENDER_ID)
+                                : new ArrayList<String>(listWindows.keySet()));
+                    }
+                });
+                return null;
+            }
+        });
+    }
 
-                calendarEvent.setStartDate(
-                        startDate.get(Calendar.YEAR)
-                        , startDate.get(Calendar.MONTH)
-                        , startDate.get(Calendar.DAY_OF_MONTH)
-                        , startDate.get(Calendar.HOUR_OF_DAY)
-                        , startDate.get(Calendar.MINUTE));
+    // Syncs the stored list windows of the user's calendars. Calendars the user no longer
+    // has, such as a calendar that stopped being shared, are dropped from the store and
+    // the list first.
+    private void syncListWindows(final int generation,
+            final Map<String, CalendarEventStore.SyncWindow> listWindows,
+            final List<String> calendarIds)
+    {
+        if (generation != mPageGeneration.get())
+            return;
 
-                calendarEvent.setEndDate(
-                        endDate.get(Calendar.YEAR)
-                        , endDate.get(Calendar.MONTH)
-                        , endDate.get(Calendar.DAY_OF_MONTH)
-                        , endDate.get(Calendar.HOUR_OF_DAY)
-                        , endDate.get(Calendar.MINUTE));
+        try
+        {
+            CalendarEventStore store = getStore();
+            for (String calendarId : listWindows.keySet())
+            {
+                if (calendarIds.contains(calendarId))
+                    continue;
 
-                calendarEvent.setSubject(e.getSubject());
-                addItem(calendarEvent);
+                store.deleteCalendar(calendarId);
+                getCalendar().removeCalendarEvents(calendarId);
             }
-        } catch (Exception ex)
+        }
+        catch (Exception ex)
         {
-            String exceptionMessage = ex.getMessage();
-            Log.e("RetrieveEventsTask", exceptionMessage);
+            Log.e("Failed to remove stored calendars: " + ex.getMessage(),
+                    "O365CalendarModel.syncListWindows");
         }
-    }
+        listWindows.keySet().retainAll(calendarIds);
+
+        List<ListenableFuture<WindowChanges>> syncs =
+                new ArrayList<ListenableFuture<WindowChanges>>();
+        for (Map.Entry<String, CalendarEventStore.SyncWindow> entry : listWindows.entrySet())
+            syncs.add(syncWindow(entry.getKey(), entry.getValue()));
+
+        // A calendar that cannot be synced keeps showing its stored events
+        Futures.addCallback(Futures.successfulAsList(syncs),
+                new FutureCallback<List<WindowChanges>>()
+        {
+            @Override
+            public void onSuccess(List<WindowChanges> changes)
+            {
+                showSyncedListWindows(generation, listWindows, calendarIds, changes);
+            }
 
-    private void addItem(O365Calendar_Event item) {
-        this.getCalendar().ITEMS.add(item);
-        this.getCalendar().ITEM_MAP.put(item.id, item);
+            @Override
+            public void onFailure(Throwable t)
+            {
+                Log.e("Failed to sync events: "
+                                + APIErrorMessageHelper.getErrorMessage(t.getMessage())
+                        , "O365CalendarModel.syncListWindows");
+                showSyncedListWindows(generation, listWindows, calendarIds,
+                        new ArrayList<WindowChanges>());
+            }
+        });
     }
 
-    public void setActivity(Activity activity)
+    // Applies the changes of the synced list windows to the cached events, and continues the
+    // merged event list after the end of the stored windows
+    private void showSyncedListWindows(int generation,
+            Map<String, CalendarEventStore.SyncWindow> listWindows, List<String> calendarIds,
+            List<WindowChanges> changes)
     {
-        mApplication = (O365APIsStart_Application) activity.getApplication();
+        if (generation != mPageGeneration.get())
+            return;
+
+        CalendarEventStore store = getStore();
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        int eventCount = 0;
+        try
+        {
+            for (Map.Entry<String, CalendarEventStore.SyncWindow> entry : listWindows.entrySet())
+            {
+                int position = store.countEventsStartingBefore(
+                        entry.getKey(), entry.getValue().getEndMillis());
+                positions.put(entry.getKey(), position);
+                eventCount += position;
+            }
+        }
+        catch (Exception ex)
+        {
+            // The list is read again from the first event of every calendar
+            Log.e("Failed to count stored events: " + ex.getMessage(),
+                    "O365CalendarModel.showSyncedListWindows");
+            positions.clear();
+            eventCount = 0;
+            listWindows.clear();
+        }
+        mCalendarIds = calendarIds;
+        mEventReader = new MultiCalendarEventReader(
+                mEventPageSource, calendarIds, positions, mEventPageSize);
+        mNextEventNumber = eventCount;
+
+        if (listWindows.isEmpty())
+        {
+            readEventPage(mEventPageSize, true, generation);
+            return;
+        }
+
+        applyWindowChanges(changes);
+
+        // Only the rows change, so the list is refreshed like an appended page
+        mEventAddedListener.OnEventsAdded(
+                new setEventCollection(getCalendar().getItems(), true));
+
+        // Events may have been added after the end of a window, so the next page
+        // is still requested when the list is scrolled to its end. A calendar
+        // without a stored list may have events anywhere in the list, so its
+        // first page is read right away.
+        mHasMoreEvents = true;
+        if (positions.size() < calendarIds.size())
+            readEventPage(mEventPageSize, false, generation);
+        else
+            mIsLoadingEvents = false;
     }
 
-    public O365CalendarModel(Parcel in)
+    // Requests the page that follows the last loaded page. Returns false when a page is
+    // already being loaded or the whole calendar has been read.
+    public boolean getNextEventPage()
     {
+        if (mIsLoadingEvents || !mHasMoreEvents || mEventPageSize == 0)
+            return false;
 
+        getEventList(mEventPageSize, mNextEventNumber);
+        return true;
     }
 
-    public O365CalendarModel(Activity activity)
+    // Called by the event list as it scrolls. Starts loading the next page when the last
+    // visible row comes within PREFETCH_THRESHOLD rows of the end of the list, so the page
+    // is usually in place before the user reaches it.
+    public void onEventListScrolled(int firstVisiblePosition, int lastVisiblePosition)
     {
-        if (activity == null)
-            return;
-        mApplication = (O365APIsStart_Application) activity.getApplication();
+        if (lastVisiblePosition >= getCalendar().getItems().size() - PREFETCH_THRESHOLD)
+            getNextEventPage();
     }
 
-    /**
-     * Helper class for providing content for user interfaces created by Android template wizards.
-     */
-    public class CalendarEvents {
-        public List<O365Calendar_Event> ITEMS = new ArrayList<O365Calendar_Event>();
-        public Map<String, O365Calendar_Event> ITEM_MAP = new HashMap<String, O365Calendar_Event>();
+    public boolean hasMoreEvents()
+    {
+        return mHasMoreEvents;
     }
 
-    /**
-     * A single calendar event. The class exposes event properties as simple strings
-     */
-    public class O365Calendar_Event {
-        private String id;
-        private String subject = " ";
-        private String attendees = "";
-        private String locationString = "";
-        private ItemBody itemBody;
-        private String itemBodyString = "";
-        private Location location;
-        private Event thisEvent;
+    // Reads every event of the user's calendars that overlaps the window [startMillis, endMillis)
+    // and merges them into the cached events. The returned future holds the cached events in the
+    // window ordered by start. Day, week and agenda views can query the cache again with
+    // CalendarEvents.getEventsInRange without another round trip.
+    // The calendars are read at the same time. A window that was synced before is answered
+    // from the local store and only the changes since that sync are downloaded. When the
+    // service cannot be reached, the stored events are returned as they are.
+    public ListenableFuture<List<O365Calendar_Event>> getEventsInRange(final long startMillis,
+            final long endMillis)
+    {
+        final SettableFuture<List<O365Calendar_Event>> eventsInRange = SettableFuture.create();
+        List<String> knownCalendarIds = mCalendarIds;
+        ListenableFuture<List<String>> calendarIds = knownCalendarIds != null
+                ? Futures.immediateFuture(knownCalendarIds)
+                : readCalendarIds();
 
-        // Sets the subject property of an event and
-        // sets the event item body (content) with the
-        // same subject string
-        public void setSubject(String Subject)
+        Futures.addCallback(calendarIds, new FutureCallback<List<String>>()
         {
-            subject = Subject;
-            if (this.itemBody != null)
+            @Override
+            public void onSuccess(final List<String> result)
             {
-                this.itemBody.setContent(Subject);
-                this.itemBody.setContentType(BodyType.Text);
-                thisEvent.setSubject(Subject);
+                // The store is read on a background thread, not on the caller's thread
+                // or the thread that delivered the calendars
+                AsyncController.getInstance().postAsyncTask(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        readEventsInRange(result, startMillis, endMillis, eventsInRange);
+                        return null;
+                    }
+                });
             }
-        }
-
-        public void setEvent(Event event)
-        {
-            thisEvent = event;
-            this.id = event.getId();
-        }
 
-        // Updates the subject of the event
-        public void updateSubject(String Subject)
-        {
-            subject = Subject;
-            if (thisEvent != null)
-                thisEvent.setSubject(Subject);
-        }
+            @Override
+            public void onFailure(Throwable t)
+            {
+                Log.e("Failed to get calendars: "
+                                + APIErrorMessageHelper.getErrorMessage(t.getMessage())
+                        , "O365CalendarModel.getEventsInRange");
+                eventsInRange.setException(t);
+            }
+        });
+        return eventsInRange;
+    }
 
-        // Returns the subject of the event
-        public String getSubject()
+    // Merges the stored events of the window into the cache and starts the reads and syncs
+    // of the window. eventsInRange is set when they have all finished.
+    private void readEventsInRange(List<String> calendarIds, final long startMillis,
+            final long endMillis, final SettableFuture<List<O365Calendar_Event>> eventsInRange)
+    {
+        final List<ListenableFuture<WindowChanges>> reads =
+                new ArrayList<ListenableFuture<WindowChanges>>();
+        boolean storedWindowRead = false;
+        try
         {
-            String returnValue = "";
-            if (thisEvent != null)
-                returnValue = subject;
-            else
-                returnValue = thisEvent.getSubject();
-
-            return returnValue;
+            CalendarEventStore store = getStore();
+            List<O365Calendar_Event> storedEvents = new ArrayList<O365Calendar_Event>();
+            for (String calendarId : calendarIds)
+            {
+                CalendarEventStore.SyncWindow window =
+                        store.findWindow(calendarId, startMillis, endMillis);
+                if (window == null)
+                {
+                    reads.add(readWindow(calendarId, startMillis, endMillis));
+                }
+                else
+                {
+                    for (Event e : store.readEventsInWindow(calendarId, startMillis, endMillis))
+                        storedEvents.add(toCalendarEvent(calendarId, e));
+                    storedWindowRead = true;
+                    reads.add(syncWindow(calendarId, window));
+                }
+            }
+            getCalendar().mergeEvents(storedEvents);
         }
-
-        public String getID()
+        catch (Exception ex)
         {
-            return this.id;
+            Log.e("Failed to get events in range: " + ex.getMessage()
+                    , "O365CalendarModel.getEventsInRange");
+            storedWindowRead = false;
         }
 
-        // Returns a semi-colon delimited list of attendee
-        // email addresses
-        public String getAttendees()
+        // A synced window can still be shown from the store
+        final boolean hasStoredEvents = storedWindowRead;
+        Futures.addCallback(Futures.successfulAsList(reads),
+                new FutureCallback<List<WindowChanges>>()
         {
-            // Get any previously invited attendees
-            if (thisEvent.getAttendees() != null)
+            @Override
+            public void onSuccess(List<WindowChanges> results)
             {
-                attendees = "";
-                List<Attendee> attendeeList = thisEvent.getAttendees();
-                for (Attendee a : attendeeList)
+                List<WindowChanges> changes = new ArrayList<WindowChanges>();
+                for (WindowChanges windowChanges : results)
                 {
-                    String charSeparator = "";
-                    String attendeeAddress = a.getEmailAddress().getAddress();
-
-                    if (attendeeList.size() > 1)
-                        charSeparator = ";";
-
-                    attendees += attendeeAddress + charSeparator;
+                    if (windowChanges != null)
+                        changes.add(windowChanges);
                 }
+                applyWindowChanges(changes);
 
-                // Trim off trailing space and the semi-colon that trails the invitee list
-                attendees = attendees.trim();
-                if (attendees.endsWith(";"))
-                    attendees = attendees.substring(0, attendees.length() - 1);
-
+                if (!reads.isEmpty() && changes.isEmpty() && !hasStoredEvents)
+                {
+                    Log.e("Failed to get events in range: no calendar could be read"
+                            , "O365CalendarModel.getEventsInRange");
+                    eventsInRange.setException(
+                            new IllegalStateException("No calendar could be read"));
+                }
+                else
+                {
+                    eventsInRange.set(getCalendar().getEventsInRange(startMillis, endMillis));
+                }
             }
-            return attendees;
-        }
 
-        public void setID(String newId)
-        {
-            id = newId;
-        }
+            @Override
+            public void onFailure(Throwable t)
+            {
+                Log.e("Failed to get events in range: "
+                                + APIErrorMessageHelper.getErrorMessage(t.getMessage())
+                        , "O365CalendarModel.getEventsInRange");
+                if (hasStoredEvents)
+                    eventsInRange.set(getCalendar().getEventsInRange(startMillis, endMillis));
+                else
+                    eventsInRange.setException(t);
+            }
+        });
+    }
 
+    // Reads the Ids of the user's calendars
+    private ListenableFuture<List<String>> readCalendarIds()
+    {
+        ListenableFuture<List<com.microsoft.outlookservices.Calendar>> calendars = mApplication
+                .getCalendarClient()
+                .getMe()
+                .getCalendars()
+                .select("Id")
+                .read();
 
-        // Add new attendees to the existing list of event attendees
-        public void setAttendees(String anAttendee)
+        return Futures.transform(calendars,
+                new Function<List<com.microsoft.outlookservices.Calendar>, List<String>>()
         {
-            if (thisEvent.getAttendees() != null)
-                thisEvent.getAttendees().clear();
+            @Override
+            public List<String> apply(List<com.microsoft.outlookservices.Calendar> result)
+            {
+                List<String> calendarIds = new ArrayList<String>();
+                for (com.microsoft.outlookservices.Calendar calendar : result)
+                    calendarIds.add(calendar.getId());
+                return calendarIds;
+            }
+        });
+    }
 
-            Pattern pattern;
-            Matcher matcher;
+    // Reads the Id of the user's primary calendar once. Constants.CALENDER_ID is only an
+    // alias of it and is not one of the Ids readCalendarIds returns.
+    private ListenableFuture<String> readPrimaryCalendarId()
+    {
+        String primaryCalendarId = mPrimaryCalendarId;
+        if (primaryCalendarId != null)
+            return Futures.immediateFuture(primaryCalendarId);
 
-            String EMAIL_PATTERN =
-                    "^[_A-Za-z0-9-\\+]+(\\.[_A-Za-z0-9-]+)*@"
-                            + "[A-Za-z0-9-]+(\\.[A-Za-z0-9]+)*(\\.[A-Za-z]{2,})$";
-            pattern = Pattern.compile(EMAIL_PATTERN);
+        ListenableFuture<com.microsoft.outlookservices.Calendar> calendar = mApplication
+                .getCalendarClient()
+                .getMe()
+                .getCalendar()
+                .read();
 
-            String[] attendeeArray = anAttendee.split(";");
-            for (String attendeeString : attendeeArray)
+        return Futures.transform(calendar,
+                new Function<com.microsoft.outlookservices.Calendar, String>()
+        {
+            @Override
+            public String apply(com.microsoft.outlookservices.Calendar result)
             {
-                // Add attendee if attendeeString is an email address
-                matcher = pattern.matcher(attendeeString);
-                if (matcher.matches())
-                    makeAnAttendee(attendeeString.trim());
+                mPrimaryCalendarId = result.getId();
+                return mPrimaryCalendarId;
             }
-        }
+        });
+    }
+
+    // Reads a window of a calendar that has not been synced before and stores it
+    private ListenableFuture<WindowChanges> readWindow(final String calendarId,
+            final long startMillis, final long endMillis)
+    {
+        ListenableFuture<List<Event>> events = readEventPages(calendarId,
+                toWindowFilter(startMillis, endMillis), 0, new ArrayList<Event>());
 
-        private void makeAnAttendee(String anAttendee)
+        return Futures.transform(events, new Function<List<Event>, WindowChanges>()
         {
-            // Works for new attendee added to event
-            this.attendees = anAttendee;
-            Attendee attendee1 = new Attendee();
-            EmailAddress email = new EmailAddress();
-            email.setAddress(anAttendee);
-            attendee1.setEmailAddress(email);
+            @Override
+            public WindowChanges apply(List<Event> result)
+            {
+                CalendarEventStore store = getStore();
+                store.writeEvents(calendarId, result);
+                store.writeWindow(calendarId, startMillis, endMillis, getWatermark(result, 0));
+                return new WindowChanges(calendarId, result, new HashSet<String>());
+            }
+        });
+    }
 
-            // Get the current list of event attendees and add the new attendee
-            // to the list
-            List<Attendee> listAttendees = thisEvent.getAttendees();
-            if (listAttendees == null)
-                listAttendees = new ArrayList<Attendee>();
-            listAttendees.add(attendee1);
-            thisEvent.setAttendees(listAttendees);
-        }
+    // Reads every event of a calendar that matches the filter, one page at a time
+    private ListenableFuture<List<Event>> readEventPages(final String calendarId,
+            final String filter, final int skip, final List<Event> eventsRead)
+    {
+        ListenableFuture<List<Event>> page = mApplication.getCalendarClient()
+                .getMe()
+                .getCalendars().getById(calendarId)
+                .getEvents()
+                .filter(filter)
+                .orderBy("Start")
+                .top(RANGE_PAGE_SIZE)
+                .skip(skip)
+                .read();
 
-        // Sets the location of an event
-        public void setLocation(Location location)
+        return Futures.transform(page, new AsyncFunction<List<Event>, List<Event>>()
         {
-            locationString = location.getDisplayName();
-            this.location = location;
+            @Override
+            public ListenableFuture<List<Event>> apply(List<Event> result)
+            {
+                eventsRead.addAll(result);
+                if (result.size() < RANGE_PAGE_SIZE)
+                    return Futures.immediateFuture(eventsRead);
+
+                return readEventPages(calendarId, filter, skip + result.size(), eventsRead);
+            }
+        });
+    }
+
+    // Reads the Ids of every event of a calendar that matches the filter. Only the Id is
+    // selected, so a page costs a small fraction of a page of full events.
+    private ListenableFuture<Set<String>> readEventIds(final String calendarId,
+            final String filter, final int skip, final Set<String> idsRead)
+    {
+        ListenableFuture<List<Event>> page = mApplication.getCalendarClient()
+                .getMe()
+                .getCalendars().getById(calendarId)
+                .getEvents()
+                .filter(filter)
+                .select("Id")
+                .orderBy("Start")
+                .top(ID_PAGE_SIZE)
+                .skip(skip)
+                .read();
+
+        return Futures.transform(page, new AsyncFunction<List<Event>, Set<String>>()
+        {
+            @Override
+            public ListenableFuture<Set<String>> apply(List<Event> result)
+            {
+                for (Event event : result)
+                    idsRead.add(event.getId());
+                if (result.size() < ID_PAGE_SIZE)
+                    return Futures.immediateFuture(idsRead);
+
+                return readEventIds(calendarId, filter, skip + result.size(), idsRead);
+            }
+        });
+    }
+
+    // Brings a stored window of a calendar up to date. Events modified since the watermark of
+    // the window are downloaded in full while the window is read as Ids only, to find the
+    // stored events that were deleted or moved out of it. The changes are written to the
+    // store and the watermark moves up to the newest change.
+    private ListenableFuture<WindowChanges> syncWindow(final String calendarId,
+            final CalendarEventStore.SyncWindow window)
+    {
+        final long startMillis = window.getStartMillis();
+        final long endMillis = window.getEndMillis();
+        String windowFilter = toWindowFilter(startMillis, endMillis);
+
+        // An event is re-read when its last change has the same timestamp as the watermark,
+        // so a change made in the same second as the previous sync is not lost
+        final ListenableFuture<List<Event>> changedEvents = readEventPages(calendarId,
+                windowFilter + " and DateTimeLastModified ge "
+                        + toODataDateTime(window.getWatermark())
+                , 0
+                , new ArrayList<Event>());
+        final ListenableFuture<Set<String>> serviceIds = readEventIds(
+                calendarId, windowFilter, 0, new HashSet<String>());
+
+        return Futures.transform(Futures.<Object>allAsList(changedEvents, serviceIds),
+                new Function<List<Object>, WindowChanges>()
+        {
+            @Override
+            public WindowChanges apply(List<Object> results)
+            {
+                CalendarEventStore store = getStore();
+                List<Event> changed = Futures.getUnchecked(changedEvents);
+
+                Set<String> removedIds = store.readIdsInWindow(calendarId, startMillis, endMillis);
+                removedIds.removeAll(Futures.getUnchecked(serviceIds));
+                for (Event event : changed)
+                    removedIds.remove(event.getId());
+
+                store.writeEvents(calendarId, changed);
+                store.deleteEvents(removedIds);
+                store.writeWindow(calendarId, startMillis, endMillis,
+                        getWatermark(changed, window.getWatermark()));
+                return new WindowChanges(calendarId, changed, removedIds);
+            }
+        });
+    }
+
+    // Applies the results of syncWindow and readWindow to the cached events. The changes of
+    // every calendar are published as one snapshot.
+    private void applyWindowChanges(List<WindowChanges> changes)
+    {
+        try
+        {
+            List<O365Calendar_Event> changedItems = new ArrayList<O365Calendar_Event>();
+            Set<String> removedIds = new HashSet<String>();
+            for (WindowChanges windowChanges : changes)
+            {
+                for (Event e : windowChanges.mChangedEvents)
+                    changedItems.add(toCalendarEvent(windowChanges.mCalendarId, e));
+                removedIds.addAll(windowChanges.mRemovedIds);
+            }
+            getCalendar().applyChanges(changedItems, removedIds);
+        } catch (Exception ex)
+        {
+            String exceptionMessage = ex.getMessage();
+            Log.e("MergeEventsTask", exceptionMessage);
+        }
+    }
+
+    // Stores a page of the event list of a calendar and extends the list window of the
+    // calendar to the start of the last event on the page. Pages are read at different
+    // times, so the window keeps the oldest watermark of the pages it was built from.
+    private void saveEventPageToStore(String calendarId, List<Event> page, boolean isFirstPage)
+    {
+        if (page.isEmpty())
+            return;
+
+        Calendar lastStart = page.get(page.size() - 1).getStart();
+        if (lastStart == null)
+            return;
+
+        try
+        {
+            CalendarEventStore store = getStore();
+            store.writeEvents(calendarId, page);
+
+            long watermark = getWatermark(page, 0);
+            long endMillis = lastStart.getTimeInMillis() + 1;
+            CalendarEventStore.SyncWindow listWindow = isFirstPage
+                    ? null
+                    : store.findListWindow(calendarId);
+            if (listWindow != null)
+            {
+                watermark = Math.min(watermark, listWindow.getWatermark());
+                endMillis = Math.max(endMillis, listWindow.getEndMillis());
+            }
+            store.writeWindow(calendarId, NO_TIME, endMillis, watermark);
+        }
+        catch (Exception ex)
+        {
+            Log.e("Failed to store events: " + ex.getMessage(),
+                    "O365CalendarModel.saveEventPageToStore");
+        }
+    }
+
+    // Writes an event the service confirmed to the store
+    private void saveEventToStore(String calendarId, Event event)
+    {
+        try
+        {
+            getStore().writeEvents(calendarId, Collections.singletonList(event));
+        }
+        catch (Exception ex)
+        {
+            Log.e("Failed to store event: " + ex.getMessage(),
+                    "O365CalendarModel.saveEventToStore");
+        }
+    }
+
+    private void deleteEventFromStore(String id)
+    {
+        try
+        {
+            getStore().deleteEvents(Collections.singletonList(id));
+        }
+        catch (Exception ex)
+        {
+            Log.e("Failed to remove stored event: " + ex.getMessage(),
+                    "O365CalendarModel.deleteEventFromStore");
+        }
+    }
+
+    private CalendarEventStore getStore()
+    {
+        return CalendarEventStore.getInstance(mApplication);
+    }
+
+    // Returns the newest DateTimeLastModified of the events, or watermark if that is newer.
+    // Every change made before a read is in the events it returned, so the newest of them
+    // is a safe point to ask for changes from on the next sync.
+    private static long getWatermark(List<Event> events, long watermark)
+    {
+        for (Event event : events)
+            watermark = Math.max(watermark, CalendarEventStore.getLastModified(event));
+        return watermark;
+    }
+
+    // Builds the $filter that selects the events overlapping [startMillis, endMillis).
+    // A window that starts at NO_TIME has no lower bound.
+    private static String toWindowFilter(long startMillis, long endMillis)
+    {
+        String filter = "Start lt " + toODataDateTime(endMillis);
+        if (startMillis == NO_TIME)
+            return filter;
+
+        return "End gt " + toODataDateTime(startMillis) + " and " + filter;
+    }
+
+    private static String toODataDateTime(long millis)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    // The events that changed in a synced window of a calendar and the ids of the events
+    // that left it
+    private static final class WindowChanges
+    {
+        private final String mCalendarId;
+        private final List<Event> mChangedEvents;
+        private final Set<String> mRemovedIds;
+
+        WindowChanges(String calendarId, List<Event> changedEvents, Set<String> removedIds)
+        {
+            mCalendarId = calendarId;
+            mChangedEvents = changedEvents;
+            mRemovedIds = removedIds;
+        }
+    }
+
+    // Adds merged events to the cache, replacing any cached copy with the same id
+    private void mergeEventsIntoModel(List<MultiCalendarEventReader.MergedEvent> events)
+    {
+        try
+        {
+            this.getCalendar().mergeEvents(toCalendarEvents(events));
+        } catch (Exception ex)
+        {
+            String exceptionMessage = ex.getMessage();
+            Log.e("MergeEventsTask", exceptionMessage);
+        }
+    }
+
+    // Replaces the cached events. The events arrive ordered by start, so they are
+    // appended without searching for their place.
+    private void loadEventsIntoModel(List<MultiCalendarEventReader.MergedEvent> events)
+    {
+        try
+        {
+            this.getCalendar().loadEvents(toCalendarEvents(events));
+        } catch (Exception ex)
+        {
+            String exceptionMessage = ex.getMessage();
+            Log.e("RetrieveEventsTask", exceptionMessage);
+        }
+    }
+
+    private List<O365Calendar_Event> toCalendarEvents(
+            List<MultiCalendarEventReader.MergedEvent> events)
+    {
+        List<O365Calendar_Event> items = new ArrayList<O365Calendar_Event>(events.size());
+        for (MultiCalendarEventReader.MergedEvent e : events)
+            items.add(toCalendarEvent(e.getCalendarId(), e.getEvent()));
+        return items;
+    }
+
+    private O365Calendar_Event toCalendarEvent(String calendarId, Event e)
+    {
+        O365Calendar_Event calendarEvent = this.createEvent(e.getId(), e);
+        calendarEvent.setCalendarId(calendarId);
+        ItemBody itemBody = e.getBody();
+        if (itemBody != null)
+            calendarEvent.setItemBody(e.getBody());
+
+        Location location = e.getLocation();
+        if (location != null)
+            calendarEvent.setLocation(e.getLocation());
+
+        // The start and end were read from the event by its constructor
+        calendarEvent.setSubject(e.getSubject());
+
+        // Events are loaded off the UI thread, so format the list label here rather than
+        // while the list is scrolling
+        calendarEvent.getLabel();
+        return calendarEvent;
+    }
+
+    public void setActivity(Activity activity)
+    {
+        mApplication = (O365APIsStart_Application) activity.getApplication();
+    }
+
+    public O365CalendarModel(Parcel in)
+    {
+
+    }
+
+    public O365CalendarModel(Activity activity)
+    {
+        if (activity == null)
+            return;
+        mApplication = (O365APIsStart_Application) activity.getApplication();
+    }
+
+    // Returns a Calendar in the display time zone, or null for NO_TIME
+    private static Calendar toCalendar(long millis)
+    {
+        if (millis == NO_TIME)
+            return null;
+
+        Calendar calendar = new GregorianCalendar(sDisplayTimeZone);
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+
+    private static long toMillis(int yearValue, int monthValue, int dayValue, int hourValue,
+            int minuteValue)
+    {
+        Calendar calendar = new GregorianCalendar(sDisplayTimeZone);
+        calendar.clear();
+        calendar.set(yearValue, monthValue, dayValue, hourValue, minuteValue);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * The cached calendar events. Readers get an immutable snapshot of the event list and
+     * id map, so the list adapter and the detail views can use it on the UI thread while
+     * service callbacks change the events. Writers change the events while holding the
+     * CalendarEvents lock and publish the next snapshot once per change, so a page of
+     * events is published as one snapshot rather than one per event.
+     */
+    public class CalendarEvents {
+        // The events ordered by start, and by id. Guarded by the CalendarEvents lock.
+        private final List<O365Calendar_Event> mItems = new ArrayList<O365Calendar_Event>();
+        private final Map<String, O365Calendar_Event> mItemMap =
+                new HashMap<String, O365Calendar_Event>();
+        private volatile CalendarSnapshot mSnapshot = CalendarSnapshot.EMPTY;
+
+        // Events changed since the last snapshot was published. The day layouts are told
+        // about them once the snapshot that holds them is published. Guarded by the
+        // CalendarEvents lock.
+        private final List<O365Calendar_Event> mChangedEvents = new ArrayList<O365Calendar_Event>();
+
+        // Answers date range queries without scanning the event list
+        private final EventIntervalTree mEventTree = new EventIntervalTree();
+
+        // Series masters by id, and the occurrences expanded from their patterns
+        private final Map<String, O365Calendar_Event> mSeriesMasters =
+                new HashMap<String, O365Calendar_Event>();
+        private final RecurrenceExpander mRecurrenceExpander = new RecurrenceExpander();
+
+        // Created by getDayLayout, and told about every change to the events from then on
+        private volatile DayLayoutEngine mDayLayout;
+
+        // Events whose create, update or delete has been applied locally and not yet
+        // confirmed by the service. Guarded by itself.
+        private final List<O365Calendar_Event> mPendingEvents = new ArrayList<O365Calendar_Event>();
+
+        // Returns the current snapshot. It never changes once it is returned.
+        public CalendarSnapshot getSnapshot()
+        {
+            return mSnapshot;
+        }
+
+        public List<O365Calendar_Event> getItems()
+        {
+            return mSnapshot.getItems();
+        }
+
+        // Returns the cached event with the given id, or null
+        public O365Calendar_Event getItem(String id)
+        {
+            return mSnapshot.getItem(id);
+        }
+
+        public synchronized void addEvent(O365Calendar_Event item)
+        {
+            append(item);
+            publish();
+        }
+
+        // Replaces the cached events with events ordered by start. Changes still pending
+        // with the service are applied again on top of them, so a refresh does not undo
+        // what the user sees.
+        public synchronized void loadEvents(List<O365Calendar_Event> items)
+        {
+            List<O365Calendar_Event> pendingEvents = getPendingEvents();
+            clearItems();
+            for (O365Calendar_Event item : items)
+                append(item);
+            reapply(pendingEvents);
+            publish();
+        }
+
+        private void append(O365Calendar_Event item)
+        {
+            mItems.add(item);
+            mItemMap.put(item.id, item);
+            mEventTree.add(item);
+            addSeriesMaster(item);
+            mChangedEvents.add(item);
+        }
+
+        private void addSeriesMaster(O365Calendar_Event item)
+        {
+            if (!RecurrenceExpander.isRecurring(item))
+                return;
+
+            synchronized (mSeriesMasters)
+            {
+                mSeriesMasters.put(item.id, item);
+            }
+        }
+
+        private void removeSeriesMaster(O365Calendar_Event item)
+        {
+            synchronized (mSeriesMasters)
+            {
+                if (mSeriesMasters.get(item.id) == item)
+                    mSeriesMasters.remove(item.id);
+            }
+            mRecurrenceExpander.invalidate(item.id);
+        }
+
+        // Replaces any cached event with the same id and keeps the events ordered by start.
+        // A service copy never replaces an event with a pending local change.
+        public synchronized void mergeEvent(O365Calendar_Event item)
+        {
+            merge(item);
+            publish();
+        }
+
+        public synchronized void mergeEvents(List<O365Calendar_Event> items)
+        {
+            for (O365Calendar_Event item : items)
+                merge(item);
+            publish();
+        }
+
+        // Merges the events changed in a synced window and removes the events that left it
+        public synchronized void applyChanges(List<O365Calendar_Event> changedItems,
+                Collection<String> removedIds)
+        {
+            for (O365Calendar_Event item : changedItems)
+                merge(item);
+            for (String id : removedIds)
+                removeDeleted(id);
+            publish();
+        }
+
+        private void merge(O365Calendar_Event item)
+        {
+            O365Calendar_Event pending = getPendingEvent(item.id);
+            if (pending != null && pending != item)
+                return;
+
+            O365Calendar_Event cached = mItemMap.get(item.id);
+            if (cached != null)
+                remove(cached);
+
+            insertSorted(item);
+            mItemMap.put(item.id, item);
+            mEventTree.add(item);
+            addSeriesMaster(item);
+            mChangedEvents.add(item);
+        }
+
+        private void insertSorted(O365Calendar_Event item)
+        {
+            int position = Collections.binarySearch(mItems, item, BY_START);
+            if (position < 0)
+                position = -position - 1;
+
+            mItems.add(position, item);
+        }
+
+        // Removes the cached events of a calendar the user no longer has. Events with a
+        // local change still pending are kept.
+        public synchronized void removeCalendarEvents(String calendarId)
+        {
+            for (O365Calendar_Event item : new ArrayList<O365Calendar_Event>(mItems))
+            {
+                if (calendarId.equals(item.getCalendarId()))
+                    removeDeleted(item.id);
+            }
+            publish();
+        }
+
+        // Removes the cached event the service no longer has in a synced window. An event
+        // with a local change still pending is kept.
+        public synchronized void removeDeletedEvent(String id)
+        {
+            removeDeleted(id);
+            publish();
+        }
+
+        private void removeDeleted(String id)
+        {
+            O365Calendar_Event cached = mItemMap.get(id);
+            if (cached != null && getPendingEvent(id) == null)
+                remove(cached);
+        }
+
+        public synchronized void removeEvent(O365Calendar_Event item)
+        {
+            remove(item);
+            publish();
+        }
+
+        private void remove(O365Calendar_Event item)
+        {
+            mItems.remove(item);
+            if (mItemMap.get(item.id) == item)
+                mItemMap.remove(item.id);
+            mEventTree.remove(item);
+            removeSeriesMaster(item);
+            mChangedEvents.add(item);
+        }
+
+        // Call after the start or end of a cached event has been changed
+        public synchronized void reindexEvent(O365Calendar_Event item)
+        {
+            reindex(item);
+            publish();
+        }
+
+        private void reindex(O365Calendar_Event item)
+        {
+            mEventTree.reindex(item);
+
+            // The event keeps its place in the list ordered by start
+            if (mItems.remove(item))
+                insertSorted(item);
+
+            // The pattern may have changed along with the times
+            removeSeriesMaster(item);
+            addSeriesMaster(item);
+            mChangedEvents.add(item);
+        }
+
+        // Returns the day layout engine over these events, creating it the first time
+        public DayLayoutEngine getDayLayout()
+        {
+            DayLayoutEngine dayLayout = mDayLayout;
+            if (dayLayout == null)
+            {
+                synchronized (this)
+                {
+                    if (mDayLayout == null)
+                        mDayLayout = new DayLayoutEngine(this);
+                    dayLayout = mDayLayout;
+                }
+            }
+            return dayLayout;
+        }
+
+        // Publishes the events as the next snapshot, and then lets the day layouts sweep
+        // again only what the changes touched
+        private void publish()
+        {
+            CalendarSnapshot current = mSnapshot;
+            mSnapshot = new CalendarSnapshot(current.getVersion() + 1,
+                    new ArrayList<O365Calendar_Event>(mItems),
+                    new HashMap<String, O365Calendar_Event>(mItemMap));
+
+            DayLayoutEngine dayLayout = mDayLayout;
+            if (dayLayout != null)
+            {
+                for (O365Calendar_Event item : mChangedEvents)
+                    dayLayout.onEventChanged(item);
+            }
+            mChangedEvents.clear();
+        }
+
+        // Gives a cached event the Id and content the service assigned to it
+        public synchronized void replaceEvent(String oldId, O365Calendar_Event item,
+                Event serviceEvent)
+        {
+            if (mItemMap.get(oldId) == item)
+                mItemMap.remove(oldId);
+            removeSeriesMaster(item);
+
+            item.setEvent(serviceEvent);
+            mItemMap.put(item.id, item);
+            reindex(item);
+            publish();
+        }
+
+        public void setPendingChange(O365Calendar_Event item, PendingChange change)
+        {
+            synchronized (mPendingEvents)
+            {
+                mPendingEvents.remove(item);
+                if (change != PendingChange.None)
+                    mPendingEvents.add(item);
+            }
+            item.setPendingChange(change);
+        }
+
+        public List<O365Calendar_Event> getPendingEvents()
+        {
+            synchronized (mPendingEvents)
+            {
+                return new ArrayList<O365Calendar_Event>(mPendingEvents);
+            }
+        }
+
+        private O365Calendar_Event getPendingEvent(String id)
+        {
+            synchronized (mPendingEvents)
+            {
+                for (O365Calendar_Event pending : mPendingEvents)
+                {
+                    if (pending.id.equals(id))
+                        return pending;
+                }
+            }
+            return null;
+        }
+
+        // Applies local changes that are still pending on top of freshly loaded events
+        public synchronized void reapplyPendingEvents(List<O365Calendar_Event> pendingEvents)
+        {
+            reapply(pendingEvents);
+            publish();
+        }
+
+        private void reapply(List<O365Calendar_Event> pendingEvents)
+        {
+            for (O365Calendar_Event pending : pendingEvents)
+            {
+                O365Calendar_Event cached = mItemMap.get(pending.id);
+                if (cached != null && cached != pending)
+                    remove(cached);
+
+                // Still pending, and not finished while the page was loading
+                if (pending.getPendingChange() == PendingChange.Create
+                        || pending.getPendingChange() == PendingChange.Update)
+                    merge(pending);
+            }
+        }
+
+        // Removes every event. Changes still pending with the service are remembered, so
+        // reapplyPendingEvents can show them again after a reload.
+        public synchronized void clear()
+        {
+            clearItems();
+            publish();
+        }
+
+        private void clearItems()
+        {
+            mItems.clear();
+            mItemMap.clear();
+            mChangedEvents.clear();
+            mEventTree.clear();
+            synchronized (mSeriesMasters)
+            {
+                mSeriesMasters.clear();
+            }
+            mRecurrenceExpander.clear();
+
+            DayLayoutEngine dayLayout = mDayLayout;
+            if (dayLayout != null)
+                dayLayout.invalidate();
+        }
+
+        // Returns the cached events that overlap [startMillis, endMillis), ordered by start
+        public List<O365Calendar_Event> getEventsInRange(long startMillis, long endMillis)
+        {
+            return mEventTree.getOverlapping(startMillis, endMillis);
+        }
+
+        // Returns the cached events in progress at the given time, ordered by start
+        public List<O365Calendar_Event> getEventsAt(long timeMillis)
+        {
+            return mEventTree.getEventsAt(timeMillis);
+        }
+
+        // Returns every occurrence in [startMillis, endMillis), ordered by start. Single events
+        // are returned as they are and series masters are expanded from their patterns. When
+        // instances of a series were read from the service for this window, those instances
+        // are used and the series is not expanded, so moved and cancelled occurrences show up
+        // the way the service reports them.
+        public List<RecurrenceExpander.Occurrence> getOccurrencesInRange(long startMillis,
+                long endMillis)
+        {
+            List<RecurrenceExpander.Occurrence> occurrences =
+                    new ArrayList<RecurrenceExpander.Occurrence>();
+            Set<String> seriesReadFromService = new HashSet<String>();
+
+            for (O365Calendar_Event event : mEventTree.getOverlapping(startMillis, endMillis))
+            {
+                if (RecurrenceExpander.isRecurring(event))
+                    continue;
+
+                String seriesMasterId = event.getEvent().getSeriesMasterId();
+                if (seriesMasterId != null)
+                    seriesReadFromService.add(seriesMasterId);
+
+                occurrences.add(new RecurrenceExpander.Occurrence(
+                        event, event.getStartMillis(), event.getEndMillis(), false));
+            }
+
+            List<O365Calendar_Event> seriesMasters;
+            synchronized (mSeriesMasters)
+            {
+                seriesMasters = new ArrayList<O365Calendar_Event>(mSeriesMasters.values());
+            }
+            for (O365Calendar_Event master : seriesMasters)
+            {
+                if (!seriesReadFromService.contains(master.id))
+                    occurrences.addAll(
+                            mRecurrenceExpander.getOccurrences(master, startMillis, endMillis));
+            }
+
+            Collections.sort(occurrences, OCCURRENCES_BY_START);
+            return occurrences;
+        }
+    }
+
+    /**
+     * An immutable version of the cached event list and its id map
+     */
+    public static final class CalendarSnapshot
+    {
+        private static final CalendarSnapshot EMPTY = new CalendarSnapshot(
+                0,
+                new ArrayList<O365Calendar_Event>(),
+                new HashMap<String, O365Calendar_Event>());
+
+        private final int mVersion;
+        private final List<O365Calendar_Event> mItems;
+        private final Map<String, O365Calendar_Event> mItemMap;
+
+        private CalendarSnapshot(
+                int version,
+                List<O365Calendar_Event> items,
+                Map<String, O365Calendar_Event> itemMap)
+        {
+            mVersion = version;
+            mItems = Collections.unmodifiableList(items);
+            mItemMap = Collections.unmodifiableMap(itemMap);
+        }
+
+        // Increases by one each time a snapshot replaces the previous one
+        public int getVersion()
+        {
+            return mVersion;
+        }
+
+        public List<O365Calendar_Event> getItems()
+        {
+            return mItems;
+        }
+
+        public O365Calendar_Event getItem(String id)
+        {
+            return mItemMap.get(id);
+        }
+    }
+
+    /**
+     * A single calendar event. The class exposes event properties as simple strings
+     */
+    public class O365Calendar_Event {
+        private String id;
+        private String subject = " ";
+        // The formatted attendee list, or null when it has to be formatted again
+        private volatile String attendees;
+        private String locationString = "";
+        private ItemBody itemBody;
+        private String itemBodyString = "";
+        private Location location;
+        private Event thisEvent;
+
+        // The calendar the event belongs to. New events get the Id of the primary calendar
+        // when they are posted.
+        private String calendarId;
+
+        // Start and end as epoch milliseconds. Event.getStart and getEnd are only brought
+        // up to date by getEventToPost.
+        private long startMillis = NO_TIME;
+        private long endMillis = NO_TIME;
+
+        // The list label and the format it was made with. Guarded by this event.
+        private String label;
+        private EventLabelFormat labelFormat;
+
+        private volatile PendingChange pendingChange = PendingChange.None;
+
+        // What the event looked like when beginEdit was called, for revertEdit
+        private String savedSubject;
+        private String savedLocation;
+        private List<Attendee> savedAttendees;
+        private long savedStartMillis;
+        private long savedEndMillis;
+        private boolean hasSavedEdit;
+
+        // Sets the subject property of an event and
+        // sets the event item body (content) with the
+        // same subject string
+        public void setSubject(String Subject)
+        {
+            subject = Subject;
+            invalidateLabel();
+            if (this.itemBody != null)
+            {
+                this.itemBody.setContent(Subject);
+                this.itemBody.setContentType(BodyType.Text);
+                thisEvent.setSubject(Subject);
+            }
+        }
+
+        public void setEvent(Event event)
+        {
+            thisEvent = event;
+            this.id = event.getId();
+            attendees = null;
+            readTimes(event);
+        }
+
+        private void readTimes(Event event)
+        {
+            Calendar start = event.getStart();
+            Calendar end = event.getEnd();
+            startMillis = start == null ? NO_TIME : start.getTimeInMillis();
+            endMillis = end == null ? NO_TIME : end.getTimeInMillis();
+            invalidateLabel();
+        }
+
+        // Returns the label shown in the event list. The label is formatted once and reused
+        // until the event is edited or the label format changes, so binding a list row does
+        // not allocate.
+        public synchronized String getLabel()
+        {
+            EventLabelFormat format = sLabelFormat;
+            if (label == null || labelFormat != format)
+            {
+                label = format.format(startMillis, subject);
+                if (pendingChange != PendingChange.None)
+                    label += " (saving)";
+                labelFormat = format;
+            }
+            return label;
+        }
+
+        private synchronized void invalidateLabel()
+        {
+            label = null;
+        }
+
+        public PendingChange getPendingChange()
+        {
+            return pendingChange;
+        }
+
+        private void setPendingChange(PendingChange change)
+        {
+            pendingChange = change;
+            invalidateLabel();
+        }
+
+        // Remembers the event as it is now, before a view edits it in place
+        public void beginEdit()
+        {
+            savedSubject = subject;
+            savedLocation = locationString;
+            savedAttendees = thisEvent.getAttendees();
+            savedStartMillis = startMillis;
+            savedEndMillis = endMillis;
+            hasSavedEdit = true;
+        }
+
+        // Puts back what beginEdit remembered
+        public void revertEdit()
+        {
+            if (!hasSavedEdit)
+                return;
+
+            updateSubject(savedSubject);
+            setLocation(savedLocation);
+            thisEvent.setAttendees(savedAttendees);
+            attendees = null;
+            startMillis = savedStartMillis;
+            endMillis = savedEndMillis;
+            endEdit();
+            invalidateLabel();
+        }
+
+        // Forgets what beginEdit remembered
+        public void endEdit()
+        {
+            savedSubject = null;
+            savedLocation = null;
+            savedAttendees = null;
+            hasSavedEdit = false;
+        }
+
+        // Updates the subject of the event
+        public void updateSubject(String Subject)
+        {
+            subject = Subject;
+            invalidateLabel();
+            if (thisEvent != null)
+                thisEvent.setSubject(Subject);
+        }
+
+        // Returns the subject of the event
+        public String getSubject()
+        {
+            String returnValue = "";
+            if (thisEvent != null)
+                returnValue = subject;
+            else
+                returnValue = thisEvent.getSubject();
+
+            return returnValue;
+        }
+
+        public String getID()
+        {
+            return this.id;
+        }
+
+        public String getCalendarId()
+        {
+            return calendarId;
+        }
+
+        public void setCalendarId(String calendarId)
+        {
+            this.calendarId = calendarId;
+        }
+
+        // Returns a semi-colon delimited list of attendee
+        // email addresses. The string is formatted once and reused
+        // until the attendees are replaced through this event.
+        public String getAttendees()
+        {
+            // Get any previously invited attendees
+            String attendeeString = attendees;
+            if (attendeeString == null)
+            {
+                attendeeString = RecipientListCodec.format(thisEvent.getAttendees());
+                attendees = attendeeString;
+            }
+            return attendeeString;
+        }
+
+        public void setID(String newId)
+        {
+            id = newId;
+        }
+
+
+        // Replaces the event attendees with the valid email addresses
+        // in a semi-colon delimited list
+        public void setAttendees(String anAttendee)
+        {
+            thisEvent.setAttendees(RecipientListCodec.parseAttendees(anAttendee));
+            attendees = null;
+        }
+
+        // Sets the location of an event
+        public void setLocation(Location location)
+        {
+            locationString = location.getDisplayName();
+            this.location = location;
         }
 
         // Sets the location in the OutlookServices event object
@@ -582,52 +1966,62 @@ public class O365CalendarModel  {
         public void setStartDate(int yearValue, int monthValue, int dayValue, int hourValue,
                 int minuteValue)
         {
-            Calendar startDate = thisEvent.getStart();
-            if (startDate == null)
-                startDate = new GregorianCalendar(
-                        yearValue
-                        , monthValue
-                        , dayValue);
-
-            startDate.setTimeZone(TimeZone.getDefault());
-            startDate.set(
-                    yearValue
-                    ,monthValue
-                    ,dayValue
-                    ,hourValue
-                    ,minuteValue);
-
-            thisEvent.setStart(startDate);
+            startMillis = toMillis(yearValue, monthValue, dayValue, hourValue, minuteValue);
+            invalidateLabel();
         }
 
         public void setEndDate(int yearValue, int monthValue, int dayValue, int hourValue,
                 int minuteValue)
         {
-            Calendar endDate = thisEvent.getEnd();
-            if (endDate == null)
-                endDate = new GregorianCalendar(
-                        yearValue
-                        ,monthValue
-                        ,dayValue);
+            endMillis = toMillis(yearValue, monthValue, dayValue, hourValue, minuteValue);
+        }
 
-            endDate.setTimeZone(TimeZone.getDefault());
-            endDate.set(
-                    yearValue
-                    ,monthValue
-                    ,dayValue
-                    ,hourValue
-                    ,minuteValue);
-            thisEvent.setEnd(endDate);
+        public void setStartMillis(long millis)
+        {
+            startMillis = millis;
+            invalidateLabel();
         }
 
+        public void setEndMillis(long millis)
+        {
+            endMillis = millis;
+        }
+
+        public long getStartMillis()
+        {
+            return startMillis;
+        }
+
+        public long getEndMillis()
+        {
+            return endMillis;
+        }
+
+        // True once both the start and the end are known
+        public boolean hasTimes()
+        {
+            return startMillis != NO_TIME && endMillis != NO_TIME;
+        }
+
+        // Returns a new Calendar for the start in the display time zone, or null if unset
         public Calendar getStartDateTime()
         {
-            return thisEvent.getStart();
+            return toCalendar(startMillis);
         }
 
+        // Returns a new Calendar for the end in the display time zone, or null if unset
         public Calendar getEndDateTime()
         {
-            return thisEvent.getEnd();
+            return toCalendar(endMillis);
+        }
+
+        // Returns the Outlook service event with its start and end set from this model,
+        // ready to be posted
+        public Event getEventToPost()
+        {
+            thisEvent.setStart(toCalendar(startMillis));
+            thisEvent.setEnd(toCalendar(endMillis));
+            return thisEvent;
         }
 
         public Event getEvent()
@@ -638,7 +2032,7 @@ public class O365CalendarModel  {
         public O365Calendar_Event(String id, Event event) {
             this.id = id;
             thisEvent = event;
-
+            readTimes(event);
         }
 
         public O365Calendar_Event(String id)
@@ -652,30 +2046,7 @@ public class O365CalendarModel  {
         // calendar event details in the list.
         @Override
         public String toString() {
-            String amPm = "AM ";
-            if (thisEvent.getStart().get(Calendar.AM_PM) == 1)
-                amPm = "PM ";
-
-            int startHour = thisEvent.getStart().get(Calendar.HOUR);
-            String hourString = Integer.toString(startHour);
-
-            int startMinute = thisEvent.getStart().get(Calendar.MINUTE);
-            String minuteString = Integer.toString(startMinute);
-            if (startMinute < 10)
-                minuteString = "0" + minuteString;
-
-            return (thisEvent.getStart().get(Calendar.MONTH) + 1)
-                    + "/"
-                    + thisEvent.getStart().get(Calendar.DAY_OF_MONTH)
-                    + "/"
-                    + thisEvent.getStart().get(Calendar.YEAR)
-                    + " "
-                    + hourString
-                    + ":"
-                    + minuteString
-                    + " "
-                    + amPm
-                    + subject;
+            return getLabel();
         }
     }
 
@@ -0,0 +1,557 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Calendar;
+
+import android.util.Log;
+
+import com.microsoft.office365.starter.Calendar.O365CalendarModel.O365Calendar_Event;
+import com.microsoft.outlookservices.DayOfWeek;
+import com.microsoft.outlookservices.PatternedRecurrence;
+import com.microsoft.outlookservices.RecurrencePattern;
+import com.microsoft.outlookservices.RecurrencePatternType;
+import com.microsoft.outlookservices.RecurrenceRange;
+import com.microsoft.outlookservices.RecurrenceRangeType;
+import com.microsoft.outlookservices.WeekIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Turns the recurrence pattern of a series master event into the start times of its occurrences,
+ * so recurring meetings can be shown for any window without asking the service to expand them.
+ *
+ * A series is expanded lazily, one pattern period at a time, and only as far as the end of the
+ * latest window that was asked for. The start times are kept in a sorted array per series, so a
+ * later window inside the expanded part is a binary search, and a window further out only
+ * expands the periods that are still missing. A series is expanded again from scratch when its
+ * master event is replaced, its ChangeKey or time zone changes, or invalidate is called for
+ * it; other series keep their expansions.
+ *
+ * Occurrences repeat at the wall clock time of the master's start in the zone the series was
+ * scheduled in, its StartTimeZone, so they keep that time across daylight saving changes
+ * there wherever the device is. A master without a zone this device knows is expanded in the
+ * display time zone, and expanded again when the display time zone changes.
+ *
+ * The expansion follows the pattern only. Occurrences that were moved or cancelled on the
+ * service are not known here, which is why CalendarEvents prefers instances read from the
+ * service over expanded ones when it has both.
+ */
+public class RecurrenceExpander
+{
+    // Upper bound on the occurrences kept for one series, so a NoEnd series that is asked
+    // about a window far in the future cannot grow without limit
+    private static final int MAX_OCCURRENCES = 10000;
+
+    // Upper bound on pattern periods that produce no occurrence in a row, for patterns that
+    // can never match, such as the 31st of every second February
+    private static final int MAX_EMPTY_PERIODS = 1000;
+
+    private final Map<String, Series> mSeries = new HashMap<String, Series>();
+
+    /**
+     * One occurrence of an event. For an event that does not recur the occurrence is the event
+     * itself.
+     */
+    public static final class Occurrence
+    {
+        private final O365Calendar_Event mEvent;
+        private final long mStartMillis;
+        private final long mEndMillis;
+        private final boolean mIsExpanded;
+
+        Occurrence(O365Calendar_Event event, long startMillis, long endMillis,
+                boolean isExpanded)
+        {
+            mEvent = event;
+            mStartMillis = startMillis;
+            mEndMillis = endMillis;
+            mIsExpanded = isExpanded;
+        }
+
+        // The event, or for an expanded occurrence the series master it was expanded from
+        public O365Calendar_Event getEvent()
+        {
+            return mEvent;
+        }
+
+        public long getStartMillis()
+        {
+            return mStartMillis;
+        }
+
+        public long getEndMillis()
+        {
+            return mEndMillis;
+        }
+
+        // True when the occurrence was computed from a recurrence pattern
+        public boolean isExpanded()
+        {
+            return mIsExpanded;
+        }
+    }
+
+    // Returns true when the event is a series master with a pattern this class can expand
+    public static boolean isRecurring(O365Calendar_Event event)
+    {
+        PatternedRecurrence recurrence = event.getEvent().getRecurrence();
+        return recurrence != null
+                && recurrence.getPattern() != null
+                && recurrence.getRange() != null
+                && event.hasTimes();
+    }
+
+    // Returns the occurrences of the series that overlap [startMillis, endMillis), ordered by
+    // start
+    public synchronized List<Occurrence> getOccurrences(O365Calendar_Event master,
+            long startMillis, long endMillis)
+    {
+        List<Occurrence> occurrences = new ArrayList<Occurrence>();
+        if (endMillis <= startMillis || !isRecurring(master))
+            return occurrences;
+
+        Series series = mSeries.get(master.getID());
+        if (series == null || !series.isCurrent(master))
+        {
+            series = new Series(master);
+            mSeries.put(master.getID(), series);
+        }
+        series.expandTo(endMillis);
+
+        // Every occurrence lasts as long as the master, so the first one that can still be
+        // running at startMillis is the first one starting after startMillis - duration
+        long duration = series.mDurationMillis;
+        int index = Arrays.binarySearch(series.mStarts, 0, series.mCount,
+                startMillis - Math.max(duration, 1));
+        index = index < 0 ? -index - 1 : index + 1;
+
+        for (; index < series.mCount && series.mStarts[index] < endMillis; index++)
+        {
+            long start = series.mStarts[index];
+            if (Math.max(start + duration, start + 1) > startMillis)
+                occurrences.add(new Occurrence(master, start, start + duration, true));
+        }
+        return occurrences;
+    }
+
+    // Drops the expansion of one series. Call when its master event is updated or deleted.
+    public synchronized void invalidate(String seriesMasterId)
+    {
+        mSeries.remove(seriesMasterId);
+    }
+
+    public synchronized void clear()
+    {
+        mSeries.clear();
+    }
+
+    // The expansion state of one series
+    private static final class Series
+    {
+        private final O365Calendar_Event mMaster;
+        private final String mChangeKey;
+        private final String mTimeZoneName;
+        private final TimeZone mTimeZone;
+        private final boolean mUsesDisplayTimeZone;
+        private final long mMasterStartMillis;
+        private final long mDurationMillis;
+
+        private final RecurrencePatternType mType;
+        private final int mInterval;
+        private final int mDayOfMonth;
+        private final int mMonth;
+        private final boolean[] mDaysOfWeek = new boolean[8];
+        private final int mFirstDayOfWeek;
+        private final WeekIndex mIndex;
+
+        private final RecurrenceRangeType mRangeType;
+        private final int mNumberOfOccurrences;
+
+        // Reused for every date computation of this series
+        private final Calendar mScratch;
+
+        // Time of day of each occurrence, taken from the master start
+        private final int mHour;
+        private final int mMinute;
+        private final int mSecond;
+
+        // First date of the range, and the day after its last date, at midnight
+        private final long mRangeStartMillis;
+        private final long mRangeEndMillis;
+        private final int mBaseYear;
+        private final int mBaseMonth;
+        private final int mBaseDay;
+
+        private long[] mStarts = new long[16];
+        private int mCount;
+        private int mNextPeriod;
+        private int mEmptyPeriods;
+        private boolean mIsFinished;
+
+        // No occurrence that has not been expanded yet starts before this time
+        private long mExpandedUntilMillis = Long.MIN_VALUE;
+
+        private final long[] mPeriodStarts = new long[7];
+
+        Series(O365Calendar_Event master)
+        {
+            mMaster = master;
+            mChangeKey = master.getEvent().getChangeKey();
+            mTimeZoneName = master.getEvent().getStartTimeZone();
+            TimeZone startTimeZone = WindowsTimeZones.getTimeZone(mTimeZoneName);
+            mUsesDisplayTimeZone = startTimeZone == null;
+            mTimeZone = mUsesDisplayTimeZone
+                    ? O365CalendarModel.getDisplayTimeZone()
+                    : startTimeZone;
+            mMasterStartMillis = master.getStartMillis();
+            mDurationMillis = Math.max(0, master.getEndMillis() - master.getStartMillis());
+            mScratch = new GregorianCalendar(mTimeZone);
+
+            mScratch.setTimeInMillis(mMasterStartMillis);
+            mHour = mScratch.get(Calendar.HOUR_OF_DAY);
+            mMinute = mScratch.get(Calendar.MINUTE);
+            mSecond = mScratch.get(Calendar.SECOND);
+            int masterDayOfWeek = mScratch.get(Calendar.DAY_OF_WEEK);
+            int masterDayOfMonth = mScratch.get(Calendar.DAY_OF_MONTH);
+            int masterMonth = mScratch.get(Calendar.MONTH) + 1;
+
+            PatternedRecurrence recurrence = master.getEvent().getRecurrence();
+            RecurrencePattern pattern = recurrence.getPattern();
+            RecurrenceRange range = recurrence.getRange();
+
+            mType = pattern.getType();
+            mInterval = Math.max(1, pattern.getInterval());
+            mDayOfMonth = pattern.getDayOfMonth() > 0 ? pattern.getDayOfMonth() : masterDayOfMonth;
+            mMonth = pattern.getMonth() > 0 ? pattern.getMonth() : masterMonth;
+            mFirstDayOfWeek = pattern.getFirstDayOfWeek() == null
+                    ? Calendar.SUNDAY
+                    : toCalendarDay(pattern.getFirstDayOfWeek());
+            mIndex = pattern.getIndex() == null ? WeekIndex.First : pattern.getIndex();
+
+            boolean hasDays = false;
+            if (pattern.getDaysOfWeek() != null)
+            {
+                for (DayOfWeek day : pattern.getDaysOfWeek())
+                {
+                    mDaysOfWeek[toCalendarDay(day)] = true;
+                    hasDays = true;
+                }
+            }
+            if (!hasDays)
+                mDaysOfWeek[masterDayOfWeek] = true;
+
+            mRangeType = range.getType() == null ? RecurrenceRangeType.NoEnd : range.getType();
+            mNumberOfOccurrences = range.getNumberOfOccurrences();
+
+            // The range dates are plain dates, so their fields are read in their own zone.
+            // Without one the range starts on the date of the master start in the series
+            // zone, which mScratch still holds.
+            Calendar rangeStart = range.getStartDate();
+            if (rangeStart == null)
+                rangeStart = mScratch;
+            mBaseYear = rangeStart.get(Calendar.YEAR);
+            mBaseMonth = rangeStart.get(Calendar.MONTH);
+            mBaseDay = rangeStart.get(Calendar.DAY_OF_MONTH);
+            mRangeStartMillis = dateMillis(mBaseYear, mBaseMonth, mBaseDay);
+
+            Calendar rangeEnd = range.getEndDate();
+            if (mRangeType == RecurrenceRangeType.EndDate && rangeEnd != null)
+                mRangeEndMillis = dateMillis(rangeEnd.get(Calendar.YEAR),
+                        rangeEnd.get(Calendar.MONTH), rangeEnd.get(Calendar.DAY_OF_MONTH) + 1);
+            else
+                mRangeEndMillis = Long.MAX_VALUE;
+        }
+
+        boolean isCurrent(O365Calendar_Event master)
+        {
+            String changeKey = master.getEvent().getChangeKey();
+            String timeZoneName = master.getEvent().getStartTimeZone();
+            return mMaster == master
+                    && mMasterStartMillis == master.getStartMillis()
+                    && (changeKey == null ? mChangeKey == null : changeKey.equals(mChangeKey))
+                    && (timeZoneName == null
+                            ? mTimeZoneName == null
+                            : timeZoneName.equals(mTimeZoneName))
+                    && (!mUsesDisplayTimeZone
+                            || mTimeZone == O365CalendarModel.getDisplayTimeZone());
+        }
+
+        // Expands whole periods until every occurrence that starts before endMillis is known
+        void expandTo(long endMillis)
+        {
+            while (!mIsFinished && mExpandedUntilMillis < endMillis)
+                expandPeriod(mNextPeriod++);
+        }
+
+        private void expandPeriod(int period)
+        {
+            int candidates = getPeriodStarts(period);
+            mExpandedUntilMillis = getPeriodFirstDay(period + 1);
+
+            boolean added = false;
+            for (int i = 0; i < candidates && !mIsFinished; i++)
+            {
+                long start = mPeriodStarts[i];
+                if (start < mRangeStartMillis)
+                    continue;
+                if (start >= mRangeEndMillis)
+                {
+                    mIsFinished = true;
+                    break;
+                }
+
+                add(start);
+                added = true;
+                if (mRangeType == RecurrenceRangeType.Numbered
+                        && mCount >= mNumberOfOccurrences)
+                    mIsFinished = true;
+            }
+
+            mEmptyPeriods = added ? 0 : mEmptyPeriods + 1;
+            if (mEmptyPeriods > MAX_EMPTY_PERIODS || mExpandedUntilMillis >= mRangeEndMillis)
+                mIsFinished = true;
+        }
+
+        private void add(long start)
+        {
+            if (mCount == MAX_OCCURRENCES)
+            {
+                Log.e("Series " + mMaster.getID() + " has more than " + MAX_OCCURRENCES
+                        + " occurrences", "RecurrenceExpander.add");
+                mIsFinished = true;
+                return;
+            }
+            if (mCount == mStarts.length)
+                mStarts = Arrays.copyOf(mStarts, mCount * 2);
+            mStarts[mCount++] = start;
+        }
+
+        // Fills mPeriodStarts with the occurrence start times of one period, in order, and
+        // returns how many there are
+        private int getPeriodStarts(int period)
+        {
+            int count = 0;
+            switch (mType)
+            {
+                case Daily:
+                    mScratch.clear();
+                    mScratch.set(mBaseYear, mBaseMonth, mBaseDay, mHour, mMinute, mSecond);
+                    mScratch.add(Calendar.DAY_OF_MONTH, period * mInterval);
+                    mPeriodStarts[count++] = mScratch.getTimeInMillis();
+                    break;
+
+                case Weekly:
+                    setToWeekStart(period);
+                    for (int day = 0; day < 7; day++)
+                    {
+                        if (mDaysOfWeek[mScratch.get(Calendar.DAY_OF_WEEK)])
+                        {
+                            mScratch.set(Calendar.HOUR_OF_DAY, mHour);
+                            mScratch.set(Calendar.MINUTE, mMinute);
+                            mScratch.set(Calendar.SECOND, mSecond);
+                            mPeriodStarts[count++] = mScratch.getTimeInMillis();
+                        }
+                        mScratch.add(Calendar.DAY_OF_MONTH, 1);
+                    }
+                    break;
+
+                case AbsoluteMonthly:
+                    setToMonthStart(mBaseYear, mBaseMonth + period * mInterval);
+                    count = addDayOfMonth(mDayOfMonth);
+                    break;
+
+                case RelativeMonthly:
+                    setToMonthStart(mBaseYear, mBaseMonth + period * mInterval);
+                    count = addRelativeDay();
+                    break;
+
+                case AbsoluteYearly:
+                    setToMonthStart(mBaseYear + period * mInterval, mMonth - 1);
+                    count = addDayOfMonth(mDayOfMonth);
+                    break;
+
+                case RelativeYearly:
+                    setToMonthStart(mBaseYear + period * mInterval, mMonth - 1);
+                    count = addRelativeDay();
+                    break;
+
+                default:
+                    mIsFinished = true;
+                    break;
+            }
+            return count;
+        }
+
+        // Returns midnight of the first day of a period, the lower bound of its occurrences
+        private long getPeriodFirstDay(int period)
+        {
+            switch (mType)
+            {
+                case Daily:
+                    mScratch.clear();
+                    mScratch.set(mBaseYear, mBaseMonth, mBaseDay);
+                    mScratch.add(Calendar.DAY_OF_MONTH, period * mInterval);
+                    return mScratch.getTimeInMillis();
+                case Weekly:
+                    setToWeekStart(period);
+                    return mScratch.getTimeInMillis();
+                case AbsoluteMonthly:
+                case RelativeMonthly:
+                    setToMonthStart(mBaseYear, mBaseMonth + period * mInterval);
+                    return mScratch.getTimeInMillis();
+                default:
+                    setToMonthStart(mBaseYear + period * mInterval, Calendar.JANUARY);
+                    return mScratch.getTimeInMillis();
+            }
+        }
+
+        // Moves mScratch to midnight of the first day of the week of a weekly period
+        private void setToWeekStart(int period)
+        {
+            mScratch.clear();
+            mScratch.set(mBaseYear, mBaseMonth, mBaseDay);
+            int back = (mScratch.get(Calendar.DAY_OF_WEEK) - mFirstDayOfWeek + 7) % 7;
+            mScratch.add(Calendar.DAY_OF_MONTH, period * mInterval * 7 - back);
+        }
+
+        // Moves mScratch to midnight of the first day of a month. Months past December roll
+        // into the following years.
+        private void setToMonthStart(int year, int month)
+        {
+            mScratch.clear();
+            mScratch.set(year + month / 12, month % 12, 1);
+        }
+
+        // Adds the given day of the month held in mScratch, unless the month is too short
+        private int addDayOfMonth(int dayOfMonth)
+        {
+            if (dayOfMonth > mScratch.getActualMaximum(Calendar.DAY_OF_MONTH))
+                return 0;
+
+            mScratch.set(Calendar.DAY_OF_MONTH, dayOfMonth);
+            setTimeOfDay();
+            mPeriodStarts[0] = mScratch.getTimeInMillis();
+            return 1;
+        }
+
+        // Adds the first, second, third, fourth or last matching weekday of the month held
+        // in mScratch
+        private int addRelativeDay()
+        {
+            int lastDay = mScratch.getActualMaximum(Calendar.DAY_OF_MONTH);
+            int firstWeekday = mScratch.get(Calendar.DAY_OF_WEEK);
+            int wanted = toMatchNumber(mIndex);
+            int found = -1;
+            int matches = 0;
+            for (int day = 1; day <= lastDay; day++)
+            {
+                int weekday = (firstWeekday - 1 + day - 1) % 7 + 1;
+                if (!mDaysOfWeek[weekday])
+                    continue;
+
+                if (wanted < 0 || matches == wanted)
+                    found = day;
+                if (wanted >= 0 && matches == wanted)
+                    break;
+                matches++;
+            }
+            if (found < 0)
+                return 0;
+
+            mScratch.set(Calendar.DAY_OF_MONTH, found);
+            setTimeOfDay();
+            mPeriodStarts[0] = mScratch.getTimeInMillis();
+            return 1;
+        }
+
+        // Returns which match of the month a week index picks, or -1 for the last one
+        private static int toMatchNumber(WeekIndex index)
+        {
+            switch (index)
+            {
+                case Second:
+                    return 1;
+                case Third:
+                    return 2;
+                case Fourth:
+                    return 3;
+                case Last:
+                    return -1;
+                default:
+                    return 0;
+            }
+        }
+
+        private void setTimeOfDay()
+        {
+            mScratch.set(Calendar.HOUR_OF_DAY, mHour);
+            mScratch.set(Calendar.MINUTE, mMinute);
+            mScratch.set(Calendar.SECOND, mSecond);
+        }
+
+        private long dateMillis(int year, int month, int day)
+        {
+            mScratch.clear();
+            mScratch.set(year, month, day);
+            return mScratch.getTimeInMillis();
+        }
+
+        private static int toCalendarDay(DayOfWeek day)
+        {
+            switch (day)
+            {
+                case Monday:
+                    return Calendar.MONDAY;
+                case Tuesday:
+                    return Calendar.TUESDAY;
+                case Wednesday:
+                    return Calendar.WEDNESDAY;
+                case Thursday:
+                    return Calendar.THURSDAY;
+                case Friday:
+                    return Calendar.FRIDAY;
+                case Saturday:
+                    return Calendar.SATURDAY;
+                default:
+                    return Calendar.SUNDAY;
+            }
+        }
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Calendar;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Resolves the time zone names the Outlook service uses for the StartTimeZone of an event.
+ * The service names zones the way Windows does, such as "Pacific Standard Time", so each
+ * Windows name is mapped to the IANA zone Java knows it by, following the Unicode CLDR
+ * windowsZones table. IANA zone ids are accepted as they are.
+ */
+final class WindowsTimeZones
+{
+    private static final Map<String, String> IANA_IDS = new HashMap<String, String>();
+
+    static
+    {
+        put("Dateline Standard Time", "Etc/GMT+12");
+        put("UTC-11", "Etc/GMT+11");
+        put("Aleutian Standard Time", "America/Adak");
+        put("Hawaiian Standard Time", "Pacific/Honolulu");
+        put("Marquesas Standard Time", "Pacific/Marquesas");
+        put("Alaskan Standard Time", "America/Anchorage");
+        put("UTC-09", "Etc/GMT+9");
+        put("Pacific Standard Time (Mexico)", "America/Tijuana");
+        put("UTC-08", "Etc/GMT+8");
+        put("Pacific Standard Time", "America/Los_Angeles");
+        put("US Mountain Standard Time", "America/Phoenix");
+        put("Mountain Standard Time (Mexico)", "America/Mazatlan");
+        put("Mountain Standard Time", "America/Denver");
+        put("Central America Standard Time", "America/Guatemala");
+        put("Central Standard Time", "America/Chicago");
+        put("Easter Island Standard Time", "Pacific/Easter");
+        put("Central Standard Time (Mexico)", "America/Mexico_City");
+        put("Canada Central Standard Time", "America/Regina");
+        put("SA Pacific Standard Time", "America/Bogota");
+        put("Eastern Standard Time (Mexico)", "America/Cancun");
+        put("Eastern Standard Time", "America/New_York");
+        put("Haiti Standard Time", "America/Port-au-Prince");
+        put("Cuba Standard Time", "America/Havana");
+        put("US Eastern Standard Time", "America/Indiana/Indianapolis");
+        put("Turks And Caicos Standard Time", "America/Grand_Turk");
+        put("Paraguay Standard Time", "America/Asuncion");
+        put("Atlantic Standard Time", "America/Halifax");
+        put("Venezuela Standard Time", "America/Caracas");
+        put("Central Brazilian Standard Time", "America/Cuiaba");
+        put("SA Western Standard Time", "America/La_Paz");
+        put("Pacific SA Standard Time", "America/Santiago");
+        put("Newfoundland Standard Time", "America/St_Johns");
+        put("Tocantins Standard Time", "America/Araguaina");
+        put("E. South America Standard Time", "America/Sao_Paulo");
+        put("SA Eastern Standard Time", "America/Cayenne");
+        put("Argentina Standard Time", "America/Argentina/Buenos_Aires");
+        put("Greenland Standard Time", "America/Godthab");
+        put("Montevideo Standard Time", "America/Montevideo");
+        put("Magallanes Standard Time", "America/Punta_Arenas");
+        put("Saint Pierre Standard Time", "America/Miquelon");
+        put("Bahia Standard Time", "America/Bahia");
+        put("UTC-02", "Etc/GMT+2");
+        put("Mid-Atlantic Standard Time", "Etc/GMT+2");
+        put("Azores Standard Time", "Atlantic/Azores");
+        put("Cape Verde Standard Time", "Atlantic/Cape_Verde");
+        put("UTC", "Etc/UTC");
+        put("GMT Standard Time", "Europe/London");
+        put("Greenwich Standard Time", "Atlantic/Reykjavik");
+        put("Sao Tome Standard Time", "Africa/Sao_Tome");
+        put("Morocco Standard Time", "Africa/Casablanca");
+        put("W. Europe Standard Time", "Europe/Berlin");
+        put("Central Europe Standard Time", "Europe/Budapest");
+        put("Romance Standard Time", "Europe/Paris");
+        put("Central European Standard Time", "Europe/Warsaw");
+        put("W. Central Africa Standard Time", "Africa/Lagos");
+        put("Jordan Standard Time", "Asia/Amman");
+        put("GTB Standard Time", "Europe/Bucharest");
+        put("Middle East Standard Time", "Asia/Beirut");
+        put("Egypt Standard Time", "Africa/Cairo");
+        put("E. Europe Standard Time", "Europe/Chisinau");
+        put("Syria Standard Time", "Asia/Damascus");
+        put("West Bank Standard Time", "Asia/Hebron");
+        put("South Africa Standard Time", "Africa/Johannesburg");
+        put("FLE Standard Time", "Europe/Kiev");
+        put("Israel Standard Time", "Asia/Jerusalem");
+        put("Kaliningrad Standard Time", "Europe/Kaliningrad");
+        put("Sudan Standard Time", "Africa/Khartoum");
+        put("Libya Standard Time", "Africa/Tripoli");
+        put("Namibia Standard Time", "Africa/Windhoek");
+        put("Arabic Standard Time", "Asia/Baghdad");
+        put("Turkey Standard Time", "Europe/Istanbul");
+        put("Arab Standard Time", "Asia/Riyadh");
+        put("Belarus Standard Time", "Europe/Minsk");
+        put("Russian Standard Time", "Europe/Moscow");
+        put("E. Africa Standard Time", "Africa/Nairobi");
+        put("Volgograd Standard Time", "Europe/Volgograd");
+        put("Iran Standard Time", "Asia/Tehran");
+        put("Arabian Standard Time", "Asia/Dubai");
+        put("Astrakhan Standard Time", "Europe/Astrakhan");
+        put("Azerbaijan Standard Time", "Asia/Baku");
+        put("Russia Time Zone 3", "Europe/Samara");
+        put("Mauritius Standard Time", "Indian/Mauritius");
+        put("Saratov Standard Time", "Europe/Saratov");
+        put("Georgian Standard Time", "Asia/Tbilisi");
+        put("Caucasus Standard Time", "Asia/Yerevan");
+        put("Afghanistan Standard Time", "Asia/Kabul");
+        put("West Asia Standard Time", "Asia/Tashkent");
+        put("Ekaterinburg Standard Time", "Asia/Yekaterinburg");
+        put("Pakistan Standard Time", "Asia/Karachi");
+        put("India Standard Time", "Asia/Kolkata");
+        put("Sri Lanka Standard Time", "Asia/Colombo");
+        put("Nepal Standard Time", "Asia/Kathmandu");
+        put("Central Asia Standard Time", "Asia/Almaty");
+        put("Bangladesh Standard Time", "Asia/Dhaka");
+        put("Omsk Standard Time", "Asia/Omsk");
+        put("Myanmar Standard Time", "Asia/Rangoon");
+        put("SE Asia Standard Time", "Asia/Bangkok");
+        put("Altai Standard Time", "Asia/Barnaul");
+        put("W. Mongolia Standard Time", "Asia/Hovd");
+        put("North Asia Standard Time", "Asia/Krasnoyarsk");
+        put("N. Central Asia Standard Time", "Asia/Novosibirsk");
+        put("Tomsk Standard Time", "Asia/Tomsk");
+        put("China Standard Time", "Asia/Shanghai");
+        put("North Asia East Standard Time", "Asia/Irkutsk");
+        put("Singapore Standard Time", "Asia/Singapore");
+        put("W. Australia Standard Time", "Australia/Perth");
+        put("Taipei Standard Time", "Asia/Taipei");
+        put("Ulaanbaatar Standard Time", "Asia/Ulaanbaatar");
+        put("Aus Central W. Standard Time", "Australia/Eucla");
+        put("Transbaikal Standard Time", "Asia/Chita");
+        put("Tokyo Standard Time", "Asia/Tokyo");
+        put("North Korea Standard Time", "Asia/Pyongyang");
+        put("Korea Standard Time", "Asia/Seoul");
+        put("Yakutsk Standard Time", "Asia/Yakutsk");
+        put("Cen. Australia Standard Time", "Australia/Adelaide");
+        put("AUS Central Standard Time", "Australia/Darwin");
+        put("E. Australia Standard Time", "Australia/Brisbane");
+        put("AUS Eastern Standard Time", "Australia/Sydney");
+        put("West Pacific Standard Time", "Pacific/Port_Moresby");
+        put("Tasmania Standard Time", "Australia/Hobart");
+        put("Vladivostok Standard Time", "Asia/Vladivostok");
+        put("Lord Howe Standard Time", "Australia/Lord_Howe");
+        put("Bougainville Standard Time", "Pacific/Bougainville");
+        put("Russia Time Zone 10", "Asia/Srednekolymsk");
+        put("Magadan Standard Time", "Asia/Magadan");
+        put("Norfolk Standard Time", "Pacific/Norfolk");
+        put("Sakhalin Standard Time", "Asia/Sakhalin");
+        put("Central Pacific Standard Time", "Pacific/Guadalcanal");
+        put("Russia Time Zone 11", "Asia/Kamchatka");
+        put("New Zealand Standard Time", "Pacific/Auckland");
+        put("UTC+12", "Etc/GMT-12");
+        put("Fiji Standard Time", "Pacific/Fiji");
+        put("Kamchatka Standard Time", "Asia/Kamchatka");
+        put("Chatham Islands Standard Time", "Pacific/Chatham");
+        put("UTC+13", "Etc/GMT-13");
+        put("Tonga Standard Time", "Pacific/Tongatapu");
+        put("Samoa Standard Time", "Pacific/Apia");
+        put("Line Islands Standard Time", "Pacific/Kiritimati");
+    }
+
+    private WindowsTimeZones()
+    {
+    }
+
+    private static void put(String windowsName, String ianaId)
+    {
+        IANA_IDS.put(windowsName, ianaId);
+    }
+
+    // Returns the zone with the given Windows name or IANA id, or null if the name is
+    // missing or no zone on this device has it
+    static TimeZone getTimeZone(String name)
+    {
+        if (name == null || name.length() == 0)
+            return null;
+
+        String id = IANA_IDS.get(name);
+        if (id == null)
+            id = name;
+
+        // getTimeZone returns GMT for an id it does not know
+        TimeZone zone = TimeZone.getTimeZone(id);
+        return zone.getID().equals(id) ? zone : null;
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
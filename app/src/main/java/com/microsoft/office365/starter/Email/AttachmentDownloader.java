@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import android.util.Log;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.microsoft.office365.starter.O365APIsStart_Application;
+import com.microsoft.office365.starter.helpers.AuthenticationController;
+import com.microsoft.office365.starter.interfaces.OnAttachmentProgressListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+/**
+ * Downloads mail attachments straight to disk. The Outlook services client reads attachments as
+ * base64 ContentBytes inside the JSON response, which puts the whole attachment in the heap more
+ * than once. This class reads the raw bytes from the attachment's $value endpoint instead and
+ * copies them to a file in CHUNK_SIZE pieces, so memory use does not depend on the size of the
+ * attachment.
+ * <p>
+ * Bytes go to a ".part" file next to the target, which is renamed once the download completes.
+ * When a download is interrupted, the next attempt, or the next call after the app restarts,
+ * asks for the rest of the attachment with an HTTP Range header and appends to the part file.
+ */
+public class AttachmentDownloader
+{
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CONCURRENT_DOWNLOADS = 2;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+    // Interrupted downloads are resumed this many times before they fail
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_DELAY_MILLIS = 2 * 1000;
+
+    private static final String PART_SUFFIX = ".part";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static AttachmentDownloader sInstance;
+
+    private final O365APIsStart_Application mApplication;
+    private final ListeningExecutorService mExecutor = MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(MAX_CONCURRENT_DOWNLOADS));
+
+    public static synchronized AttachmentDownloader getInstance(O365APIsStart_Application application)
+    {
+        if (sInstance == null)
+        {
+            sInstance = new AttachmentDownloader(application);
+        }
+        return sInstance;
+    }
+
+    private AttachmentDownloader(O365APIsStart_Application application)
+    {
+        mApplication = application;
+    }
+
+    // Downloads an attachment of a message to target and returns the target once the
+    // whole attachment is on disk. Cancelling the future stops the download and keeps the
+    // part file so a later call can resume it. The listener may be null.
+    public ListenableFuture<File> download(
+            final String messageId,
+            final String attachmentId,
+            final File target,
+            final OnAttachmentProgressListener listener)
+    {
+        return mExecutor.submit(new Callable<File>()
+        {
+            @Override
+            public File call() throws Exception
+            {
+                File partFile = new File(target.getPath() + PART_SUFFIX);
+                URL url = makeAttachmentUrl(messageId, attachmentId);
+                for (int attempt = 1; ; attempt++)
+                {
+                    try
+                    {
+                        downloadRemainder(url, attachmentId, partFile, listener);
+                        break;
+                    }
+                    catch (InterruptedIOException ex)
+                    {
+                        // Timeouts are worth a retry, but not a cancelled download
+                        if (Thread.currentThread().isInterrupted() || attempt == MAX_ATTEMPTS)
+                        {
+                            throw ex;
+                        }
+                        Log.e("Attachment download interrupted, resuming: " + ex.getMessage(),
+                                "AttachmentDownloader.download");
+                    }
+                    catch (IOException ex)
+                    {
+                        if (attempt == MAX_ATTEMPTS)
+                        {
+                            throw ex;
+                        }
+                        Log.e("Attachment download interrupted, resuming: " + ex.getMessage(),
+                                "AttachmentDownloader.download");
+                    }
+                    Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+                }
+
+                if (target.exists() && !target.delete())
+                {
+                    throw new IOException("Could not replace " + target.getPath());
+                }
+                if (!partFile.renameTo(target))
+                {
+                    throw new IOException("Could not move the attachment to " + target.getPath());
+                }
+                return target;
+            }
+        });
+    }
+
+    // Appends the bytes after the end of the part file until the attachment is complete
+    private void downloadRemainder(
+            URL url,
+            String attachmentId,
+            File partFile,
+            OnAttachmentProgressListener listener) throws IOException, InterruptedException
+    {
+        long downloaded = partFile.exists() ? partFile.length() : 0;
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try
+        {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            connection.setRequestProperty("Authorization", "Bearer " + getAccessToken());
+            if (downloaded > 0)
+            {
+                connection.setRequestProperty("Range", "bytes=" + downloaded + "-");
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HTTP_RANGE_NOT_SATISFIABLE && downloaded > 0)
+            {
+                // The part file already holds the whole attachment
+                return;
+            }
+
+            boolean append = responseCode == HttpURLConnection.HTTP_PARTIAL;
+            if (!append && responseCode != HttpURLConnection.HTTP_OK)
+            {
+                throw new IOException("The service answered " + responseCode
+                        + " " + connection.getResponseMessage());
+            }
+            if (!append)
+            {
+                // The service sent the whole attachment, so start the part file over
+                downloaded = 0;
+            }
+
+            long contentLength = parseContentLength(connection);
+            long totalBytes = contentLength < 0 ? -1 : downloaded + contentLength;
+            copyToFile(connection.getInputStream(), partFile, append, downloaded, totalBytes,
+                    attachmentId, listener);
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    private static void copyToFile(
+            InputStream input,
+            File partFile,
+            boolean append,
+            long downloaded,
+            long totalBytes,
+            String attachmentId,
+            OnAttachmentProgressListener listener) throws IOException, InterruptedException
+    {
+        OutputStream output = new FileOutputStream(partFile, append);
+        try
+        {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = input.read(chunk)) != -1)
+            {
+                if (Thread.interrupted())
+                {
+                    throw new InterruptedException("Attachment download cancelled");
+                }
+                output.write(chunk, 0, read);
+                downloaded += read;
+                if (listener != null)
+                {
+                    listener.onAttachmentProgress(attachmentId, downloaded, totalBytes);
+                }
+            }
+            if (totalBytes >= 0 && downloaded < totalBytes)
+            {
+                throw new IOException("The connection closed after " + downloaded
+                        + " of " + totalBytes + " bytes");
+            }
+        }
+        finally
+        {
+            output.close();
+            input.close();
+        }
+    }
+
+    private static long parseContentLength(HttpURLConnection connection)
+    {
+        // getContentLength is an int, which overflows for attachments over 2 GB
+        String contentLength = connection.getHeaderField("Content-Length");
+        try
+        {
+            return contentLength == null ? -1 : Long.parseLong(contentLength);
+        }
+        catch (NumberFormatException ex)
+        {
+            return -1;
+        }
+    }
+
+    private URL makeAttachmentUrl(String messageId, String attachmentId) throws IOException
+    {
+        return new URL(mApplication.getMailEndpointUri()
+                + "/me/messages/" + encode(messageId)
+                + "/attachments/" + encode(attachmentId)
+                + "/$value");
+    }
+
+    private String getAccessToken() throws IOException
+    {
+        try
+        {
+            return AuthenticationController.getInstance()
+                    .getAccessToken(mApplication.getMailResourceId());
+        }
+        catch (Exception ex)
+        {
+            throw new IOException("Could not get an access token: " + ex.getMessage());
+        }
+    }
+
+    private static String encode(String pathSegment) throws UnsupportedEncodingException
+    {
+        return URLEncoder.encode(pathSegment, "UTF-8").replace("+", "%20");
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Groups the loaded mail messages by ConversationId. MailMessages adds and removes messages as
+ * each snapshot is published, so a page of messages only touches the conversations it belongs
+ * to. Every conversation keeps an up to date ConversationSummary, which getConversation returns
+ * without any work. The conversations are also kept in a TreeSet ordered by their latest message,
+ * so a threaded view never sorts the whole mailbox again.
+ */
+public class ConversationIndex
+{
+    // Newest conversation first. The id breaks ties so two conversations never compare equal.
+    private static final Comparator<Conversation> NEWEST_FIRST = new Comparator<Conversation>()
+    {
+        @Override
+        public int compare(Conversation lhs, Conversation rhs)
+        {
+            if (lhs.mLatestMillis != rhs.mLatestMillis)
+            {
+                return lhs.mLatestMillis > rhs.mLatestMillis ? -1 : 1;
+            }
+            return lhs.mConversationId.compareTo(rhs.mConversationId);
+        }
+    };
+
+    private final Map<String, Conversation> mConversations = new HashMap<String, Conversation>();
+    private final Map<String, Conversation> mConversationsByMessageId =
+            new HashMap<String, Conversation>();
+    private final TreeSet<Conversation> mNewestFirst = new TreeSet<Conversation>(NEWEST_FIRST);
+
+    // Returns the summary of a conversation, or null if none of its messages are loaded
+    public synchronized ConversationSummary getConversation(String conversationId)
+    {
+        Conversation conversation = mConversations.get(conversationId);
+        return conversation == null ? null : conversation.mSummary;
+    }
+
+    // Returns the summary of the conversation a loaded message belongs to, or null
+    public synchronized ConversationSummary getConversationOfMessage(String messageId)
+    {
+        Conversation conversation = mConversationsByMessageId.get(messageId);
+        return conversation == null ? null : conversation.mSummary;
+    }
+
+    // Returns the summaries of all conversations, the one with the newest message first
+    public synchronized List<ConversationSummary> getConversations()
+    {
+        List<ConversationSummary> summaries = new ArrayList<ConversationSummary>(mNewestFirst.size());
+        for (Conversation conversation : mNewestFirst)
+        {
+            summaries.add(conversation.mSummary);
+        }
+        return summaries;
+    }
+
+    // Returns the loaded messages of a conversation, newest first
+    public synchronized List<O365MailItemsModel.O365Mail_Message> getMessages(String conversationId)
+    {
+        List<O365MailItemsModel.O365Mail_Message> messages =
+                new ArrayList<O365MailItemsModel.O365Mail_Message>();
+        Conversation conversation = mConversations.get(conversationId);
+        if (conversation != null)
+        {
+            messages.addAll(conversation.mMessages.values());
+            Collections.sort(messages, new Comparator<O365MailItemsModel.O365Mail_Message>()
+            {
+                @Override
+                public int compare(
+                        O365MailItemsModel.O365Mail_Message lhs,
+                        O365MailItemsModel.O365Mail_Message rhs)
+                {
+                    long lhsMillis = lhs.getDateTimeReceivedMillis();
+                    long rhsMillis = rhs.getDateTimeReceivedMillis();
+                    return lhsMillis > rhsMillis ? -1 : (lhsMillis == rhsMillis ? 0 : 1);
+                }
+            });
+        }
+        return messages;
+    }
+
+    synchronized void addMessages(Collection<O365MailItemsModel.O365Mail_Message> messages)
+    {
+        for (O365MailItemsModel.O365Mail_Message message : messages)
+        {
+            if (mConversationsByMessageId.containsKey(message.getID()))
+            {
+                continue;
+            }
+
+            String conversationId = message.getConversationId();
+            Conversation conversation = mConversations.get(conversationId);
+            if (conversation == null)
+            {
+                conversation = new Conversation(conversationId);
+                mConversations.put(conversationId, conversation);
+            }
+            else
+            {
+                // The ordering key may change, so the conversation leaves the set first
+                mNewestFirst.remove(conversation);
+            }
+
+            conversation.add(message);
+            mConversationsByMessageId.put(message.getID(), conversation);
+            mNewestFirst.add(conversation);
+        }
+    }
+
+    synchronized void removeMessages(Collection<O365MailItemsModel.O365Mail_Message> messages)
+    {
+        for (O365MailItemsModel.O365Mail_Message message : messages)
+        {
+            Conversation conversation = mConversationsByMessageId.remove(message.getID());
+            if (conversation == null)
+            {
+                continue;
+            }
+
+            mNewestFirst.remove(conversation);
+            conversation.remove(message);
+            if (conversation.mMessages.isEmpty())
+            {
+                mConversations.remove(conversation.mConversationId);
+            }
+            else
+            {
+                mNewestFirst.add(conversation);
+            }
+        }
+    }
+
+    synchronized void clear()
+    {
+        mConversations.clear();
+        mConversationsByMessageId.clear();
+        mNewestFirst.clear();
+    }
+
+    /**
+     * The loaded messages of one conversation and the running totals of its summary
+     */
+    private static class Conversation
+    {
+        private final String mConversationId;
+        private final Map<String, O365MailItemsModel.O365Mail_Message> mMessages =
+                new LinkedHashMap<String, O365MailItemsModel.O365Mail_Message>();
+        private O365MailItemsModel.O365Mail_Message mLatest;
+        private long mLatestMillis = Long.MIN_VALUE;
+        private int mUnreadCount;
+        private ConversationSummary mSummary;
+
+        Conversation(String conversationId)
+        {
+            mConversationId = conversationId;
+        }
+
+        void add(O365MailItemsModel.O365Mail_Message message)
+        {
+            mMessages.put(message.getID(), message);
+            if (!message.isRead())
+            {
+                mUnreadCount++;
+            }
+            if (mLatest == null || message.getDateTimeReceivedMillis() > mLatestMillis)
+            {
+                mLatest = message;
+                mLatestMillis = message.getDateTimeReceivedMillis();
+            }
+            updateSummary();
+        }
+
+        void remove(O365MailItemsModel.O365Mail_Message message)
+        {
+            if (mMessages.remove(message.getID()) == null)
+            {
+                return;
+            }
+            if (!message.isRead())
+            {
+                mUnreadCount--;
+            }
+
+            // Only losing the latest message needs a look at the rest of the conversation
+            if (mLatest != null && mLatest.getID().equals(message.getID()))
+            {
+                mLatest = null;
+                mLatestMillis = Long.MIN_VALUE;
+                for (O365MailItemsModel.O365Mail_Message remaining : mMessages.values())
+                {
+                    if (mLatest == null || remaining.getDateTimeReceivedMillis() > mLatestMillis)
+                    {
+                        mLatest = remaining;
+                        mLatestMillis = remaining.getDateTimeReceivedMillis();
+                    }
+                }
+            }
+            updateSummary();
+        }
+
+        private void updateSummary()
+        {
+            mSummary = new ConversationSummary(
+                    mConversationId, mLatest, mMessages.size(), mUnreadCount);
+        }
+    }
+
+    /**
+     * An immutable summary of a conversation
+     */
+    public static final class ConversationSummary
+    {
+        private final String mConversationId;
+        private final O365MailItemsModel.O365Mail_Message mLatestMessage;
+        private final int mMessageCount;
+        private final int mUnreadCount;
+
+        ConversationSummary(
+                String conversationId,
+                O365MailItemsModel.O365Mail_Message latestMessage,
+                int messageCount,
+                int unreadCount)
+        {
+            mConversationId = conversationId;
+            mLatestMessage = latestMessage;
+            mMessageCount = messageCount;
+            mUnreadCount = unreadCount;
+        }
+
+        public String getConversationId()
+        {
+            return mConversationId;
+        }
+
+        public O365MailItemsModel.O365Mail_Message getLatestMessage()
+        {
+            return mLatestMessage;
+        }
+
+        public int getMessageCount()
+        {
+            return mMessageCount;
+        }
+
+        public int getUnreadCount()
+        {
+            return mUnreadCount;
+        }
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Holds the bodies of opened mail messages. Bodies are keyed by message id and ChangeKey, so a
+ * message that changed on the server is never shown with its old body. The in-memory cache is
+ * bounded by the size of the bodies in bytes. The least recently used bodies are written to
+ * files in the app's cache directory when they are evicted, and read back on the next request.
+ * The cache directory is trimmed to MAX_DISK_BYTES, oldest files first, and Android may also
+ * clear it when storage runs low, in which case the body is read from the service again.
+ */
+public class MailBodyCache
+{
+    private static final String CACHE_DIRECTORY = "mail_bodies";
+    private static final String CHARSET = "UTF-8";
+
+    // Upper bounds for the bodies kept in memory and on disk
+    private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 32 * 1024 * 1024;
+
+    private static MailBodyCache sInstance;
+
+    private final File mDirectory;
+    private final LruCache<String, String> mMemoryCache;
+    private long mDiskBytes = -1;
+
+    public static synchronized MailBodyCache getInstance(Context context)
+    {
+        if (sInstance == null)
+        {
+            sInstance = new MailBodyCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private MailBodyCache(Context context)
+    {
+        mDirectory = new File(context.getCacheDir(), CACHE_DIRECTORY);
+
+        // Small heaps get a proportionally smaller share
+        int memoryBytes = (int) Math.min(MAX_MEMORY_BYTES, Runtime.getRuntime().maxMemory() / 16);
+        mMemoryCache = new LruCache<String, String>(memoryBytes)
+        {
+            @Override
+            protected int sizeOf(String key, String body)
+            {
+                // Java strings use two bytes per character
+                return body.length() * 2;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, String oldBody, String newBody)
+            {
+                if (evicted)
+                {
+                    spillToDisk(key, oldBody);
+                }
+            }
+        };
+    }
+
+    // Returns the body of a message, reading it back from disk if it was evicted from
+    // memory, or null if the body is not cached
+    public String get(String messageId, String changeKey)
+    {
+        String key = makeKey(messageId, changeKey);
+        String body = mMemoryCache.get(key);
+        if (body != null)
+        {
+            return body;
+        }
+
+        body = readFromDisk(key);
+        if (body != null)
+        {
+            mMemoryCache.put(key, body);
+        }
+        return body;
+    }
+
+    public boolean contains(String messageId, String changeKey)
+    {
+        String key = makeKey(messageId, changeKey);
+        return mMemoryCache.get(key) != null || getFile(key).exists();
+    }
+
+    public void put(String messageId, String changeKey, String body)
+    {
+        mMemoryCache.put(makeKey(messageId, changeKey), body == null ? "" : body);
+    }
+
+    private static String makeKey(String messageId, String changeKey)
+    {
+        return changeKey == null ? messageId : messageId + '/' + changeKey;
+    }
+
+    private File getFile(String key)
+    {
+        try
+        {
+            return new File(mDirectory, UUID.nameUUIDFromBytes(key.getBytes(CHARSET)).toString());
+        }
+        catch (UnsupportedEncodingException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Called by the LruCache outside of its lock on the thread whose put caused the eviction
+    private synchronized void spillToDisk(String key, String body)
+    {
+        File file = getFile(key);
+        if (file.exists())
+        {
+            // Bodies are immutable for a given ChangeKey, so an earlier spill is still valid
+            return;
+        }
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+        {
+            Log.e("Failed to create the mail body cache directory", "MailBodyCache.spillToDisk");
+            return;
+        }
+
+        OutputStream output = null;
+        try
+        {
+            byte[] bytes = body.getBytes(CHARSET);
+            output = new FileOutputStream(file);
+            output.write(bytes);
+            output.close();
+            output = null;
+            mDiskBytes = getDiskBytes() + bytes.length;
+            if (mDiskBytes > MAX_DISK_BYTES)
+            {
+                trimDisk();
+            }
+        }
+        catch (IOException ex)
+        {
+            Log.e("Failed to write a mail body: " + ex.getMessage(), "MailBodyCache.spillToDisk");
+            file.delete();
+        }
+        finally
+        {
+            closeQuietly(output);
+        }
+    }
+
+    private synchronized String readFromDisk(String key)
+    {
+        File file = getFile(key);
+        if (!file.exists())
+        {
+            return null;
+        }
+
+        InputStream input = null;
+        try
+        {
+            byte[] bytes = new byte[(int) file.length()];
+            input = new FileInputStream(file);
+            int offset = 0;
+            while (offset < bytes.length)
+            {
+                int read = input.read(bytes, offset, bytes.length - offset);
+                if (read < 0)
+                {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+                offset += read;
+            }
+
+            // Touch the file so trimming treats it as recently used
+            file.setLastModified(System.currentTimeMillis());
+            return new String(bytes, CHARSET);
+        }
+        catch (IOException ex)
+        {
+            Log.e("Failed to read a mail body: " + ex.getMessage(), "MailBodyCache.readFromDisk");
+            return null;
+        }
+        finally
+        {
+            closeQuietly(input);
+        }
+    }
+
+    // Sums the size of the cache files the first time it is needed
+    private long getDiskBytes()
+    {
+        if (mDiskBytes < 0)
+        {
+            mDiskBytes = 0;
+            File[] files = mDirectory.listFiles();
+            if (files != null)
+            {
+                for (File file : files)
+                {
+                    mDiskBytes += file.length();
+                }
+            }
+        }
+        return mDiskBytes;
+    }
+
+    // Deletes the least recently used files until the directory is back to three
+    // quarters of MAX_DISK_BYTES, so trimming does not run again on the next spill
+    private void trimDisk()
+    {
+        File[] files = mDirectory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File lhs, File rhs)
+            {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        long targetBytes = MAX_DISK_BYTES / 4 * 3;
+        for (File file : files)
+        {
+            if (mDiskBytes <= targetBytes)
+            {
+                break;
+            }
+            long length = file.length();
+            if (file.delete())
+            {
+                mDiskBytes -= length;
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable == null)
+        {
+            return;
+        }
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException ex)
+        {
+            // Nothing left to release
+        }
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Reads the bodies of the messages around the visible rows of the mail list before they are
+ * opened. The message list reports its visible range through
+ * O365MailItemsModel.onMessageListScrolled. The prefetcher wants the visible messages, top to
+ * bottom, followed by the next PREFETCH_AHEAD messages. At most MAX_PREFETCHES_IN_FLIGHT reads
+ * run at once so prefetching never crowds out the list loads or a message the user opens. Reads
+ * for messages that scrolled out of the range are cancelled, unless the user opened the message
+ * in the meantime.
+ */
+class MailBodyPrefetcher
+{
+    // Messages below the visible rows whose bodies are read ahead
+    private static final int PREFETCH_AHEAD = 5;
+
+    private static final int MAX_PREFETCHES_IN_FLIGHT = 2;
+
+    private final O365MailItemsModel mModel;
+    private final Queue<String> mQueuedIds = new ArrayDeque<String>();
+    private final Map<String, ListenableFuture<?>> mInFlight = new HashMap<String, ListenableFuture<?>>();
+    private int mFirstVisiblePosition = -1;
+    private int mLastVisiblePosition = -1;
+
+    // Set while the visible range is applied. A cancelled read finishes inline, and the
+    // prefetches it would start are started once the new range is in place instead.
+    private boolean mIsUpdatingRange;
+
+    MailBodyPrefetcher(O365MailItemsModel model)
+    {
+        mModel = model;
+    }
+
+    // Called on every scroll event, so it returns at once unless the range moved
+    synchronized void onVisibleRangeChanged(int firstVisiblePosition, int lastVisiblePosition)
+    {
+        if (firstVisiblePosition == mFirstVisiblePosition
+                && lastVisiblePosition == mLastVisiblePosition)
+        {
+            return;
+        }
+        mFirstVisiblePosition = firstVisiblePosition;
+        mLastVisiblePosition = lastVisiblePosition;
+
+        List<O365MailItemsModel.O365Mail_Message> messages = mModel.getMail().getItems();
+        int first = Math.max(0, firstVisiblePosition);
+        int last = Math.min(messages.size() - 1, lastVisiblePosition + PREFETCH_AHEAD);
+        Set<String> wantedIds = new LinkedHashSet<String>();
+        for (int position = first; position <= last; position++)
+        {
+            wantedIds.add(messages.get(position).getID());
+        }
+
+        // The reads are cancelled after the loop, because a cancelled read runs its
+        // callback at once
+        List<String> cancelledIds = new ArrayList<String>();
+        Iterator<String> inFlightIds = mInFlight.keySet().iterator();
+        while (inFlightIds.hasNext())
+        {
+            String messageId = inFlightIds.next();
+            if (!wantedIds.contains(messageId))
+            {
+                inFlightIds.remove();
+                cancelledIds.add(messageId);
+            }
+        }
+
+        mIsUpdatingRange = true;
+        try
+        {
+            for (String messageId : cancelledIds)
+            {
+                mModel.cancelBodyPrefetch(messageId);
+            }
+        }
+        finally
+        {
+            mIsUpdatingRange = false;
+        }
+
+        mQueuedIds.clear();
+        for (String messageId : wantedIds)
+        {
+            if (!mInFlight.containsKey(messageId))
+            {
+                mQueuedIds.add(messageId);
+            }
+        }
+        startQueuedPrefetches();
+    }
+
+    private void startQueuedPrefetches()
+    {
+        while (mInFlight.size() < MAX_PREFETCHES_IN_FLIGHT && !mQueuedIds.isEmpty())
+        {
+            final String messageId = mQueuedIds.poll();
+            final ListenableFuture<O365MailItemsModel.O365Mail_Message> prefetch =
+                    mModel.prefetchMessageBody(messageId);
+
+            // Bodies that are already cached complete at once and take no slot
+            if (prefetch.isDone())
+            {
+                continue;
+            }
+
+            mInFlight.put(messageId, prefetch);
+            Futures.addCallback(
+                    prefetch, new FutureCallback<O365MailItemsModel.O365Mail_Message>()
+                    {
+                        @Override
+                        public void onSuccess(O365MailItemsModel.O365Mail_Message mailMessage)
+                        {
+                            // Render it too, so opening the message binds cached text
+                            MailBodyRenderer.getInstance().render(mailMessage);
+                            onPrefetchFinished(messageId, prefetch);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t)
+                        {
+                            // A failed prefetch is read again when the message is opened
+                            onPrefetchFinished(messageId, prefetch);
+                        }
+                    }
+            );
+        }
+    }
+
+    private synchronized void onPrefetchFinished(String messageId, ListenableFuture<?> prefetch)
+    {
+        if (mInFlight.get(messageId) != prefetch)
+        {
+            return;
+        }
+        mInFlight.remove(messageId);
+        if (!mIsUpdatingRange)
+        {
+            startQueuedPrefetches();
+        }
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
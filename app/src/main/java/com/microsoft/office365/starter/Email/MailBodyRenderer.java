@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import android.os.Process;
+import android.text.Html;
+import android.util.LruCache;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+/**
+ * Turns message bodies into text that a TextView can show as is. HTML bodies are stripped of the
+ * parts a TextView cannot use, such as scripts, style sheets and images, and converted with
+ * Html.fromHtml on a single background thread. The rendered text is cached by message id and
+ * ChangeKey, so opening a message again, or opening one the prefetcher already rendered, needs
+ * no work on the UI thread at all.
+ */
+public class MailBodyRenderer
+{
+    // Upper bound for the rendered text kept in memory
+    private static final int MAX_CACHE_BYTES = 2 * 1024 * 1024;
+
+    // Elements whose content must not show up as text
+    private static final Pattern HIDDEN_ELEMENTS = Pattern.compile(
+            "<(script|style|head|title|xml)\\b.*?</\\1\\s*>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern COMMENTS = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+
+    // Html.fromHtml shows a placeholder for every image, and marketing mail has many
+    private static final Pattern IMAGES = Pattern.compile("<img\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+
+    private static MailBodyRenderer sInstance;
+
+    private final ListeningExecutorService mExecutor = MoreExecutors.listeningDecorator(
+            Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(final Runnable runnable)
+                {
+                    return new Thread(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "MailBodyRenderer");
+                }
+            }));
+
+    private final LruCache<String, CharSequence> mRenderedBodies =
+            new LruCache<String, CharSequence>(MAX_CACHE_BYTES)
+            {
+                @Override
+                protected int sizeOf(String key, CharSequence renderedBody)
+                {
+                    return renderedBody.length() * 2;
+                }
+            };
+
+    // Renders in progress, so a body that is prefetched and opened is rendered once
+    private final Map<String, ListenableFuture<CharSequence>> mPendingRenders =
+            new HashMap<String, ListenableFuture<CharSequence>>();
+
+    public static synchronized MailBodyRenderer getInstance()
+    {
+        if (sInstance == null)
+        {
+            sInstance = new MailBodyRenderer();
+        }
+        return sInstance;
+    }
+
+    private MailBodyRenderer()
+    {
+    }
+
+    // Returns the rendered body of a message whose body was read. Completes at once when
+    // the body was rendered before, or with empty text when the body was not read yet.
+    public synchronized ListenableFuture<CharSequence> render(
+            O365MailItemsModel.O365Mail_Message message)
+    {
+        // Nothing is rendered or cached for a body that is not there yet, so the message
+        // is rendered once its body was read
+        if (!message.hasItemBody())
+        {
+            return Futures.<CharSequence>immediateFuture("");
+        }
+
+        final String key = makeKey(message.getID(), message.getChangeKey());
+        CharSequence renderedBody = mRenderedBodies.get(key);
+        if (renderedBody != null)
+        {
+            return Futures.immediateFuture(renderedBody);
+        }
+
+        ListenableFuture<CharSequence> pendingRender = mPendingRenders.get(key);
+        if (pendingRender != null)
+        {
+            return pendingRender;
+        }
+
+        final O365MailItemsModel.O365Mail_Message messageToRender = message;
+        ListenableFuture<CharSequence> render = mExecutor.submit(new Callable<CharSequence>()
+        {
+            @Override
+            public CharSequence call()
+            {
+                CharSequence renderedBody;
+                try
+                {
+                    String body = messageToRender.getItemBody();
+                    renderedBody = renderBody(body);
+
+                    // The body can leave the body cache before it is rendered
+                    if (body.length() > 0 || messageToRender.hasItemBody())
+                    {
+                        mRenderedBodies.put(key, renderedBody);
+                    }
+                }
+                finally
+                {
+                    synchronized (MailBodyRenderer.this)
+                    {
+                        mPendingRenders.remove(key);
+                    }
+                }
+                return renderedBody;
+            }
+        });
+        mPendingRenders.put(key, render);
+        return render;
+    }
+
+    // Converts a body to display text. Bodies without markup are shown as they are.
+    static CharSequence renderBody(String body)
+    {
+        if (body == null || body.indexOf('<') < 0)
+        {
+            return body == null ? "" : body;
+        }
+
+        String sanitizedBody = HIDDEN_ELEMENTS.matcher(body).replaceAll("");
+        sanitizedBody = COMMENTS.matcher(sanitizedBody).replaceAll("");
+        sanitizedBody = IMAGES.matcher(sanitizedBody).replaceAll("");
+        CharSequence renderedBody = Html.fromHtml(sanitizedBody);
+
+        // Block elements at the end of the body leave trailing blank lines
+        int end = renderedBody.length();
+        while (end > 0 && Character.isWhitespace(renderedBody.charAt(end - 1)))
+        {
+            end--;
+        }
+        return renderedBody.subSequence(0, end);
+    }
+
+    private static String makeKey(String messageId, String changeKey)
+    {
+        return changeKey == null ? messageId : messageId + '/' + changeKey;
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import android.util.Log;
+
+import com.microsoft.office365.starter.O365APIsStart_Application;
+import com.microsoft.office365.starter.helpers.APIErrorMessageHelper;
+import com.microsoft.office365.starter.interfaces.OnOperationCompleteListener;
+import com.microsoft.outlookservices.Folder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the headers of every mail folder in the local MailMessageStore, so filed mail can be
+ * read and searched offline. syncAllFolders walks the folder tree and syncs the folders on a
+ * pool of MAX_CONCURRENT_FOLDER_SYNCS threads, so one slow folder does not hold up the rest and
+ * the service is never asked for more than a few folders at once. The walk runs on the same
+ * pool, so it does not hold up the shared AsyncController threads while it blocks. Each folder gets its own
+ * O365MailItemsModel, which getFolderModel returns for views that show that folder.
+ * <p>
+ * The inbox is left out because MailItemListActivity syncs it with its own model.
+ */
+public class MailFolderSyncEngine
+{
+    private static final int MAX_CONCURRENT_FOLDER_SYNCS = 3;
+
+    // Number of folders requested at a time while walking the folder tree. The service
+    // returns only ten folders when no $top is given.
+    private static final int FOLDER_PAGE_SIZE = 50;
+
+    private static MailFolderSyncEngine sInstance;
+
+    private final O365APIsStart_Application mApplication;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_FOLDER_SYNCS);
+    private final Map<String, O365MailItemsModel> mFolderModels =
+            new HashMap<String, O365MailItemsModel>();
+    private final AtomicBoolean mIsSyncing = new AtomicBoolean();
+    private final AtomicBoolean mHasStartedBackgroundSync = new AtomicBoolean();
+    private volatile List<Folder> mFolders = Collections.emptyList();
+
+    public static synchronized MailFolderSyncEngine getInstance(O365APIsStart_Application application)
+    {
+        if (sInstance == null)
+        {
+            sInstance = new MailFolderSyncEngine(application);
+        }
+        return sInstance;
+    }
+
+    private MailFolderSyncEngine(O365APIsStart_Application application)
+    {
+        mApplication = application;
+    }
+
+    // Returns the folders found by the last sync, parents before their child folders
+    public List<Folder> getFolders()
+    {
+        return mFolders;
+    }
+
+    // Returns the model of a folder, creating it if the folder was not synced yet
+    public synchronized O365MailItemsModel getFolderModel(String folderId)
+    {
+        O365MailItemsModel model = mFolderModels.get(folderId);
+        if (model == null)
+        {
+            model = new O365MailItemsModel(mApplication, folderId);
+            mFolderModels.put(folderId, model);
+        }
+        return model;
+    }
+
+    // Syncs the headers of the first pageSize messages of every folder. The listener, if
+    // there is one, gets a BatchOperationResult naming the folders that failed. Returns
+    // false without doing anything if a sync is already running.
+    public boolean syncAllFolders(final int pageSize, final OnOperationCompleteListener listener)
+    {
+        if (!mIsSyncing.compareAndSet(false, true))
+        {
+            return false;
+        }
+
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                List<Folder> folders;
+                try
+                {
+                    folders = readFolders();
+                }
+                catch (Exception ex)
+                {
+                    String errorMessage = APIErrorMessageHelper.getErrorMessage(ex.getMessage());
+                    Log.e("Failed to read mail folders: " + errorMessage,
+                            "MailFolderSyncEngine.syncAllFolders");
+                    Map<String, String> failures = new HashMap<String, String>();
+                    failures.put("", errorMessage == null ? "" : errorMessage);
+                    completeSync(0, failures, listener);
+                    return;
+                }
+
+                mFolders = Collections.unmodifiableList(folders);
+                syncFolders(folders, pageSize, listener);
+            }
+        });
+        return true;
+    }
+
+    // Starts syncAllFolders the first time it is called in this process, and does nothing
+    // after that. Callers may call it from onCreate, which runs again on every rotation
+    // and every return to the mail list.
+    public boolean syncAllFoldersOnce(int pageSize)
+    {
+        if (!mHasStartedBackgroundSync.compareAndSet(false, true))
+        {
+            return false;
+        }
+
+        return syncAllFolders(pageSize, null);
+    }
+
+    private void syncFolders(
+            List<Folder> folders,
+            final int pageSize,
+            final OnOperationCompleteListener listener)
+    {
+        final Map<String, String> failures = new ConcurrentHashMap<String, String>();
+        final AtomicInteger remaining = new AtomicInteger(folders.size());
+        if (folders.isEmpty())
+        {
+            completeSync(0, failures, listener);
+            return;
+        }
+
+        final int folderCount = folders.size();
+        for (final Folder folder : folders)
+        {
+            mExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        // Waiting here keeps at most MAX_CONCURRENT_FOLDER_SYNCS folders
+                        // syncing at once. Only the engine's own threads wait.
+                        getFolderModel(folder.getId()).syncHeaders(pageSize).get();
+                    }
+                    catch (Exception ex)
+                    {
+                        Throwable cause = ex instanceof ExecutionException && ex.getCause() != null
+                                ? ex.getCause()
+                                : ex;
+                        String errorMessage = APIErrorMessageHelper.getErrorMessage(cause.getMessage());
+                        Log.e("Failed to sync folder " + folder.getDisplayName() + ": " + errorMessage,
+                                "MailFolderSyncEngine.syncFolders");
+                        failures.put(folder.getId(), errorMessage == null ? "" : errorMessage);
+                    }
+
+                    if (remaining.decrementAndGet() == 0)
+                    {
+                        completeSync(folderCount, failures, listener);
+                    }
+                }
+            });
+        }
+    }
+
+    private void completeSync(
+            int folderCount,
+            Map<String, String> failures,
+            OnOperationCompleteListener listener)
+    {
+        mIsSyncing.set(false);
+        if (listener == null)
+        {
+            return;
+        }
+
+        String resultMessage = failures.isEmpty()
+                ? folderCount + " mail folders were synced."
+                : failures.size() + " of " + folderCount + " mail folders could not be synced.";
+        listener.onOperationComplete(new OnOperationCompleteListener.BatchOperationResult(
+                "Sync Mail Folders"
+                , resultMessage
+                , new HashMap<String, String>(failures)));
+    }
+
+    // Walks the folder tree breadth first. Runs on a background thread and blocks on the
+    // service calls.
+    private List<Folder> readFolders() throws Exception
+    {
+        String inboxId = mApplication.getMailClient()
+                .getMe()
+                .getFolders().getById("Inbox")
+                .read()
+                .get()
+                .getId();
+
+        List<Folder> folders = new ArrayList<Folder>();
+        Queue<Folder> parents = new ArrayDeque<Folder>();
+        readChildFolders(null, inboxId, folders, parents);
+        while (!parents.isEmpty())
+        {
+            readChildFolders(parents.poll().getId(), inboxId, folders, parents);
+        }
+        return folders;
+    }
+
+    // Reads every child folder of a folder, or the top level folders when parentId is
+    // null, a page at a time until the service returns a short page
+    private void readChildFolders(
+            String parentId,
+            String inboxId,
+            List<Folder> folders,
+            Queue<Folder> parents) throws Exception
+    {
+        int skip = 0;
+        List<Folder> page;
+        do
+        {
+            page = readFolderPage(parentId, skip);
+            for (Folder folder : page)
+            {
+                addFolder(folder, inboxId, folders, parents);
+            }
+            skip += page.size();
+        }
+        while (page.size() >= FOLDER_PAGE_SIZE);
+    }
+
+    private List<Folder> readFolderPage(String parentId, int skip) throws Exception
+    {
+        if (parentId == null)
+        {
+            return mApplication.getMailClient()
+                    .getMe()
+                    .getFolders()
+                    .top(FOLDER_PAGE_SIZE)
+                    .skip(skip)
+                    .read()
+                    .get();
+        }
+        return mApplication.getMailClient()
+                .getMe()
+                .getFolders().getById(parentId)
+                .getChildFolders()
+                .top(FOLDER_PAGE_SIZE)
+                .skip(skip)
+                .read()
+                .get();
+    }
+
+    private static void addFolder(
+            Folder folder,
+            String inboxId,
+            List<Folder> folders,
+            Queue<Folder> parents)
+    {
+        if (!folder.getId().equals(inboxId))
+        {
+            folders.add(folder);
+        }
+
+        // Folders filed below the inbox are synced too
+        Integer childFolderCount = folder.getChildFolderCount();
+        if (childFolderCount != null && childFolderCount > 0)
+        {
+            parents.add(folder);
+        }
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
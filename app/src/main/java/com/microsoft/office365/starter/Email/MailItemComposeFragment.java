@@ -17,8 +17,16 @@ import android.widget.TextView;
 
 import com.microsoft.office365.starter.R;
 
+import java.util.UUID;
+
 public class MailItemComposeFragment extends Fragment {
 
+	private static final String STATE_COMPOSE_ID = "compose_id";
+
+	// Created when the fragment opens and kept across rotation. The outbox
+	// queues a message only once per compose, so a double tap on send does
+	// not send it twice, while the same text written again is sent again.
+	String mComposeId;
 	String mMailTo;
 	String mMailCc;
 	String mMailSubject;
@@ -35,7 +43,7 @@ public class MailItemComposeFragment extends Fragment {
 		/**
 		 * Callback for when an item has been selected.
 		 */
-		public void onSendMail(String mailTo, String mailCc,
+		public void onSendMail(String composeId, String mailTo, String mailCc,
 				String mailSubject, String mailBody);
 
 		public void onSendMailCancelled();
@@ -70,13 +78,25 @@ public class MailItemComposeFragment extends Fragment {
 		mMailBody = textView.getText().toString();
 
 		// Inform host activity which will remove this fragment and send email
-		mListener.onSendMail(mMailTo, mMailCc, mMailSubject, mMailBody);
+		mListener.onSendMail(mComposeId, mMailTo, mMailCc, mMailSubject,
+				mMailBody);
 	}
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		if (savedInstanceState != null) {
+			mComposeId = savedInstanceState.getString(STATE_COMPOSE_ID);
+		}
+		if (mComposeId == null) {
+			mComposeId = UUID.randomUUID().toString();
+		}
+	}
 
+	@Override
+	public void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		outState.putString(STATE_COMPOSE_ID, mComposeId);
 	}
 
 	@Override
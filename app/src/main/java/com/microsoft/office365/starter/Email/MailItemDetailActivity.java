@@ -92,8 +92,8 @@ public class MailItemDetailActivity extends Activity implements
 	}
 
 	@Override
-	public void onSendMail(String mailTo, String mailCc, String mailSubject,
-			String mailBody) {
+	public void onSendMail(String composeId, String mailTo, String mailCc,
+			String mailSubject, String mailBody) {
 		// send mail
 
 		this.finish();
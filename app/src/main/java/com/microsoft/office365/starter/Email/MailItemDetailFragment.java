@@ -5,11 +5,12 @@ import android.app.Fragment;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.webkit.WebView;
+import android.text.method.LinkMovementMethod;
 import android.widget.TextView;
 
 import com.microsoft.office365.starter.O365APIsStart_Application;
 import com.microsoft.office365.starter.R;
+import com.microsoft.office365.starter.interfaces.OnMessageBodyLoadedListener;
 
 /**
  * A fragment representing a single MailItem detail screen. This fragment is
@@ -18,7 +19,8 @@ import com.microsoft.office365.starter.R;
  * {@link com.microsoft.office365.starter.Email.MailItemDetailActivity} on
  * handsets.
  */
-public class MailItemDetailFragment extends Fragment {
+public class MailItemDetailFragment extends Fragment implements
+		OnMessageBodyLoadedListener {
 
 	private O365APIsStart_Application mApplication;
 	private O365MailItemsModel mMailItems;
@@ -33,6 +35,7 @@ public class MailItemDetailFragment extends Fragment {
 	 * The dummy content this fragment is presenting.
 	 */
 	private O365MailItemsModel.O365Mail_Message mMailItem;
+	private View mRootView;
 
 	/**
 	 * Mandatory empty constructor for the fragment manager to instantiate the
@@ -50,8 +53,8 @@ public class MailItemDetailFragment extends Fragment {
 		if (getArguments().containsKey(ARG_ITEM_ID))
 			// Load the mail item content specified by the fragment
 			// arguments.
-			mMailItem = mApplication.getMailItemsModel().getMail().ITEM_MAP
-					.get(getArguments().getString(ARG_ITEM_ID));
+			mMailItem = mApplication.getMailItemsModel().getMail()
+					.getItem(getArguments().getString(ARG_ITEM_ID));
 
 	}
 
@@ -61,26 +64,70 @@ public class MailItemDetailFragment extends Fragment {
 		View rootView = inflater.inflate(R.layout.fragment_mailitem_detail,
 				container, false);
 
+		mRootView = rootView;
+
 		// Show the mail item content as text in a TextView.
 		if (mMailItem != null) {
-			String daString;
-			TextView editTo = (TextView) rootView
-					.findViewById(R.id.mail_detail_to);
-			editTo.setText(mMailItem.getMessageRecipients());
-			TextView editCC = (TextView) rootView
-					.findViewById(R.id.mail_detail_cc);
-			editCC.setText(mMailItem.getCCMessageRecipients());
 			TextView editFrom = (TextView) rootView
 					.findViewById(R.id.mail_detail_from);
 			editFrom.setText(mMailItem.getFrom());
 			TextView editSubject = (TextView) rootView
 					.findViewById(R.id.mail_detail_subject);
 			editSubject.setText(mMailItem.getSubject());
-			WebView editBody = (WebView) rootView
+
+			// The message list only loads message headers. Show the preview
+			// until the body and recipients are read from the service and the
+			// body is rendered on a background thread.
+			TextView editBody = (TextView) rootView
 					.findViewById(R.id.mail_detail_body);
-			editBody.loadData(mMailItem.getItemBody(), "text/html", "UTF-8");
+			editBody.setMovementMethod(LinkMovementMethod.getInstance());
+			editBody.setText(mMailItem.getBodyPreview());
+			mApplication.getMailItemsModel().getMessageBody(mMailItem.getID(),
+					this);
 		}
 
 		return rootView;
 	}
+
+	@Override
+	public void onDestroyView() {
+		super.onDestroyView();
+		mRootView = null;
+	}
+
+	// Callback from the model when the body of the displayed message was read
+	@Override
+	public void onMessageBodyLoaded(
+			final O365MailItemsModel.O365Mail_Message message,
+			final CharSequence renderedBody) {
+		if (message == null || getActivity() == null)
+			return;
+
+		getActivity().runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				// A list reload can replace the shown message with another
+				// instance of it, so the message is matched by id
+				if (mRootView == null || mMailItem == null
+						|| !message.getID().equals(mMailItem.getID()))
+					return;
+
+				// The loaded instance holds the recipients that were read
+				mMailItem = message;
+				showBodyDetails(renderedBody);
+			}
+		});
+	}
+
+	private void showBodyDetails(CharSequence renderedBody) {
+		TextView editTo = (TextView) mRootView
+				.findViewById(R.id.mail_detail_to);
+		editTo.setText(mMailItem.getMessageRecipients());
+		TextView editCC = (TextView) mRootView
+				.findViewById(R.id.mail_detail_cc);
+		editCC.setText(mMailItem.getCCMessageRecipients());
+		TextView editBody = (TextView) mRootView
+				.findViewById(R.id.mail_detail_body);
+		editBody.setText(renderedBody);
+	}
 }
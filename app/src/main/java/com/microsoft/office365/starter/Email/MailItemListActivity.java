@@ -27,6 +27,9 @@ import com.microsoft.office365.starter.interfaces.OnMessagesAddedListener;
 import com.microsoft.office365.starter.interfaces.OnOperationCompleteListener;
 import com.microsoft.office365.starter.helpers.DeleteDialogFragment;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An activity representing a list of MailItems. This activity has different
  * presentations for handset and tablet-size devices. On handsets, the activity
@@ -84,12 +87,22 @@ public class MailItemListActivity extends Activity implements
 		mApplication.getMailItemsModel().setMessageAddedListener(this);
 
 		actionGetMail();
+
+		// Keep the headers of the other mail folders in the local store so
+		// they can be read and searched offline. Synced once per process, not
+		// on every rotation.
+		MailFolderSyncEngine.getInstance(mApplication).syncAllFoldersOnce(
+				mMessagePageSize);
+
 		MailItemListFragment listFragment = (MailItemListFragment) getFragmentManager()
 				.findFragmentById(R.id.mailitem_list);
 
+		// The adapter keeps its own copy of the messages. It is refreshed
+		// from the model's latest snapshot on the UI thread.
 		ArrayAdapter<O365MailItemsModel.O365Mail_Message> listAdapter = new ArrayAdapter<O365MailItemsModel.O365Mail_Message>(
 				this, android.R.layout.simple_list_item_activated_1,
-				mApplication.getMailItemsModel().getMail().ITEMS);
+				new ArrayList<O365MailItemsModel.O365Mail_Message>(mApplication
+						.getMailItemsModel().getMail().getItems()));
 
 		mListAdapter = listAdapter;
 		listFragment.setListAdapter(listAdapter);
@@ -117,6 +130,10 @@ public class MailItemListActivity extends Activity implements
 				"Please wait.");
 
 		setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
+
+		// Always reload from the first page. Later pages are requested by the
+		// model as the list is scrolled.
+		mMessagePageNumber = 0;
 		mApplication.getMailItemsModel().getMessageList(mMessagePageSize,
 				mMessagePageNumber);
 		mSelectedMailItemID = null;
@@ -240,6 +257,17 @@ public class MailItemListActivity extends Activity implements
 			@Override
 			public void run() {
 
+				MailItemListFragment mailListFragment = (MailItemListFragment) getFragmentManager()
+						.findFragmentById(R.id.mailitem_list);
+
+				// A page appended while scrolling, or a sync of the rows already
+				// shown, only needs the list refreshed.
+				// The selection, detail pane and progress dialog are untouched.
+				if (messageCollection.isAppendedPage()) {
+					showMessages(messageCollection.getMessageCollection());
+					return;
+				}
+
 				if (mDialog.isShowing())
 					mDialog.dismiss();
 				setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
@@ -252,10 +280,7 @@ public class MailItemListActivity extends Activity implements
 					getFragmentManager().beginTransaction()
 							.detach(mailDetailFragment).commit();
 
-				MailItemListFragment mailListFragment = (MailItemListFragment) getFragmentManager()
-						.findFragmentById(R.id.mailitem_list);
-				((ArrayAdapter<O365MailItemsModel.O365Mail_Message>) mailListFragment
-						.getListAdapter()).notifyDataSetChanged();
+				showMessages(messageCollection.getMessageCollection());
 
 				mailListFragment.getListView().setVisibility(View.VISIBLE);
 				mailListFragment.setListAdapter(mListAdapter);
@@ -286,22 +311,28 @@ public class MailItemListActivity extends Activity implements
 				Toast.makeText(MailItemListActivity.this,
 						opResult.getOperationResult(), Toast.LENGTH_LONG)
 						.show();
-				MailItemListFragment mailItemListFragment = (MailItemListFragment) getFragmentManager()
-						.findFragmentById(R.id.mailitem_list);
 
-				// Notify the list adaptor that the underlying event list has
-				// changed
-				((ArrayAdapter<O365MailItemsModel.O365Mail_Message>) mailItemListFragment
-						.getListAdapter()).notifyDataSetChanged();
+				// Show the messages left after the operation
+				showMessages(mApplication.getMailItemsModel().getMail()
+						.getItems());
 			}
 		});
 	}
 
+	// Copies a snapshot of the model's messages into the list adapter. Must
+	// be called on the UI thread.
+	private void showMessages(List<O365MailItemsModel.O365Mail_Message> messages) {
+		mListAdapter.setNotifyOnChange(false);
+		mListAdapter.clear();
+		mListAdapter.addAll(messages);
+		mListAdapter.notifyDataSetChanged();
+	}
+
 	@Override
-	public void onSendMail(String mailTo, String mailCc, String mailSubject,
-			String mailBody) {
-		mApplication.getMailItemsModel().postNewMailToServer(mailTo, mailCc,
-				mailSubject, mailBody);
+	public void onSendMail(String composeId, String mailTo, String mailCc,
+			String mailSubject, String mailBody) {
+		mApplication.getMailItemsModel().postNewMailToServer(composeId, mailTo,
+				mailCc, mailSubject, mailBody);
 		if (mTwoPane) {
 			FragmentManager fm = getFragmentManager();
 			fm.popBackStack(COMPOSE_FRAGMENT_STACK_STATE,
@@ -327,8 +358,12 @@ public class MailItemListActivity extends Activity implements
 			return;
 		}
 		O365MailItemsModel.O365Mail_Message mailMessage = mApplication
-				.getMailItemsModel().getMail().ITEM_MAP
-				.get(mSelectedMailItemID);
+				.getMailItemsModel().getMail().getItem(mSelectedMailItemID);
+		if (mailMessage == null) {
+			Toast.makeText(MailItemListActivity.this,
+					"Select an email to delete", Toast.LENGTH_LONG).show();
+			return;
+		}
 
 		Bundle arguments = new Bundle();
 		arguments.putString("MessageString",
@@ -349,12 +384,8 @@ public class MailItemListActivity extends Activity implements
 			mDialog.setCancelable(true);
 			mDialog.setIndeterminate(true);
 			mDialog.show();
-			O365MailItemsModel.O365Mail_Message mailMessage = mApplication
-					.getMailItemsModel().getMail().ITEM_MAP
-					.get(mSelectedMailItemID);
-
 			mApplication.getMailItemsModel().postDeleteMailItem(
-					mailMessage.getID());
+					mSelectedMailItemID);
 		}
 	}
 
@@ -4,6 +4,7 @@ import android.app.Activity;
 import android.os.Bundle;
 import android.app.ListFragment;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.ListView;
 
 import com.microsoft.office365.starter.O365APIsStart_Application;
@@ -85,6 +86,25 @@ public class MailItemListFragment extends ListFragment {
 			setActivatedPosition(savedInstanceState
 					.getInt(STATE_ACTIVATED_POSITION));
 
+		// Let the model load the next page of messages as the user scrolls
+		// toward the end of the list, and prefetch the bodies of the visible
+		// messages
+		getListView().setOnScrollListener(new AbsListView.OnScrollListener() {
+			@Override
+			public void onScrollStateChanged(AbsListView view, int scrollState) {
+			}
+
+			@Override
+			public void onScroll(AbsListView view, int firstVisibleItem,
+					int visibleItemCount, int totalItemCount) {
+				if (totalItemCount == 0
+						|| mApplication.getMailItemsModel() == null)
+					return;
+
+				mApplication.getMailItemsModel().onMessageListScrolled(
+						firstVisibleItem, firstVisibleItem + visibleItemCount - 1);
+			}
+		});
 	}
 
 	@Override
@@ -114,9 +134,10 @@ public class MailItemListFragment extends ListFragment {
 
 		// Notify the active callbacks interface (the activity, if the
 		// fragment is attached to one) that an item has been selected.
+		// The adapter holds the copy of the messages the user is looking at
 		mCallbacks
-				.onItemSelected(mApplication.getMailItemsModel().getMail().ITEMS
-						.get(position).getID());
+				.onItemSelected(((O365MailItemsModel.O365Mail_Message) getListAdapter()
+						.getItem(position)).getID());
 	}
 
 	@Override
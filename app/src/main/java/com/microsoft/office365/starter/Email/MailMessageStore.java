@@ -0,0 +1,634 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.microsoft.outlookservices.EmailAddress;
+import com.microsoft.outlookservices.Message;
+import com.microsoft.outlookservices.Recipient;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * On-device store of message headers. The store holds the newest messages of a mail folder as a
+ * contiguous run ordered by DateTimeReceived, so O365MailItemsModel can show the folder from disk
+ * before the service answers. The newest DateTimeReceived in a folder is the folder's sync
+ * watermark; only messages received at or after it, and messages whose ChangeKey moved, are
+ * fetched again.
+ * <p>
+ * The store also holds the outbox of composed messages waiting to be sent by MailOutbox.
+ */
+public class MailMessageStore extends SQLiteOpenHelper
+{
+    private static final String DATABASE_NAME = "mail_store.db";
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String TABLE_MESSAGES = "messages";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_FOLDER_ID = "folder_id";
+    private static final String COLUMN_CHANGE_KEY = "change_key";
+    private static final String COLUMN_SUBJECT = "subject";
+    private static final String COLUMN_FROM_NAME = "from_name";
+    private static final String COLUMN_FROM_ADDRESS = "from_address";
+    private static final String COLUMN_SENDER_NAME = "sender_name";
+    private static final String COLUMN_SENDER_ADDRESS = "sender_address";
+    private static final String COLUMN_DATE_RECEIVED = "date_received";
+    private static final String COLUMN_DATE_SENT = "date_sent";
+    private static final String COLUMN_IS_READ = "is_read";
+    private static final String COLUMN_BODY_PREVIEW = "body_preview";
+    private static final String COLUMN_CONVERSATION_ID = "conversation_id";
+
+    private static final String[] MESSAGE_COLUMNS = {
+            COLUMN_ID,
+            COLUMN_CHANGE_KEY,
+            COLUMN_SUBJECT,
+            COLUMN_FROM_NAME,
+            COLUMN_FROM_ADDRESS,
+            COLUMN_SENDER_NAME,
+            COLUMN_SENDER_ADDRESS,
+            COLUMN_DATE_RECEIVED,
+            COLUMN_DATE_SENT,
+            COLUMN_IS_READ,
+            COLUMN_BODY_PREVIEW,
+            COLUMN_CONVERSATION_ID
+    };
+
+    private static final String ORDER_NEWEST_FIRST = COLUMN_DATE_RECEIVED + " DESC";
+
+    // SQLite allows at most 999 bound arguments per statement
+    private static final int MAX_QUERY_ARGUMENTS = 500;
+
+    private static final String TABLE_OUTBOX = "outbox";
+    private static final String COLUMN_DEDUPLICATION_KEY = "deduplication_key";
+    private static final String COLUMN_MAIL_TO = "mail_to";
+    private static final String COLUMN_MAIL_CC = "mail_cc";
+    private static final String COLUMN_BODY = "body";
+    private static final String COLUMN_ATTEMPTS = "attempts";
+    private static final String COLUMN_NEXT_ATTEMPT = "next_attempt";
+
+    private static final String[] OUTBOX_COLUMNS = {
+            COLUMN_DEDUPLICATION_KEY,
+            COLUMN_MAIL_TO,
+            COLUMN_MAIL_CC,
+            COLUMN_SUBJECT,
+            COLUMN_BODY,
+            COLUMN_ATTEMPTS,
+            COLUMN_NEXT_ATTEMPT
+    };
+
+    private static MailMessageStore sInstance;
+
+    // Returns the process wide store. The application context is used so the store
+    // never holds on to an activity.
+    public static synchronized MailMessageStore getInstance(Context context)
+    {
+        if (sInstance == null)
+        {
+            sInstance = new MailMessageStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private MailMessageStore(Context context)
+    {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+        db.execSQL("CREATE TABLE " + TABLE_MESSAGES + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_FOLDER_ID + " TEXT NOT NULL, "
+                + COLUMN_CHANGE_KEY + " TEXT, "
+                + COLUMN_SUBJECT + " TEXT, "
+                + COLUMN_FROM_NAME + " TEXT, "
+                + COLUMN_FROM_ADDRESS + " TEXT, "
+                + COLUMN_SENDER_NAME + " TEXT, "
+                + COLUMN_SENDER_ADDRESS + " TEXT, "
+                + COLUMN_DATE_RECEIVED + " INTEGER NOT NULL, "
+                + COLUMN_DATE_SENT + " INTEGER NOT NULL, "
+                + COLUMN_IS_READ + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_BODY_PREVIEW + " TEXT, "
+                + COLUMN_CONVERSATION_ID + " TEXT)");
+        db.execSQL("CREATE INDEX messages_folder_received ON " + TABLE_MESSAGES + " ("
+                + COLUMN_FOLDER_ID + ", "
+                + COLUMN_DATE_RECEIVED + " DESC)");
+        createOutboxTable(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+        if (oldVersion < 2)
+        {
+            createOutboxTable(db);
+        }
+        if (oldVersion < 3)
+        {
+            // Rows stored before this version have no conversation, and a delta sync would
+            // not write them again because their ChangeKey did not move. They are dropped,
+            // which also clears the watermark, so the next sync reads the headers again.
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN "
+                    + COLUMN_CONVERSATION_ID + " TEXT");
+            db.delete(TABLE_MESSAGES, null, null);
+        }
+    }
+
+    private static void createOutboxTable(SQLiteDatabase db)
+    {
+        db.execSQL("CREATE TABLE " + TABLE_OUTBOX + " ("
+                + COLUMN_DEDUPLICATION_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_MAIL_TO + " TEXT NOT NULL, "
+                + COLUMN_MAIL_CC + " TEXT, "
+                + COLUMN_SUBJECT + " TEXT, "
+                + COLUMN_BODY + " TEXT, "
+                + COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_NEXT_ATTEMPT + " INTEGER NOT NULL)");
+    }
+
+    // Returns up to limit messages of a folder, newest first
+    public List<Message> readMessages(String folderId, int limit)
+    {
+        List<Message> messages = new ArrayList<Message>();
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_MESSAGES
+                , MESSAGE_COLUMNS
+                , COLUMN_FOLDER_ID + " = ?"
+                , new String[]{folderId}
+                , null
+                , null
+                , ORDER_NEWEST_FIRST
+                , Integer.toString(limit));
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                messages.add(readMessage(cursor));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return messages;
+    }
+
+    // Returns up to limit messages of a folder whose id sorts after afterId, in id order.
+    // Used to walk a whole folder in pages that stay stable while messages are written.
+    public List<Message> readMessagesAfterId(String folderId, String afterId, int limit)
+    {
+        List<Message> messages = new ArrayList<Message>();
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_MESSAGES
+                , MESSAGE_COLUMNS
+                , COLUMN_FOLDER_ID + " = ? AND " + COLUMN_ID + " > ?"
+                , new String[]{folderId, afterId}
+                , null
+                , null
+                , COLUMN_ID
+                , Integer.toString(limit));
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                messages.add(readMessage(cursor));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return messages;
+    }
+
+    // Returns the stored messages with the given ids, in the order of the ids. Ids that
+    // are not in the store are skipped.
+    public List<Message> readMessagesById(List<String> ids)
+    {
+        Map<String, Message> messagesById = new HashMap<String, Message>();
+        for (int start = 0; start < ids.size(); start += MAX_QUERY_ARGUMENTS)
+        {
+            List<String> batch = ids.subList(start, Math.min(ids.size(), start + MAX_QUERY_ARGUMENTS));
+            StringBuilder selection = new StringBuilder(COLUMN_ID).append(" IN (");
+            for (int i = 0; i < batch.size(); i++)
+            {
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(')');
+
+            Cursor cursor = getReadableDatabase().query(
+                    TABLE_MESSAGES
+                    , MESSAGE_COLUMNS
+                    , selection.toString()
+                    , batch.toArray(new String[batch.size()])
+                    , null
+                    , null
+                    , null);
+            try
+            {
+                while (cursor.moveToNext())
+                {
+                    Message message = readMessage(cursor);
+                    messagesById.put(message.getId(), message);
+                }
+            }
+            finally
+            {
+                cursor.close();
+            }
+        }
+
+        List<Message> messages = new ArrayList<Message>(messagesById.size());
+        for (String id : ids)
+        {
+            Message message = messagesById.get(id);
+            if (message != null)
+            {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    // Returns the ids of the folders that have stored messages
+    public List<String> readFolderIds()
+    {
+        List<String> folderIds = new ArrayList<String>();
+        Cursor cursor = getReadableDatabase().query(
+                true
+                , TABLE_MESSAGES
+                , new String[]{COLUMN_FOLDER_ID}
+                , null
+                , null
+                , null
+                , null
+                , null
+                , null);
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                folderIds.add(cursor.getString(0));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return folderIds;
+    }
+
+    // Returns the id and ChangeKey of the messages in a folder received at or after
+    // receivedMillis, newest first
+    public Map<String, String> readChangeKeysReceivedSince(String folderId, long receivedMillis)
+    {
+        Map<String, String> changeKeys = new LinkedHashMap<String, String>();
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_MESSAGES
+                , new String[]{COLUMN_ID, COLUMN_CHANGE_KEY}
+                , COLUMN_FOLDER_ID + " = ? AND " + COLUMN_DATE_RECEIVED + " >= ?"
+                , new String[]{folderId, Long.toString(receivedMillis)}
+                , null
+                , null
+                , ORDER_NEWEST_FIRST);
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                changeKeys.put(cursor.getString(0), cursor.getString(1));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return changeKeys;
+    }
+
+    // Returns the ids of the messages in a folder received at or after receivedMillis
+    public List<String> readIdsReceivedSince(String folderId, long receivedMillis)
+    {
+        List<String> ids = new ArrayList<String>();
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_MESSAGES
+                , new String[]{COLUMN_ID}
+                , COLUMN_FOLDER_ID + " = ? AND " + COLUMN_DATE_RECEIVED + " >= ?"
+                , new String[]{folderId, Long.toString(receivedMillis)}
+                , null
+                , null
+                , null);
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                ids.add(cursor.getString(0));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    // The sync watermark of a folder: the newest DateTimeReceived in the store, or zero
+    // when nothing from the folder has been stored yet
+    public long getWatermark(String folderId)
+    {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT MAX(" + COLUMN_DATE_RECEIVED + ") FROM " + TABLE_MESSAGES
+                        + " WHERE " + COLUMN_FOLDER_ID + " = ?"
+                , new String[]{folderId});
+        try
+        {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    // Inserts new messages and overwrites the stored copy of messages that changed
+    public void writeMessages(String folderId, List<Message> messages)
+    {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try
+        {
+            for (Message message : messages)
+            {
+                db.insertWithOnConflict(
+                        TABLE_MESSAGES
+                        , null
+                        , toContentValues(folderId, message)
+                        , SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    // Replaces everything stored for a folder. Used when the first page is read from the
+    // service so the stored messages stay a contiguous run from the top of the folder.
+    public void replaceMessages(String folderId, List<Message> messages)
+    {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try
+        {
+            db.delete(TABLE_MESSAGES, COLUMN_FOLDER_ID + " = ?", new String[]{folderId});
+            for (Message message : messages)
+            {
+                db.insertWithOnConflict(
+                        TABLE_MESSAGES
+                        , null
+                        , toContentValues(folderId, message)
+                        , SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteMessages(Collection<String> ids)
+    {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try
+        {
+            for (String id : ids)
+            {
+                db.delete(TABLE_MESSAGES, COLUMN_ID + " = ?", new String[]{id});
+            }
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    // Adds a message to the outbox. Returns false if a message with the same
+    // deduplication key is already waiting to be sent.
+    public boolean insertOutboxMessage(MailOutbox.QueuedMail queuedMail)
+    {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_DEDUPLICATION_KEY, queuedMail.getDeduplicationKey());
+        values.put(COLUMN_MAIL_TO, queuedMail.getMailTo());
+        values.put(COLUMN_MAIL_CC, queuedMail.getMailCc());
+        values.put(COLUMN_SUBJECT, queuedMail.getSubject());
+        values.put(COLUMN_BODY, queuedMail.getBody());
+        values.put(COLUMN_ATTEMPTS, queuedMail.getAttempts());
+        values.put(COLUMN_NEXT_ATTEMPT, queuedMail.getNextAttempt());
+        return getWritableDatabase().insertWithOnConflict(
+                TABLE_OUTBOX
+                , null
+                , values
+                , SQLiteDatabase.CONFLICT_IGNORE) != -1;
+    }
+
+    // Returns the outbox messages whose next send attempt is due at nowMillis
+    public List<MailOutbox.QueuedMail> readDueOutboxMessages(long nowMillis)
+    {
+        List<MailOutbox.QueuedMail> queuedMails = new ArrayList<MailOutbox.QueuedMail>();
+        Cursor cursor = getReadableDatabase().query(
+                TABLE_OUTBOX
+                , OUTBOX_COLUMNS
+                , COLUMN_NEXT_ATTEMPT + " <= ?"
+                , new String[]{Long.toString(nowMillis)}
+                , null
+                , null
+                , COLUMN_NEXT_ATTEMPT);
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                queuedMails.add(new MailOutbox.QueuedMail(
+                        cursor.getString(0)
+                        , cursor.getString(1)
+                        , cursor.getString(2)
+                        , cursor.getString(3)
+                        , cursor.getString(4)
+                        , cursor.getInt(5)
+                        , cursor.getLong(6)));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+        return queuedMails;
+    }
+
+    // Returns the time of the earliest pending send attempt, or -1 if the outbox is empty
+    public long readNextOutboxAttempt()
+    {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT MIN(" + COLUMN_NEXT_ATTEMPT + ") FROM " + TABLE_OUTBOX
+                , null);
+        try
+        {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    public void updateOutboxAttempt(String deduplicationKey, int attempts, long nextAttempt)
+    {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ATTEMPTS, attempts);
+        values.put(COLUMN_NEXT_ATTEMPT, nextAttempt);
+        getWritableDatabase().update(
+                TABLE_OUTBOX
+                , values
+                , COLUMN_DEDUPLICATION_KEY + " = ?"
+                , new String[]{deduplicationKey});
+    }
+
+    public void deleteOutboxMessage(String deduplicationKey)
+    {
+        getWritableDatabase().delete(
+                TABLE_OUTBOX
+                , COLUMN_DEDUPLICATION_KEY + " = ?"
+                , new String[]{deduplicationKey});
+    }
+
+    // Formats a watermark as an OData DateTimeOffset literal for use in a $filter
+    public static String toODataDateTime(long millis)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    private static ContentValues toContentValues(String folderId, Message message)
+    {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ID, message.getId());
+        values.put(COLUMN_FOLDER_ID, folderId);
+        values.put(COLUMN_CHANGE_KEY, message.getChangeKey());
+        values.put(COLUMN_SUBJECT, message.getSubject());
+
+        EmailAddress from = getEmailAddress(message.getFrom());
+        if (from != null)
+        {
+            values.put(COLUMN_FROM_NAME, from.getName());
+            values.put(COLUMN_FROM_ADDRESS, from.getAddress());
+        }
+
+        EmailAddress sender = getEmailAddress(message.getSender());
+        if (sender != null)
+        {
+            values.put(COLUMN_SENDER_NAME, sender.getName());
+            values.put(COLUMN_SENDER_ADDRESS, sender.getAddress());
+        }
+
+        values.put(COLUMN_DATE_RECEIVED, toMillis(message.getDateTimeReceived()));
+        values.put(COLUMN_DATE_SENT, toMillis(message.getDateTimeSent()));
+        values.put(COLUMN_IS_READ, Boolean.TRUE.equals(message.getIsRead()) ? 1 : 0);
+        values.put(COLUMN_BODY_PREVIEW, message.getBodyPreview());
+        values.put(COLUMN_CONVERSATION_ID, message.getConversationId());
+        return values;
+    }
+
+    // Rebuilds a header-only Message from a row read with MESSAGE_COLUMNS
+    private static Message readMessage(Cursor cursor)
+    {
+        Message message = new Message();
+        message.setId(cursor.getString(0));
+        message.setChangeKey(cursor.getString(1));
+        message.setSubject(cursor.getString(2));
+        message.setFrom(makeRecipient(cursor.getString(3), cursor.getString(4)));
+        message.setSender(makeRecipient(cursor.getString(5), cursor.getString(6)));
+        message.setDateTimeReceived(toCalendar(cursor.getLong(7)));
+        message.setDateTimeSent(toCalendar(cursor.getLong(8)));
+        message.setIsRead(cursor.getInt(9) != 0);
+        message.setBodyPreview(cursor.getString(10));
+        message.setConversationId(cursor.getString(11));
+        return message;
+    }
+
+    private static EmailAddress getEmailAddress(Recipient recipient)
+    {
+        return recipient == null ? null : recipient.getEmailAddress();
+    }
+
+    private static Recipient makeRecipient(String name, String address)
+    {
+        Recipient recipient = new Recipient();
+        EmailAddress email = new EmailAddress();
+        email.setName(name);
+        email.setAddress(address);
+        recipient.setEmailAddress(email);
+        return recipient;
+    }
+
+    private static long toMillis(Calendar calendar)
+    {
+        return calendar == null ? 0 : calendar.getTimeInMillis();
+    }
+
+    private static Calendar toCalendar(long millis)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import android.util.Log;
+
+import com.microsoft.office365.starter.O365APIsStart_Application;
+import com.microsoft.office365.starter.helpers.APIErrorMessageHelper;
+import com.microsoft.office365.starter.interfaces.OnOperationCompleteListener;
+import com.microsoft.outlookservices.Message;
+import com.microsoft.services.odata.ODataException;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent queue of composed mail messages. O365MailItemsModel.postNewMailToServer adds the
+ * message to the outbox table of the MailMessageStore and returns at once. A single background
+ * thread sends queued messages and retries failed sends with exponential backoff, so a message
+ * survives network failures and process restarts until the Outlook service accepts it. A send
+ * the service rejects as a client error, such as a bad recipient or expired credentials, is
+ * not retried.
+ * <p>
+ * Each queued message has a deduplication key derived from the compose it was written in and its
+ * recipients, subject and body, so sending the same compose twice before the first copy went out
+ * queues it only once, and the listener is told the second copy was not queued. A message with
+ * the same content written in another compose is queued as usual. Once the first copy was sent
+ * or given up on the same message can be queued again. Delivery
+ * is at least once: if the process dies after the service accepted a message but before it was
+ * removed from the outbox, the message is sent again on the next start.
+ */
+public class MailOutbox
+{
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 5 * 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30 * 60 * 1000;
+    private static final long SEND_TIMEOUT_SECONDS = 60;
+
+    // A message that still fails after this many attempts is dropped and reported as failed
+    private static final int MAX_ATTEMPTS = 12;
+
+    // Client error statuses that are worth retrying: request timeout and throttling
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static MailOutbox sInstance;
+
+    private final O365APIsStart_Application mApplication;
+    private final MailMessageStore mStore;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final Random mRandom = new Random();
+    // The outbox outlives the activity that listens to it, so the listener is only
+    // held weakly
+    private volatile WeakReference<OnOperationCompleteListener> mOperationCompleteListener =
+            new WeakReference<OnOperationCompleteListener>(null);
+    private ScheduledFuture<?> mScheduledSend;
+
+    public static synchronized MailOutbox getInstance(O365APIsStart_Application application)
+    {
+        if (sInstance == null)
+        {
+            sInstance = new MailOutbox(application);
+        }
+        return sInstance;
+    }
+
+    private MailOutbox(O365APIsStart_Application application)
+    {
+        mApplication = application;
+        mStore = MailMessageStore.getInstance(application);
+    }
+
+    // The listener is told when a message was queued or found already queued, and when a
+    // queued message was sent or finally given up on
+    public void setOperationCompleteListener(OnOperationCompleteListener listener)
+    {
+        mOperationCompleteListener = new WeakReference<OnOperationCompleteListener>(listener);
+    }
+
+    // Adds a composed message to the outbox and starts sending it in the background. A
+    // message of the same compose that is still waiting in the outbox is not queued a
+    // second time.
+    public void enqueue(String composeId, String mailTo, String mailCc, String mailSubject,
+            String mailBody)
+    {
+        final QueuedMail queuedMail = new QueuedMail(
+                makeDeduplicationKey(composeId, mailTo, mailCc, mailSubject, mailBody)
+                , mailTo
+                , mailCc
+                , mailSubject
+                , mailBody
+                , 0
+                , System.currentTimeMillis());
+
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    if (mStore.insertOutboxMessage(queuedMail))
+                    {
+                        notifyListener("New Mail message queued for sending.");
+                    }
+                    else
+                    {
+                        Log.i("MailOutbox", "Message is already queued: " + queuedMail.getDeduplicationKey());
+                        notifyListener("This Mail message is already waiting to be sent.");
+                    }
+                }
+                catch (Exception ex)
+                {
+                    Log.e("Failed to queue message: " + ex.getMessage(), "MailOutbox.enqueue");
+                    notifyListener("An error occurred queuing the Mail message. Check the error log.");
+                }
+                sendDueMessages();
+            }
+        });
+    }
+
+    // Sends whatever is due in the outbox, e.g. messages left over from a previous process
+    public void resume()
+    {
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sendDueMessages();
+            }
+        });
+    }
+
+    // Runs on the outbox thread
+    private void sendDueMessages()
+    {
+        try
+        {
+            List<QueuedMail> dueMessages = mStore.readDueOutboxMessages(System.currentTimeMillis());
+            for (QueuedMail queuedMail : dueMessages)
+            {
+                sendQueuedMessage(queuedMail);
+            }
+            scheduleNextSend(mStore.readNextOutboxAttempt());
+        }
+        catch (Exception ex)
+        {
+            Log.e("Failed to read the outbox: " + ex.getMessage(), "MailOutbox.sendDueMessages");
+        }
+    }
+
+    private void sendQueuedMessage(QueuedMail queuedMail)
+    {
+        try
+        {
+            Message messageToSend = O365MailItemsModel.makeMessage(
+                    queuedMail.getMailTo()
+                    , queuedMail.getMailCc()
+                    , queuedMail.getSubject()
+                    , queuedMail.getBody());
+
+            if (messageToSend != null)
+            {
+                mApplication
+                        .getMailClient()
+                        .getMe()
+                        .getOperations()
+                        .sendMail(messageToSend, true)
+                        .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+
+            mStore.deleteOutboxMessage(queuedMail.getDeduplicationKey());
+            notifyListener(
+                    messageToSend != null
+                            ? "New Mail message sent successfully."
+                            : "An error occurred because one or more emails were not formatted correctly.");
+        }
+        catch (Exception ex)
+        {
+            Log.e(
+                    "Failed to send queued message: " + APIErrorMessageHelper.getErrorMessage(
+                            ex.getMessage()
+                    ),
+                    "MailOutbox.sendQueuedMessage"
+            );
+
+            int attempts = queuedMail.getAttempts() + 1;
+            if (attempts >= MAX_ATTEMPTS || isPermanentError(ex))
+            {
+                mStore.deleteOutboxMessage(queuedMail.getDeduplicationKey());
+                notifyListener("An error occurred sending the Mail message. Check the error log.");
+                return;
+            }
+            mStore.updateOutboxAttempt(
+                    queuedMail.getDeduplicationKey()
+                    , attempts
+                    , System.currentTimeMillis() + getRetryDelay(attempts));
+        }
+    }
+
+    // Returns true when the service rejected the send with a client error that would fail
+    // the same way on every attempt. Network failures, timeouts, throttling and server
+    // errors are transient.
+    private static boolean isPermanentError(Throwable t)
+    {
+        for (Throwable cause = t; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof ODataException && ((ODataException) cause).getResponse() != null)
+            {
+                int status = ((ODataException) cause).getResponse().getStatus();
+                return status >= 400 && status < 500
+                        && status != HTTP_REQUEST_TIMEOUT
+                        && status != HTTP_TOO_MANY_REQUESTS;
+            }
+        }
+        return false;
+    }
+
+    // Exponential backoff with up to 50% random jitter so queued messages do not all
+    // retry at the same moment
+    private long getRetryDelay(int attempts)
+    {
+        long delay = INITIAL_RETRY_DELAY_MILLIS << Math.min(attempts - 1, 20);
+        delay = Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+        return delay / 2 + (long) (mRandom.nextDouble() * (delay / 2));
+    }
+
+    private void scheduleNextSend(long nextAttempt)
+    {
+        if (mScheduledSend != null)
+        {
+            mScheduledSend.cancel(false);
+            mScheduledSend = null;
+        }
+        if (nextAttempt < 0)
+        {
+            return;
+        }
+
+        long delay = Math.max(0, nextAttempt - System.currentTimeMillis());
+        mScheduledSend = mExecutor.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sendDueMessages();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void notifyListener(String result)
+    {
+        OnOperationCompleteListener listener = mOperationCompleteListener.get();
+        if (listener != null)
+        {
+            listener.onOperationComplete(new OnOperationCompleteListener.OperationResult(
+                    "Send Mail"
+                    , result
+                    , ""));
+        }
+    }
+
+    private static String makeDeduplicationKey(String composeId, String mailTo, String mailCc,
+            String mailSubject, String mailBody)
+    {
+        String content = composeId + '\n' + mailTo + '\n' + mailCc + '\n' + mailSubject + '\n'
+                + mailBody;
+        try
+        {
+            return UUID.nameUUIDFromBytes(content.getBytes("UTF-8")).toString();
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            return UUID.nameUUIDFromBytes(content.getBytes()).toString();
+        }
+    }
+
+    /**
+     * A message waiting in the outbox
+     */
+    public static class QueuedMail
+    {
+        private final String deduplicationKey;
+        private final String mailTo;
+        private final String mailCc;
+        private final String subject;
+        private final String body;
+        private final int attempts;
+        private final long nextAttempt;
+
+        QueuedMail(String deduplicationKey, String mailTo, String mailCc, String subject,
+                String body, int attempts, long nextAttempt)
+        {
+            this.deduplicationKey = deduplicationKey;
+            this.mailTo = mailTo;
+            this.mailCc = mailCc;
+            this.subject = subject;
+            this.body = body;
+            this.attempts = attempts;
+            this.nextAttempt = nextAttempt;
+        }
+
+        public String getDeduplicationKey()
+        {
+            return deduplicationKey;
+        }
+
+        public String getMailTo()
+        {
+            return mailTo;
+        }
+
+        public String getMailCc()
+        {
+            return mailCc;
+        }
+
+        public String getSubject()
+        {
+            return subject;
+        }
+
+        public String getBody()
+        {
+            return body;
+        }
+
+        public int getAttempts()
+        {
+            return attempts;
+        }
+
+        public long getNextAttempt()
+        {
+            return nextAttempt;
+        }
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
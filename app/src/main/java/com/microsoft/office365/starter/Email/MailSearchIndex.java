@@ -0,0 +1,537 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.Email;
+
+import android.content.Context;
+
+import com.microsoft.outlookservices.EmailAddress;
+import com.microsoft.outlookservices.Message;
+import com.microsoft.outlookservices.Recipient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index over the subject, sender and body preview of the messages in the
+ * MailMessageStore. The index is built from the store the first time it is searched, and
+ * O365MailItemsModel keeps it in step with the store from then on, so searches work offline.
+ * <p>
+ * Text is split into lower case runs of letters and digits. Every word of a query matches any
+ * indexed word it is a prefix of, and words in double quotes must appear next to each other in
+ * that order. Each term keeps an ascending list of the documents it appears in, so a query is a
+ * union of the postings of the terms in a prefix range of a TreeMap followed by intersections of
+ * BitSets. Phrases are checked against the term sequence kept for each candidate document.
+ * <p>
+ * A message that changes is indexed again as a new document and the old document is marked
+ * deleted. The documents are compacted once more than half of them are deleted.
+ */
+public class MailSearchIndex
+{
+    // Messages read from the store at a time while the index is built
+    private static final int BUILD_BATCH_SIZE = 500;
+
+    // Words longer than this are usually encoded data rather than text
+    private static final int MAX_TERM_LENGTH = 64;
+
+    // Separates the fields of a document so phrases do not match across them
+    private static final int FIELD_SEPARATOR = -1;
+
+    // Compaction is not worth it for fewer deleted documents than this
+    private static final int MIN_DELETED_DOCS_TO_COMPACT = 1024;
+
+    // Document numbers are packed below the received time when results are sorted
+    private static final int DOC_BITS = 24;
+
+    private static MailSearchIndex sInstance;
+
+    private final MailMessageStore mStore;
+    private boolean mIsBuilt;
+
+    private final TreeMap<String, Postings> mTerms = new TreeMap<String, Postings>();
+    private final List<Postings> mTermsById = new ArrayList<Postings>();
+
+    private String[] mDocMessageIds = new String[256];
+    private String[] mDocFolderIds = new String[256];
+    private long[] mDocReceivedSeconds = new long[256];
+    private int[][] mDocTerms = new int[256][];
+    private int mDocCount;
+    private final BitSet mDeletedDocs = new BitSet();
+    private int mDeletedDocCount;
+    private final Map<String, Integer> mDocsByMessageId = new HashMap<String, Integer>();
+
+    public static synchronized MailSearchIndex getInstance(Context context)
+    {
+        if (sInstance == null)
+        {
+            sInstance = new MailSearchIndex(MailMessageStore.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    private MailSearchIndex(MailMessageStore store)
+    {
+        mStore = store;
+    }
+
+    // Returns the ids of up to limit messages that match the query, newest first. Builds
+    // the index from the store first if needed, so the first call can take a while and
+    // should not be made on the UI thread.
+    public synchronized List<String> search(String query, int limit)
+    {
+        ensureBuilt();
+
+        List<String> messageIds = new ArrayList<String>();
+        List<String> prefixes = new ArrayList<String>();
+        List<int[]> phrases = new ArrayList<int[]>();
+        if (!parseQuery(query, prefixes, phrases))
+        {
+            return messageIds;
+        }
+
+        BitSet matches = null;
+        for (String prefix : prefixes)
+        {
+            matches = intersect(matches, matchPrefix(prefix));
+        }
+        for (int[] phrase : phrases)
+        {
+            for (int termId : phrase)
+            {
+                matches = intersect(matches, mTermsById.get(termId).toBitSet());
+            }
+        }
+        if (matches == null)
+        {
+            return messageIds;
+        }
+        matches.andNot(mDeletedDocs);
+
+        // Sort by received time by packing the document number below it
+        long[] sortKeys = new long[matches.cardinality()];
+        int matchCount = 0;
+        for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1))
+        {
+            if (containsPhrases(mDocTerms[doc], phrases))
+            {
+                sortKeys[matchCount++] = (mDocReceivedSeconds[doc] << DOC_BITS) | doc;
+            }
+        }
+        Arrays.sort(sortKeys, 0, matchCount);
+
+        int docMask = (1 << DOC_BITS) - 1;
+        for (int i = matchCount - 1; i >= 0 && messageIds.size() < limit; i--)
+        {
+            messageIds.add(mDocMessageIds[(int) (sortKeys[i] & docMask)]);
+        }
+        return messageIds;
+    }
+
+    // Indexes new messages and indexes changed messages again. Ignored until the index was
+    // built, because building it reads the messages from the store.
+    public synchronized void addMessages(String folderId, List<Message> messages)
+    {
+        if (!mIsBuilt)
+        {
+            return;
+        }
+        for (Message message : messages)
+        {
+            addMessage(folderId, message);
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized void removeMessages(Collection<String> messageIds)
+    {
+        if (!mIsBuilt)
+        {
+            return;
+        }
+        for (String messageId : messageIds)
+        {
+            removeMessage(messageId);
+        }
+        compactIfNeeded();
+    }
+
+    // Mirrors MailMessageStore.replaceMessages, which drops everything stored for a folder
+    public synchronized void replaceFolder(String folderId, List<Message> messages)
+    {
+        if (!mIsBuilt)
+        {
+            return;
+        }
+        for (int doc = 0; doc < mDocCount; doc++)
+        {
+            if (!mDeletedDocs.get(doc) && folderId.equals(mDocFolderIds[doc]))
+            {
+                removeMessage(mDocMessageIds[doc]);
+            }
+        }
+        for (Message message : messages)
+        {
+            addMessage(folderId, message);
+        }
+        compactIfNeeded();
+    }
+
+    // Splits text into lower case runs of letters and digits
+    static void tokenize(String text, List<String> terms)
+    {
+        if (text == null)
+        {
+            return;
+        }
+
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++)
+        {
+            boolean isWordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (isWordChar && start < 0)
+            {
+                start = i;
+            }
+            else if (!isWordChar && start >= 0)
+            {
+                if (i - start <= MAX_TERM_LENGTH)
+                {
+                    terms.add(text.substring(start, i).toLowerCase(Locale.US));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private void ensureBuilt()
+    {
+        if (mIsBuilt)
+        {
+            return;
+        }
+
+        // Read each folder in pages ordered by id, so rows written while the index is
+        // built never shift a page
+        for (String folderId : mStore.readFolderIds())
+        {
+            String lastId = "";
+            List<Message> messages;
+            do
+            {
+                messages = mStore.readMessagesAfterId(folderId, lastId, BUILD_BATCH_SIZE);
+                for (Message message : messages)
+                {
+                    addMessage(folderId, message);
+                    lastId = message.getId();
+                }
+            }
+            while (messages.size() == BUILD_BATCH_SIZE);
+        }
+        mIsBuilt = true;
+    }
+
+    private void addMessage(String folderId, Message message)
+    {
+        removeMessage(message.getId());
+
+        List<String> words = new ArrayList<String>();
+        tokenize(message.getSubject(), words);
+        words.add(null);
+        EmailAddress from = getEmailAddress(message.getFrom());
+        if (from != null)
+        {
+            tokenize(from.getName(), words);
+            words.add(null);
+            tokenize(from.getAddress(), words);
+            words.add(null);
+        }
+        tokenize(message.getBodyPreview(), words);
+
+        int[] terms = new int[words.size()];
+        int doc = mDocCount;
+        for (int i = 0; i < terms.length; i++)
+        {
+            String word = words.get(i);
+            if (word == null)
+            {
+                terms[i] = FIELD_SEPARATOR;
+                continue;
+            }
+
+            Postings postings = mTerms.get(word);
+            if (postings == null)
+            {
+                postings = new Postings(mTermsById.size());
+                mTerms.put(word, postings);
+                mTermsById.add(postings);
+            }
+            postings.add(doc);
+            terms[i] = postings.mTermId;
+        }
+
+        ensureDocCapacity(doc + 1);
+        mDocMessageIds[doc] = message.getId();
+        mDocFolderIds[doc] = folderId;
+        Calendar received = message.getDateTimeReceived();
+        mDocReceivedSeconds[doc] = received == null ? 0 : Math.max(0, received.getTimeInMillis() / 1000);
+        mDocTerms[doc] = terms;
+        mDocsByMessageId.put(message.getId(), doc);
+        mDocCount++;
+    }
+
+    private void removeMessage(String messageId)
+    {
+        Integer doc = mDocsByMessageId.remove(messageId);
+        if (doc != null)
+        {
+            mDeletedDocs.set(doc);
+            mDeletedDocCount++;
+        }
+    }
+
+    private void ensureDocCapacity(int capacity)
+    {
+        if (capacity <= mDocMessageIds.length)
+        {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mDocMessageIds.length * 2);
+        mDocMessageIds = Arrays.copyOf(mDocMessageIds, newCapacity);
+        mDocFolderIds = Arrays.copyOf(mDocFolderIds, newCapacity);
+        mDocReceivedSeconds = Arrays.copyOf(mDocReceivedSeconds, newCapacity);
+        mDocTerms = Arrays.copyOf(mDocTerms, newCapacity);
+    }
+
+    // Renumbers the live documents from zero and rebuilds the postings from their terms
+    private void compactIfNeeded()
+    {
+        if (mDeletedDocCount < MIN_DELETED_DOCS_TO_COMPACT || mDeletedDocCount * 2 < mDocCount)
+        {
+            return;
+        }
+
+        for (Postings postings : mTermsById)
+        {
+            postings.clear();
+        }
+        mDocsByMessageId.clear();
+
+        int liveDocCount = 0;
+        for (int doc = 0; doc < mDocCount; doc++)
+        {
+            if (mDeletedDocs.get(doc))
+            {
+                continue;
+            }
+            int newDoc = liveDocCount++;
+            mDocMessageIds[newDoc] = mDocMessageIds[doc];
+            mDocFolderIds[newDoc] = mDocFolderIds[doc];
+            mDocReceivedSeconds[newDoc] = mDocReceivedSeconds[doc];
+            mDocTerms[newDoc] = mDocTerms[doc];
+            for (int termId : mDocTerms[newDoc])
+            {
+                if (termId != FIELD_SEPARATOR)
+                {
+                    mTermsById.get(termId).add(newDoc);
+                }
+            }
+            mDocsByMessageId.put(mDocMessageIds[newDoc], newDoc);
+        }
+        for (int doc = liveDocCount; doc < mDocCount; doc++)
+        {
+            mDocMessageIds[doc] = null;
+            mDocFolderIds[doc] = null;
+            mDocTerms[doc] = null;
+        }
+
+        mDocCount = liveDocCount;
+        mDeletedDocs.clear();
+        mDeletedDocCount = 0;
+    }
+
+    // Splits a query into prefixes and quoted phrases. Returns false when a phrase contains
+    // a word that is not in the index, or when the query has no words at all.
+    private boolean parseQuery(String query, List<String> prefixes, List<int[]> phrases)
+    {
+        if (query == null)
+        {
+            return false;
+        }
+
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++)
+        {
+            List<String> words = new ArrayList<String>();
+            tokenize(parts[i], words);
+
+            // Odd parts are inside quotes. An unterminated quote is treated as plain words.
+            boolean isQuoted = i % 2 == 1 && i < parts.length - 1;
+            if (!isQuoted)
+            {
+                prefixes.addAll(words);
+                continue;
+            }
+
+            if (words.isEmpty())
+            {
+                continue;
+            }
+            int[] phrase = new int[words.size()];
+            for (int j = 0; j < phrase.length; j++)
+            {
+                Postings postings = mTerms.get(words.get(j));
+                if (postings == null)
+                {
+                    return false;
+                }
+                phrase[j] = postings.mTermId;
+            }
+            phrases.add(phrase);
+        }
+        return !prefixes.isEmpty() || !phrases.isEmpty();
+    }
+
+    private BitSet matchPrefix(String prefix)
+    {
+        BitSet docs = new BitSet(mDocCount);
+        SortedMap<String, Postings> range = mTerms.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (Postings postings : range.values())
+        {
+            postings.addTo(docs);
+        }
+        return docs;
+    }
+
+    private static BitSet intersect(BitSet matches, BitSet docs)
+    {
+        if (matches == null)
+        {
+            return docs;
+        }
+        matches.and(docs);
+        return matches;
+    }
+
+    private static boolean containsPhrases(int[] terms, List<int[]> phrases)
+    {
+        for (int[] phrase : phrases)
+        {
+            if (!containsPhrase(terms, phrase))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsPhrase(int[] terms, int[] phrase)
+    {
+        for (int start = 0; start + phrase.length <= terms.length; start++)
+        {
+            int matched = 0;
+            while (matched < phrase.length && terms[start + matched] == phrase[matched])
+            {
+                matched++;
+            }
+            if (matched == phrase.length)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static EmailAddress getEmailAddress(Recipient recipient)
+    {
+        return recipient == null ? null : recipient.getEmailAddress();
+    }
+
+    /**
+     * The documents a term appears in, in ascending order
+     */
+    private static class Postings
+    {
+        private final int mTermId;
+        private int[] mDocs = new int[4];
+        private int mSize;
+
+        Postings(int termId)
+        {
+            mTermId = termId;
+        }
+
+        void add(int doc)
+        {
+            // Documents are added in ascending order, so a repeat is always the last entry
+            if (mSize > 0 && mDocs[mSize - 1] == doc)
+            {
+                return;
+            }
+            if (mSize == mDocs.length)
+            {
+                mDocs = Arrays.copyOf(mDocs, mSize * 2);
+            }
+            mDocs[mSize++] = doc;
+        }
+
+        void clear()
+        {
+            mSize = 0;
+        }
+
+        void addTo(BitSet docs)
+        {
+            for (int i = 0; i < mSize; i++)
+            {
+                docs.set(mDocs[i]);
+            }
+        }
+
+        BitSet toBitSet()
+        {
+            BitSet docs = new BitSet();
+            addTo(docs);
+            return docs;
+        }
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
@@ -7,37 +7,96 @@ package com.microsoft.office365.starter.Email;
 import android.app.Activity;
 import android.util.Log;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.microsoft.office365.starter.O365APIsStart_Application;
 import com.microsoft.office365.starter.helpers.APIErrorMessageHelper;
+import com.microsoft.office365.starter.helpers.AsyncController;
+import com.microsoft.office365.starter.helpers.RecipientListCodec;
+import com.microsoft.office365.starter.interfaces.OnAttachmentProgressListener;
+import com.microsoft.office365.starter.interfaces.OnMessageBodyLoadedListener;
 import com.microsoft.office365.starter.interfaces.OnMessagesAddedListener;
 import com.microsoft.office365.starter.interfaces.OnOperationCompleteListener;
-import com.microsoft.outlookservices.BodyType;
-import com.microsoft.outlookservices.EmailAddress;
+import com.microsoft.outlookservices.Attachment;
 import com.microsoft.outlookservices.ItemBody;
 import com.microsoft.outlookservices.Message;
 import com.microsoft.outlookservices.Recipient;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class O365MailItemsModel
 {
 
-    private MailMessages mMailMessages;
+    private final MailMessages mMailMessages = new MailMessages();
+    private final MailBodyPrefetcher mBodyPrefetcher = new MailBodyPrefetcher(this);
+
+    // Body reads in flight by message id, and the ids among them that the user opened.
+    // Guarded by the mBodyFetches lock.
+    private final Map<String, ListenableFuture<O365Mail_Message>> mBodyFetches =
+            new HashMap<String, ListenableFuture<O365Mail_Message>>();
+    private final Set<String> mOpenedBodyIds = new HashSet<String>();
     private UUID tempNewMessageId;
     private O365APIsStart_Application mApplication;
-    private OnMessagesAddedListener mMessageAddedListener;
+    private volatile OnMessagesAddedListener mMessageAddedListener;
     private OnOperationCompleteListener mMessageOperationCompleteListener;
 
+    // Paging state. mNextMessageNumber is the $skip value of the next page to
+    // request, mHasMoreMessages goes false once the service returns a short page
+    // and mIsLoadingMessages keeps the list from requesting the same page twice
+    // while scrolling. mPageGeneration changes whenever the first page is requested
+    // again, so a page that was in flight during a refresh is dropped instead of
+    // appended.
+    private int mMessagePageSize;
+    private int mNextMessageNumber;
+    private volatile boolean mHasMoreMessages = true;
+    private volatile boolean mIsLoadingMessages;
+    private final AtomicInteger mPageGeneration = new AtomicInteger();
+
+    // Number of rows from the end of the list at which the next page is requested
+    private static final int PREFETCH_THRESHOLD = 5;
+
+    // The mail folder this model shows and keeps in the local message store. "Inbox"
+    // is the well-known name the service accepts in place of the inbox folder id.
+    private String mFolderId = "Inbox";
+
+    // Largest number of new messages pulled by a delta sync. A bigger gap since the last
+    // sync is treated as a cold start and the first page is read again.
+    private static final int MAX_DELTA_MESSAGES = 100;
+
+    // Message list loads only read the header fields the list and the local store use.
+    // The body and recipients are read by fetchMessageBody when a message is opened.
+    private static final String MESSAGE_HEADER_FIELDS =
+            "Subject,From,Sender,DateTimeReceived,DateTimeSent,IsRead,BodyPreview,ChangeKey,"
+                    + "ConversationId";
+    private static final String MESSAGE_BODY_FIELDS = "Body,ToRecipients,CcRecipients";
+
+    // Attachments are listed without their content, which AttachmentDownloader streams
+    private static final String ATTACHMENT_FIELDS = "Id,Name,ContentType,Size,IsInline";
+
+    // Number of delete requests postDeleteMailItems keeps in flight at once
+    private static final int MAX_CONCURRENT_DELETES = 4;
+
 
     public O365MailItemsModel(Activity activity)
     {
@@ -46,6 +105,22 @@ public class O365MailItemsModel
             return;
         }
         mApplication = (O365APIsStart_Application) activity.getApplication();
+
+        // Send anything left in the outbox by an earlier session
+        getOutbox().resume();
+    }
+
+    // Creates a model for one mail folder. MailFolderSyncEngine creates one for each
+    // folder it keeps in the local store.
+    public O365MailItemsModel(O365APIsStart_Application application, String folderId)
+    {
+        mApplication = application;
+        mFolderId = folderId;
+    }
+
+    public String getFolderId()
+    {
+        return mFolderId;
     }
 
 
@@ -59,15 +134,15 @@ public class O365MailItemsModel
             OnOperationCompleteListener messageOperationCompleteListener)
     {
         this.mMessageOperationCompleteListener = messageOperationCompleteListener;
+        if (mApplication != null)
+        {
+            getOutbox().setOperationCompleteListener(messageOperationCompleteListener);
+        }
     }
 
-    // Returns an instance of the MailMessages class after constructing it if necessary
+    // Returns the loaded mail messages
     public MailMessages getMail()
     {
-        if (mMailMessages == null)
-        {
-            mMailMessages = new MailMessages();
-        }
         return mMailMessages;
     }
 
@@ -88,7 +163,7 @@ public class O365MailItemsModel
         UUID ID = java.util.UUID.randomUUID();
 
         // Cache the temp Id in the message model so the model can retrieve the
-        // message out of the ITEMS_MAP map and update with the Id assigned by
+        // message out of the loaded messages and update with the Id assigned by
         // Outlook service upon successful add
         tempNewMessageId = ID;
 
@@ -100,52 +175,13 @@ public class O365MailItemsModel
         return newMessageModel;
     }
 
-    private boolean isEmailAddress(String emailAddress)
-    {
-        boolean returnValue = false;
-        Pattern pattern;
-        Matcher matcher;
-
-        String EMAIL_PATTERN =
-                "^[_A-Za-z0-9-\\+]+(\\.[_A-Za-z0-9-]+)*@"
-                        + "[A-Za-z0-9-]+(\\.[A-Za-z0-9]+)*(\\.[A-Za-z]{2,})$";
-        pattern = Pattern.compile(EMAIL_PATTERN);
-        // Add mail to address if mailToString is an email address
-        matcher = pattern.matcher(emailAddress);
-        if (matcher.matches())
-        {
-            returnValue = true;
-        }
-        return returnValue;
-    }
-
-    private Recipient MakeARecipient(String mailAddress)
-    {
-        Recipient recipient = null;
-        if (isEmailAddress(mailAddress))
-        {
-            recipient = new Recipient();
-            EmailAddress email = new EmailAddress();
-            email.setName(mailAddress);
-            email.setAddress(mailAddress);
-            recipient.setEmailAddress(email);
-        }
-        return recipient;
-
-    }
-
     public void postDeleteMailItem(final String messageToDeleteID)
     {
 
         ListenableFuture<Void> results = mApplication.getMailClient()
                 .getMe()
                 .getMessages()
-                .getById(
-                        this.getMail()
-                                .ITEM_MAP
-                                .get(messageToDeleteID)
-                                .getID()
-                )
+                .getById(messageToDeleteID)
                 .delete();
 
         Futures.addCallback(
@@ -155,24 +191,9 @@ public class O365MailItemsModel
                     public void onSuccess(Void v)
                     {
                         //Remove the deleted mail from the local object model
-                        //list and map
-                        O365MailItemsModel
-                                .this
-                                .getMail()
-                                .ITEMS
-                                .remove(
-                                        O365MailItemsModel
-                                                .this
-                                                .getMail()
-                                                .ITEM_MAP
-                                                .get(messageToDeleteID)
-                                );
+                        getMail().removeItems(Collections.singleton(messageToDeleteID));
 
-                        O365MailItemsModel
-                                .this
-                                .getMail()
-                                .ITEM_MAP
-                                .remove(messageToDeleteID);
+                        deleteMessagesFromStore(Collections.singletonList(messageToDeleteID));
 
                         //send notification
                         OnOperationCompleteListener.OperationResult eventData = new OnOperationCompleteListener.OperationResult(
@@ -203,98 +224,138 @@ public class O365MailItemsModel
 
     }
 
-
-    public void postNewMailToServer(String mailTo, String mailCc, String mailSubject, String mailBody)
+    // Deletes several messages and reports one aggregated result when all of the deletes
+    // have finished. The Outlook services client has no $batch support, so the deletes are
+    // pipelined instead, with at most MAX_CONCURRENT_DELETES requests in flight.
+    public void postDeleteMailItems(Collection<String> messageIds)
     {
-        //Set recipients
-        List<Recipient> emailAddresses = new ArrayList<Recipient>();
-        List<Recipient> ccEmailAddresses = new ArrayList<Recipient>();
+        final Queue<String> queuedIds = new ConcurrentLinkedQueue<String>(messageIds);
+        final List<String> deletedIds = Collections.synchronizedList(new ArrayList<String>());
+        final Map<String, String> failures = new ConcurrentHashMap<String, String>();
+        final AtomicInteger remaining = new AtomicInteger(queuedIds.size());
 
-        //Split the mailTo string into individual mail to
-        //email addresses, validate each email address,
-        //and add valid email addresses to the List<Recipient> array.
-        String[] mailToArray = mailTo.split(";");
-        for (String mailToString : mailToArray)
+        if (queuedIds.isEmpty())
         {
-            if (isEmailAddress(mailToString))
-            {
-                emailAddresses.add(MakeARecipient(mailToString));
-            }
-
+            completeDeleteMailItems(deletedIds, failures);
+            return;
         }
-        //Split the mailTo string into individual mail to
-        //email addresses, validate each email address,
-        //and add valid email addresses to the List<Recipient> array.
-        String[] mailCcArray = mailCc.split(";");
-        for (String mailCcString : mailCcArray)
-        {
-            if (isEmailAddress(mailCcString))
-            {
-                ccEmailAddresses.add(MakeARecipient(mailCcString));
-            }
 
+        int deleters = Math.min(MAX_CONCURRENT_DELETES, queuedIds.size());
+        for (int i = 0; i < deleters; i++)
+        {
+            deleteNextQueuedMailItem(queuedIds, deletedIds, failures, remaining);
         }
+    }
 
-        //If at least one of the mail to strings is a valid email address
-        // send the email message with all valid email addresses
-        if (!emailAddresses.isEmpty())
+    // Deletes the next queued message. Each finished delete starts the next one, which
+    // keeps the number of requests in flight constant until the queue is empty. The next
+    // delete is posted to the AsyncController rather than started from the callback,
+    // so deletes that complete synchronously do not nest one call per message.
+    private void deleteNextQueuedMailItem(
+            final Queue<String> queuedIds,
+            final List<String> deletedIds,
+            final Map<String, String> failures,
+            final AtomicInteger remaining)
+    {
+        final String messageId = queuedIds.poll();
+        if (messageId == null)
         {
-            Message messageToSend = new Message();
-            messageToSend.setToRecipients(emailAddresses);
+            return;
+        }
 
-            if (!ccEmailAddresses.isEmpty())
-            {
-                messageToSend.setCcRecipients(ccEmailAddresses);
-            }
+        ListenableFuture<Void> results;
+        try
+        {
+            results = mApplication.getMailClient()
+                    .getMe()
+                    .getMessages()
+                    .getById(messageId)
+                    .delete();
+        }
+        catch (Exception ex)
+        {
+            results = Futures.immediateFailedFuture(ex);
+        }
 
-            ItemBody body = new ItemBody();
-            body.setContent(mailBody);
-            messageToSend.setBody(body);
-            messageToSend.setSubject(mailSubject);
+        Futures.addCallback(
+                results, new FutureCallback<Void>()
+                {
+                    @Override
+                    public void onSuccess(Void v)
+                    {
+                        deletedIds.add(messageId);
+                        onDeleteFinished();
+                    }
 
-            ListenableFuture<Integer> results = mApplication
-                    .getMailClient()
-                    .getMe()
-                    .getOperations()
-                    .sendMail(messageToSend, true);
+                    @Override
+                    public void onFailure(Throwable t)
+                    {
+                        String errorMessage = APIErrorMessageHelper.getErrorMessage(t.getMessage());
+                        Log.e(
+                                "Failed to delete message: " + errorMessage,
+                                "O365MailItemsModel.postDeleteMailItems"
+                        );
+                        failures.put(messageId, errorMessage == null ? "" : errorMessage);
+                        onDeleteFinished();
+                    }
 
-            Futures.addCallback(
-                    results, new FutureCallback<Integer>()
+                    private void onDeleteFinished()
                     {
-                        @Override
-                        public void onSuccess(Integer result)
+                        if (remaining.decrementAndGet() == 0)
                         {
-                            OnOperationCompleteListener.OperationResult eventData = new OnOperationCompleteListener.OperationResult(
-                                    "Send Mail"
-                                    , "New Mail message sent successfully."
-                                    , ""
-                            );
-                            mMessageOperationCompleteListener.onOperationComplete(eventData);
-
+                            completeDeleteMailItems(deletedIds, failures);
                         }
-
-                        @Override
-                        public void onFailure(Throwable t)
+                        else
                         {
-                            Log.e(
-                                    "Failed to get messages: " + APIErrorMessageHelper.getErrorMessage(
-                                            t.getMessage()
-                                    ),
-                                    "O365MailItemsModel.postNewMailToServer"
-                            );
-                            OnOperationCompleteListener.OperationResult eventData = new OnOperationCompleteListener.OperationResult(
-                                    "Send Mail"
-                                    ,
-                                    "An error occurred sending the Mail message. Check the error log."
-                                    ,
-                                    null
-                            );
-                            mMessageOperationCompleteListener.onOperationComplete(eventData);
-
+                            AsyncController.getInstance().postAsyncTask(new Callable<Void>()
+                            {
+                                @Override
+                                public Void call()
+                                {
+                                    deleteNextQueuedMailItem(
+                                            queuedIds, deletedIds, failures, remaining);
+                                    return null;
+                                }
+                            });
                         }
                     }
-            );
+                }
+        );
+    }
+
+    private void completeDeleteMailItems(List<String> deletedIds, Map<String, String> failures)
+    {
+        //Remove the deleted mail from the local object model in one pass
+        Set<String> deletedIdSet = new HashSet<String>(deletedIds);
+        getMail().removeItems(deletedIdSet);
+        deleteMessagesFromStore(deletedIdSet);
+
+        String resultMessage = failures.isEmpty()
+                ? deletedIds.size() + " mail messages were successfully deleted."
+                : failures.size() + " of " + (deletedIds.size() + failures.size())
+                + " mail messages could not be deleted.";
+        OnOperationCompleteListener.BatchOperationResult eventData = new OnOperationCompleteListener.BatchOperationResult(
+                "Delete Mail"
+                , resultMessage
+                , new HashMap<String, String>(failures)
+        );
+        mMessageOperationCompleteListener.onOperationComplete(eventData);
+    }
 
+
+    // Queues a new message in the outbox, which sends it in the background and retries
+    // until the Outlook service accepts it. The outbox tells the listener whether the
+    // message was queued or was already waiting in the outbox, and again once it was sent.
+    // composeId identifies the compose the message was written in, so only a second send of
+    // the same compose is recognized as a duplicate.
+    public void postNewMailToServer(String composeId, String mailTo, String mailCc,
+            String mailSubject, String mailBody)
+    {
+        //If at least one of the mail to strings is a valid email address
+        // queue the email message with all valid email addresses
+        if (makeMessage(mailTo, mailCc, mailSubject, mailBody) != null)
+        {
+            getOutbox().enqueue(composeId, mailTo, mailCc, mailSubject, mailBody);
         }
         //If no mail to strings are valid email addresses, invoke the operation complete method with
         //the fail state
@@ -310,27 +371,456 @@ public class O365MailItemsModel
         }
     }
 
+    // Builds the message to send from the strings entered on the compose view. Returns
+    // null if none of the mail to strings is a valid email address.
+    static Message makeMessage(String mailTo, String mailCc, String mailSubject, String mailBody)
+    {
+        //Parse the mail to and cc strings into recipients, keeping
+        //only the valid email addresses
+        List<Recipient> emailAddresses = RecipientListCodec.parseRecipients(mailTo);
+        List<Recipient> ccEmailAddresses = RecipientListCodec.parseRecipients(mailCc);
+
+        if (emailAddresses.isEmpty())
+        {
+            return null;
+        }
+
+        // The compose view only collects addresses, so each address
+        // doubles as the recipient's display name
+        for (Recipient recipient : emailAddresses)
+        {
+            recipient.getEmailAddress().setName(recipient.getEmailAddress().getAddress());
+        }
+        for (Recipient recipient : ccEmailAddresses)
+        {
+            recipient.getEmailAddress().setName(recipient.getEmailAddress().getAddress());
+        }
+
+        Message messageToSend = new Message();
+        messageToSend.setToRecipients(emailAddresses);
+
+        if (!ccEmailAddresses.isEmpty())
+        {
+            messageToSend.setCcRecipients(ccEmailAddresses);
+        }
+
+        ItemBody body = new ItemBody();
+        body.setContent(mailBody);
+        messageToSend.setBody(body);
+        messageToSend.setSubject(mailSubject);
+        return messageToSend;
+    }
+
+    private MailOutbox getOutbox()
+    {
+        return MailOutbox.getInstance(mApplication);
+    }
+
 
     //Get a set of email messages, starting with the message at skipTomessageNumber
-    //Size of message set is set by pageSize
+    //Size of message set is set by pageSize. A skipToMessageNumber of zero reloads
+    //the list from the top, any other value appends the page to the loaded messages
     public void getMessageList(int pageSize, int skipToMessageNumber)
     {
-        if (mMailMessages == null)
+        final int generation = skipToMessageNumber == 0
+                ? mPageGeneration.incrementAndGet()
+                : mPageGeneration.get();
+
+        mMessagePageSize = pageSize;
+        mIsLoadingMessages = true;
+        if (skipToMessageNumber == 0)
+        {
+            // The first page is shown from the local store and then brought up to date
+            mHasMoreMessages = true;
+            loadFirstPageFromStore(pageSize, generation);
+        }
+        else
+        {
+            readMessagePage(pageSize, skipToMessageNumber, generation, false);
+        }
+    }
+
+    // Shows the stored first page, if there is one, and then syncs it with the service.
+    // The store is read on a background thread and the sync continues from callbacks.
+    private void loadFirstPageFromStore(final int pageSize, final int generation)
+    {
+        AsyncController.getInstance().postAsyncTask(new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                List<Message> storedMessages;
+                try
+                {
+                    storedMessages = getStore().readMessages(mFolderId, pageSize);
+                }
+                catch (Exception ex)
+                {
+                    Log.e("Failed to read stored messages: " + ex.getMessage(),
+                            "O365MailItemsModel.loadFirstPageFromStore");
+                    storedMessages = new ArrayList<Message>();
+                }
+
+                // A refresh was requested while the store was being read
+                if (generation != mPageGeneration.get())
+                {
+                    return null;
+                }
+
+                if (storedMessages.isEmpty())
+                {
+                    readMessagePage(pageSize, 0, generation, false);
+                    return null;
+                }
+
+                MailSnapshot snapshot = loadMessagesIntoModel(storedMessages, true);
+                mNextMessageNumber = storedMessages.size();
+                notifyMessagesAdded(
+                        new OnMessagesAddedListener.MessageCollection(snapshot.getItems()));
+
+                Futures.addCallback(syncStoredMessages(pageSize, generation),
+                        new FutureCallback<Boolean>()
+                        {
+                            @Override
+                            public void onSuccess(Boolean syncFinished)
+                            {
+                                finishFirstPageSync(pageSize, generation, syncFinished);
+                            }
+
+                            @Override
+                            public void onFailure(Throwable t)
+                            {
+                                Log.e(
+                                        "Failed to sync messages: " + APIErrorMessageHelper.getErrorMessage(
+                                                t.getMessage()
+                                        ),
+                                        "O365MailItemsModel.syncStoredMessages"
+                                );
+                                finishFirstPageSync(pageSize, generation, true);
+                            }
+                        }
+                );
+                return null;
+            }
+        });
+    }
+
+    // Ends the first page load once the stored page has been synced, or reads the first
+    // page again when the store was too far behind to patch
+    private void finishFirstPageSync(int pageSize, int generation, boolean syncFinished)
+    {
+        if (generation != mPageGeneration.get())
+        {
+            return;
+        }
+        if (syncFinished)
+        {
+            mIsLoadingMessages = false;
+        }
+        else
+        {
+            // The stored page is already shown, so the page read again
+            // replaces it in place
+            readMessagePage(pageSize, 0, generation, true);
+        }
+    }
+
+    // Brings the stored first page up to date. Only messages received at or after the
+    // store's watermark are downloaded in full. The newest page is then read as Id/ChangeKey pairs
+    // to find stored messages that changed or were deleted on the server, and older messages
+    // that appeared in the folder without being stored. Each request continues from the
+    // callback of the one before, so no thread waits on the service. The future holds false
+    // when the store is too far behind to patch, and the first page has to be read again
+    // instead. The store is patched either way, but the model is only reloaded while
+    // generation is still the current page generation.
+    private ListenableFuture<Boolean> syncStoredMessages(final int pageSize, final int generation)
+    {
+        ListenableFuture<List<Message>> received;
+        final long watermark;
+        try
+        {
+            // The $filter literal has whole seconds. Messages received in the same second
+            // as the watermark may not have been stored yet, so the filter includes that
+            // second and the messages it returns that are already stored are dropped by id.
+            watermark = getStore().getWatermark(mFolderId) / 1000 * 1000;
+            received = mApplication.getMailClient()
+                    .getMe()
+                    .getFolders().getById(mFolderId)
+                    .getMessages()
+                    .filter("DateTimeReceived ge " + MailMessageStore.toODataDateTime(watermark))
+                    .select(MESSAGE_HEADER_FIELDS)
+                    .top(MAX_DELTA_MESSAGES)
+                    .orderBy("DateTimeReceived desc")
+                    .read();
+        }
+        catch (Exception ex)
+        {
+            return Futures.immediateFailedFuture(ex);
+        }
+
+        return Futures.transform(received, new AsyncFunction<List<Message>, Boolean>()
+        {
+            @Override
+            public ListenableFuture<Boolean> apply(List<Message> receivedMessages)
+            {
+                // Too much arrived since the last sync to patch the store. Start over from
+                // the first page instead.
+                if (receivedMessages.size() >= MAX_DELTA_MESSAGES)
+                {
+                    return Futures.immediateFuture(false);
+                }
+
+                Set<String> storedIds = new HashSet<String>(
+                        getStore().readIdsReceivedSince(mFolderId, watermark));
+                List<Message> newMessages = new ArrayList<Message>();
+                for (Message m : receivedMessages)
+                {
+                    if (!storedIds.contains(m.getId()))
+                    {
+                        newMessages.add(m);
+                    }
+                }
+                return syncServerWindow(pageSize, generation, newMessages);
+            }
+        });
+    }
+
+    // Reads the newest messages of the folder as Id/ChangeKey pairs and patches the store
+    // with the new messages, the messages that changed and the ones that are gone
+    private ListenableFuture<Boolean> syncServerWindow(
+            final int pageSize,
+            final int generation,
+            final List<Message> newMessages)
+    {
+        ListenableFuture<List<Message>> window = mApplication.getMailClient()
+                .getMe()
+                .getFolders().getById(mFolderId)
+                .getMessages()
+                .select("Id,ChangeKey,DateTimeReceived")
+                .top(pageSize + newMessages.size())
+                .orderBy("DateTimeReceived desc")
+                .read();
+
+        return Futures.transform(window, new AsyncFunction<List<Message>, Boolean>()
+        {
+            @Override
+            public ListenableFuture<Boolean> apply(List<Message> serverWindow)
+            {
+                MailMessageStore store = getStore();
+                Set<String> newIds = new HashSet<String>();
+                for (Message m : newMessages)
+                {
+                    newIds.add(m.getId());
+                }
+
+                // The window reaches back to the oldest message the server returned, unless
+                // the server returned every message of the folder
+                long windowStart = Long.MIN_VALUE;
+                if (serverWindow.size() >= pageSize + newMessages.size() && !serverWindow.isEmpty())
+                {
+                    windowStart = serverWindow
+                            .get(serverWindow.size() - 1)
+                            .getDateTimeReceived()
+                            .getTimeInMillis();
+                }
+
+                // Re-read the messages of the window whose stored ChangeKey no longer matches
+                // the server, and the ones that are not stored at all because they were moved
+                // into the folder or restored. The reads are issued together.
+                Map<String, String> storedChangeKeys =
+                        store.readChangeKeysReceivedSince(mFolderId, windowStart);
+                Set<String> serverIds = new HashSet<String>();
+                List<ListenableFuture<Message>> changedReads =
+                        new ArrayList<ListenableFuture<Message>>();
+                int restoredCount = 0;
+                for (Message m : serverWindow)
+                {
+                    serverIds.add(m.getId());
+                    if (newIds.contains(m.getId()))
+                    {
+                        continue;
+                    }
+                    String storedChangeKey = storedChangeKeys.get(m.getId());
+                    if (storedChangeKey == null)
+                    {
+                        restoredCount++;
+                    }
+                    if (storedChangeKey == null || !storedChangeKey.equals(m.getChangeKey()))
+                    {
+                        changedReads.add(mApplication.getMailClient()
+                                .getMe()
+                                .getMessages()
+                                .getById(m.getId())
+                                .select(MESSAGE_HEADER_FIELDS)
+                                .read());
+                    }
+                }
+
+                // Stored messages received after the oldest message of the window, but
+                // missing from it, were deleted or moved out of the folder. Stored messages
+                // received at the same time as the oldest one are not compared, because the
+                // window can end between messages received at the same time.
+                long deletedSince = windowStart == Long.MIN_VALUE ? windowStart : windowStart + 1;
+                final List<String> deletedIds = new ArrayList<String>();
+                for (String storedId : store.readIdsReceivedSince(mFolderId, deletedSince))
+                {
+                    if (!serverIds.contains(storedId))
+                    {
+                        deletedIds.add(storedId);
+                    }
+                }
+
+                final int addedCount = newMessages.size() + restoredCount;
+                return Futures.transform(Futures.allAsList(changedReads),
+                        new Function<List<Message>, Boolean>()
+                {
+                    @Override
+                    public Boolean apply(List<Message> changedMessages)
+                    {
+                        applySyncedMessages(pageSize, generation, newMessages, changedMessages,
+                                deletedIds, addedCount);
+                        return true;
+                    }
+                });
+            }
+        });
+    }
+
+    // Writes the result of a sync to the store and the search index, and reloads the model
+    // from the store while generation is still the current page generation
+    private void applySyncedMessages(
+            int pageSize,
+            int generation,
+            List<Message> newMessages,
+            List<Message> changedMessages,
+            List<String> deletedIds,
+            int addedCount)
+    {
+        if (newMessages.isEmpty() && changedMessages.isEmpty() && deletedIds.isEmpty())
+        {
+            return;
+        }
+
+        MailMessageStore store = getStore();
+        List<Message> updatedMessages = new ArrayList<Message>(newMessages);
+        updatedMessages.addAll(changedMessages);
+        store.writeMessages(mFolderId, updatedMessages);
+        store.deleteMessages(deletedIds);
+        getSearchIndex().addMessages(mFolderId, updatedMessages);
+        getSearchIndex().removeMessages(deletedIds);
+
+        if (generation != mPageGeneration.get())
+        {
+            return;
+        }
+        List<Message> storedMessages = store.readMessages(
+                mFolderId,
+                Math.max(pageSize, mNextMessageNumber + addedCount - deletedIds.size()));
+        MailSnapshot snapshot = loadMessagesIntoModel(storedMessages, true);
+        mNextMessageNumber = storedMessages.size();
+
+        // The stored page was announced as the first page already. The synced page only
+        // refreshes the rows, so an open message and the list position are kept.
+        notifyMessagesAdded(
+                new OnMessagesAddedListener.MessageCollection(snapshot.getItems(), true));
+    }
+
+    // Brings the stored headers of the folder up to date and loads the first page into
+    // the model. Used by MailFolderSyncEngine. The store is read on the calling thread,
+    // so it must be a background thread, and the future completes when the sync is done.
+    ListenableFuture<Void> syncHeaders(final int pageSize)
+    {
+        mMessagePageSize = pageSize;
+        final int generation = mPageGeneration.incrementAndGet();
+        List<Message> storedMessages = getStore().readMessages(mFolderId, pageSize);
+        ListenableFuture<Boolean> synced;
+        if (storedMessages.isEmpty())
+        {
+            synced = Futures.immediateFuture(false);
+        }
+        else
+        {
+            loadMessagesIntoModel(storedMessages, true);
+            mNextMessageNumber = storedMessages.size();
+            synced = syncStoredMessages(pageSize, generation);
+        }
+
+        return Futures.transform(synced, new AsyncFunction<Boolean, Void>()
+        {
+            @Override
+            public ListenableFuture<Void> apply(Boolean syncFinished)
+            {
+                if (syncFinished)
+                {
+                    return Futures.immediateFuture(null);
+                }
+                return readFirstHeaderPage(pageSize, generation);
+            }
+        });
+    }
+
+    private ListenableFuture<Void> readFirstHeaderPage(final int pageSize, final int generation)
+    {
+        ListenableFuture<List<Message>> firstPage = mApplication.getMailClient()
+                .getMe()
+                .getFolders().getById(mFolderId)
+                .getMessages()
+                .select(MESSAGE_HEADER_FIELDS)
+                .top(pageSize)
+                .orderBy("DateTimeReceived desc")
+                .read();
+
+        return Futures.transform(firstPage, new Function<List<Message>, Void>()
+        {
+            @Override
+            public Void apply(List<Message> result)
+            {
+                saveMessagesToStore(result, true);
+                if (generation != mPageGeneration.get())
+                {
+                    return null;
+                }
+                MailSnapshot snapshot = loadMessagesIntoModel(result, true);
+                mNextMessageNumber = result.size();
+                mHasMoreMessages = result.size() >= pageSize;
+                notifyMessagesAdded(
+                        new OnMessagesAddedListener.MessageCollection(snapshot.getItems()));
+                return null;
+            }
+        });
+    }
+
+    // Models owned by MailFolderSyncEngine may have no listener
+    private void notifyMessagesAdded(OnMessagesAddedListener.MessageCollection messageCollection)
+    {
+        OnMessagesAddedListener listener = mMessageAddedListener;
+        if (listener != null)
         {
-            mMailMessages = new MailMessages();
+            listener.OnMessagesAdded(messageCollection);
         }
+    }
 
+    // Reads a page of messages from the service and saves it in the local store. A first
+    // page read again while the stored first page is shown is announced as a refresh.
+    private void readMessagePage(int pageSize, int skipToMessageNumber, final int generation,
+            boolean isRefresh)
+    {
+        final boolean isFirstPage = skipToMessageNumber == 0;
+        final boolean isAppendedPage = !isFirstPage || isRefresh;
         try
         {
             // retrieve a page of email messages asynchronously
             ListenableFuture<List<Message>> results = mApplication.getMailClient()
                     .getMe()
-                    .getFolders().getById("Inbox")
+                    .getFolders().getById(mFolderId)
                     .getMessages()
+                    .select(MESSAGE_HEADER_FIELDS)
                     .top(pageSize)
+                    .skip(skipToMessageNumber)
                     .orderBy("DateTimeReceived desc")
                     .read();
 
+            final int requestedMessageNumber = skipToMessageNumber;
             Futures.addCallback(
                     results, new FutureCallback<List<Message>>()
                     {
@@ -338,11 +828,24 @@ public class O365MailItemsModel
                         @Override
                         public void onSuccess(final List<Message> result)
                         {
-                            loadMessagesIntoModel(result);
+                            // A refresh was requested while this page was loading
+                            if (generation != mPageGeneration.get())
+                            {
+                                return;
+                            }
+
+                            saveMessagesToStore(result, isFirstPage);
+                            MailSnapshot snapshot = loadMessagesIntoModel(result, isFirstPage);
+
+                            // A short page means the end of the folder was reached
+                            mNextMessageNumber = requestedMessageNumber + result.size();
+                            mHasMoreMessages = result.size() >= mMessagePageSize;
+                            mIsLoadingMessages = false;
+
                             OnMessagesAddedListener.MessageCollection MessageItemData = new OnMessagesAddedListener
-                                    .MessageCollection(mMailMessages.ITEMS);
+                                    .MessageCollection(snapshot.getItems(), isAppendedPage);
 
-                            mMessageAddedListener.OnMessagesAdded(MessageItemData);
+                            notifyMessagesAdded(MessageItemData);
                         }
 
                         @Override
@@ -354,30 +857,372 @@ public class O365MailItemsModel
                                     ),
                                     "O365MailItemsModel.getMessageList"
                             );
+                            if (generation != mPageGeneration.get())
+                            {
+                                return;
+                            }
+                            mIsLoadingMessages = false;
                             OnMessagesAddedListener.MessageCollection eventData = new OnMessagesAddedListener
-                                    .MessageCollection(mMailMessages.ITEMS);
-                            mMessageAddedListener.OnMessagesAdded(eventData);
+                                    .MessageCollection(getMail().getItems(), isAppendedPage);
+                            notifyMessagesAdded(eventData);
                         }
                     }
             );
         }
         catch (Exception ex)
         {
+            if (generation == mPageGeneration.get())
+            {
+                mIsLoadingMessages = false;
+            }
             String exceptionMessage = ex.getMessage();
             Log.e("RetrieveMessagesTask", exceptionMessage);
         }
     }
 
-
-    private void loadMessagesIntoModel(List<Message> message)
+    private void saveMessagesToStore(List<Message> messages, boolean isFirstPage)
     {
         try
         {
-            this.getMail().ITEMS.clear();
-            this.getMail().ITEM_MAP.clear();
-            for (Message m : message)
+            if (isFirstPage)
+            {
+                getStore().replaceMessages(mFolderId, messages);
+                getSearchIndex().replaceFolder(mFolderId, messages);
+            }
+            else
+            {
+                getStore().writeMessages(mFolderId, messages);
+                getSearchIndex().addMessages(mFolderId, messages);
+            }
+        }
+        catch (Exception ex)
+        {
+            Log.e("Failed to store messages: " + ex.getMessage(),
+                    "O365MailItemsModel.saveMessagesToStore");
+        }
+    }
+
+    private void deleteMessagesFromStore(Collection<String> ids)
+    {
+        try
+        {
+            getStore().deleteMessages(ids);
+            getSearchIndex().removeMessages(ids);
+        }
+        catch (Exception ex)
+        {
+            Log.e("Failed to remove stored messages: " + ex.getMessage(),
+                    "O365MailItemsModel.deleteMessagesFromStore");
+        }
+    }
+
+    private MailSearchIndex getSearchIndex()
+    {
+        return MailSearchIndex.getInstance(mApplication);
+    }
+
+    private MailBodyCache getBodyCache()
+    {
+        return MailBodyCache.getInstance(mApplication);
+    }
+
+    private MailMessageStore getStore()
+    {
+        return MailMessageStore.getInstance(mApplication);
+    }
+
+    // Searches the subject, sender and preview of the messages in the local store and
+    // returns up to limit matches, newest first. Runs without the network on a
+    // background thread. Words match as prefixes and quoted words as a phrase, so
+    // 'bud "team offsite"' finds messages about the budget of the team offsite.
+    public ListenableFuture<List<O365Mail_Message>> searchMessages(
+            final String query,
+            final int limit)
+    {
+        final SettableFuture<List<O365Mail_Message>> result = SettableFuture.create();
+        AsyncController.getInstance().postAsyncTask(new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                try
+                {
+                    List<String> messageIds = getSearchIndex().search(query, limit);
+                    List<O365Mail_Message> mailMessages = new ArrayList<O365Mail_Message>();
+                    for (Message message : getStore().readMessagesById(messageIds))
+                    {
+                        // Reuse the loaded message, which may already have its body
+                        O365Mail_Message mailMessage = getMail().getItem(message.getId());
+                        if (mailMessage == null)
+                        {
+                            mailMessage = createMessage(message.getId(), message);
+                        }
+                        mailMessages.add(mailMessage);
+                    }
+                    result.set(mailMessages);
+                }
+                catch (Exception ex)
+                {
+                    Log.e("Failed to search messages: " + ex.getMessage(),
+                            "O365MailItemsModel.searchMessages");
+                    result.setException(ex);
+                }
+                return null;
+            }
+        });
+        return result;
+    }
+
+    // Returns a future that completes when the body and recipients of a loaded message
+    // are available. The first call reads them from the service and caches them,
+    // later calls complete immediately. A body the prefetcher is already reading is not
+    // read twice, and is no longer cancelled when it scrolls out of view.
+    public ListenableFuture<O365Mail_Message> fetchMessageBody(String messageId)
+    {
+        synchronized (mBodyFetches)
+        {
+            ListenableFuture<O365Mail_Message> bodyFetch = startBodyFetch(messageId);
+            if (!bodyFetch.isDone())
+            {
+                mOpenedBodyIds.add(messageId);
+            }
+            return bodyFetch;
+        }
+    }
+
+    // Starts reading a body for the prefetcher
+    ListenableFuture<O365Mail_Message> prefetchMessageBody(String messageId)
+    {
+        synchronized (mBodyFetches)
+        {
+            return startBodyFetch(messageId);
+        }
+    }
+
+    // Cancels a prefetch that is no longer needed. Bodies the user opened are left
+    // to finish. Returns true if the read was cancelled.
+    boolean cancelBodyPrefetch(String messageId)
+    {
+        ListenableFuture<O365Mail_Message> bodyFetch;
+        synchronized (mBodyFetches)
+        {
+            if (mOpenedBodyIds.contains(messageId))
+            {
+                return false;
+            }
+            bodyFetch = mBodyFetches.remove(messageId);
+        }
+        return bodyFetch != null && bodyFetch.cancel(true);
+    }
+
+    // Must be called while holding the mBodyFetches lock
+    private ListenableFuture<O365Mail_Message> startBodyFetch(final String messageId)
+    {
+        final O365Mail_Message mailMessage = getMail().getItem(messageId);
+        if (mailMessage == null)
+        {
+            return Futures.immediateFailedFuture(
+                    new IllegalArgumentException("No loaded message has the id " + messageId));
+        }
+        if (mailMessage.hasItemBody())
+        {
+            return Futures.immediateFuture(mailMessage);
+        }
+
+        ListenableFuture<O365Mail_Message> bodyFetch = mBodyFetches.get(messageId);
+        if (bodyFetch != null)
+        {
+            return bodyFetch;
+        }
+
+        ListenableFuture<Message> bodyMessage = mApplication.getMailClient()
+                .getMe()
+                .getMessages()
+                .getById(messageId)
+                .select(MESSAGE_BODY_FIELDS)
+                .read();
+
+        bodyFetch = Futures.transform(bodyMessage, new Function<Message, O365Mail_Message>()
+        {
+            @Override
+            public O365Mail_Message apply(Message message)
+            {
+                mailMessage.setBodyDetails(message);
+
+                // The list may have been reloaded while the body was read
+                O365Mail_Message loadedMessage = getMail().getItem(messageId);
+                if (loadedMessage == null || loadedMessage == mailMessage)
+                {
+                    return mailMessage;
+                }
+                loadedMessage.copyBodyDetails(mailMessage);
+                return loadedMessage;
+            }
+        });
+        mBodyFetches.put(messageId, bodyFetch);
+
+        final ListenableFuture<O365Mail_Message> finishedFetch = bodyFetch;
+        bodyFetch.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (mBodyFetches)
+                {
+                    if (mBodyFetches.get(messageId) == finishedFetch)
+                    {
+                        mBodyFetches.remove(messageId);
+                        mOpenedBodyIds.remove(messageId);
+                    }
+                }
+            }
+        }, new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        });
+        return bodyFetch;
+    }
+
+    // Returns a future that completes with the attachments of a loaded message. Only the
+    // name, type and size of each attachment are read, never the content. The list is
+    // cached on the O365Mail_Message.
+    public ListenableFuture<List<Attachment>> fetchAttachments(String messageId)
+    {
+        final O365Mail_Message mailMessage = getMail().getItem(messageId);
+        if (mailMessage == null)
+        {
+            return Futures.immediateFailedFuture(
+                    new IllegalArgumentException("No loaded message has the id " + messageId));
+        }
+        if (mailMessage.getAttachments() != null)
+        {
+            return Futures.immediateFuture(mailMessage.getAttachments());
+        }
+
+        ListenableFuture<List<Attachment>> attachments = mApplication.getMailClient()
+                .getMe()
+                .getMessages()
+                .getById(messageId)
+                .getAttachments()
+                .select(ATTACHMENT_FIELDS)
+                .read();
+
+        return Futures.transform(attachments, new Function<List<Attachment>, List<Attachment>>()
+        {
+            @Override
+            public List<Attachment> apply(List<Attachment> result)
+            {
+                mailMessage.setAttachments(result);
+                return mailMessage.getAttachments();
+            }
+        });
+    }
+
+    // Streams an attachment to target, resuming an earlier partial download of the same
+    // target. See AttachmentDownloader.
+    public ListenableFuture<File> downloadAttachment(
+            String messageId,
+            String attachmentId,
+            File target,
+            OnAttachmentProgressListener listener)
+    {
+        return AttachmentDownloader.getInstance(mApplication)
+                .download(messageId, attachmentId, target, listener);
+    }
+
+    // Reads the body of a loaded message if needed, renders it for display and passes
+    // both to the listener. The listener is called on a background thread, or on the
+    // calling thread when the rendered body was already cached.
+    public void getMessageBody(String messageId, final OnMessageBodyLoadedListener listener)
+    {
+        final ListenableFuture<O365Mail_Message> bodyFetch = fetchMessageBody(messageId);
+        ListenableFuture<CharSequence> render = Futures.transform(
+                bodyFetch, new AsyncFunction<O365Mail_Message, CharSequence>()
+                {
+                    @Override
+                    public ListenableFuture<CharSequence> apply(O365Mail_Message mailMessage)
+                    {
+                        return MailBodyRenderer.getInstance().render(mailMessage);
+                    }
+                });
+
+        Futures.addCallback(
+                render, new FutureCallback<CharSequence>()
+                {
+                    @Override
+                    public void onSuccess(CharSequence renderedBody)
+                    {
+                        listener.onMessageBodyLoaded(Futures.getUnchecked(bodyFetch), renderedBody);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t)
+                    {
+                        Log.e(
+                                "Failed to get message body: " + APIErrorMessageHelper.getErrorMessage(
+                                        t.getMessage()
+                                ),
+                                "O365MailItemsModel.getMessageBody"
+                        );
+                        listener.onMessageBodyLoaded(null, null);
+                    }
+                }
+        );
+    }
+
+    // Requests the page that follows the last loaded page. Returns false when a page is
+    // already being loaded or the whole folder has been read.
+    public boolean getNextMessagePage()
+    {
+        if (mIsLoadingMessages || !mHasMoreMessages || mMessagePageSize == 0)
+        {
+            return false;
+        }
+        getMessageList(mMessagePageSize, mNextMessageNumber);
+        return true;
+    }
+
+    // Called by the message list as it scrolls. Starts loading the next page when the
+    // last visible row comes within PREFETCH_THRESHOLD rows of the end of the list, and
+    // lets the prefetcher read the bodies of the visible messages
+    public void onMessageListScrolled(int firstVisiblePosition, int lastVisiblePosition)
+    {
+        if (lastVisiblePosition >= getMail().getItems().size() - PREFETCH_THRESHOLD)
+        {
+            getNextMessagePage();
+        }
+        mBodyPrefetcher.onVisibleRangeChanged(firstVisiblePosition, lastVisiblePosition);
+    }
+
+    public boolean hasMoreMessages()
+    {
+        return mHasMoreMessages;
+    }
+
+
+    // Wraps the messages in the message model and publishes them as the next snapshot.
+    // The new O365Mail_Message objects are built before the snapshot is swapped, so the
+    // swap itself only copies references.
+    private MailSnapshot loadMessagesIntoModel(List<Message> message, boolean clearExisting)
+    {
+        List<O365Mail_Message> mailMessages = new ArrayList<O365Mail_Message>(message.size());
+        try
+        {
+            for (Message m : message)
             {
                 O365Mail_Message mailMessage = this.createMessage(m.getId(), m);
+
+                // A reload of the same message keeps the body details that were already
+                // read, so the cached or prefetched body is not read again
+                O365Mail_Message loadedMessage = getMail().getItem(m.getId());
+                if (loadedMessage != null)
+                {
+                    mailMessage.copyBodyDetails(loadedMessage);
+                }
                 ItemBody itemBody = m.getBody();
                 if (itemBody != null)
                 {
@@ -385,7 +1230,7 @@ public class O365MailItemsModel
                 }
 
                 mailMessage.setSubject(m.getSubject());
-                addItem(mailMessage);
+                mailMessages.add(mailMessage);
             }
         }
         catch (Exception ex)
@@ -393,25 +1238,158 @@ public class O365MailItemsModel
             String exceptionMessage = ex.getMessage();
             Log.e("RetrievemessagesTask", exceptionMessage);
         }
+
+        // Messages that arrive while paging shift the $skip window, so a page
+        // can repeat messages that are already in the list. The snapshot skips them.
+        return getMail().update(clearExisting, mailMessages, Collections.<String>emptySet());
     }
 
-    private void addItem(O365Mail_Message item)
+    /**
+     * The loaded mail messages. Readers get an immutable snapshot of the message list and
+     * id map, so the list adapter and the detail views can use it on the UI thread while
+     * service callbacks load more messages. Writers build the next snapshot on their own
+     * thread and publish it with a single compare-and-set, starting over if another
+     * writer published first.
+     */
+    public class MailMessages
     {
-        this.getMail()
-                .ITEMS
-                .add(item);
-        this.getMail()
-                .ITEM_MAP
-                .put(item.id, item);
+        private final AtomicReference<MailSnapshot> mSnapshot =
+                new AtomicReference<MailSnapshot>(MailSnapshot.EMPTY);
+        private final ConversationIndex mConversations = new ConversationIndex();
+
+        // Returns the current snapshot. It never changes once it is returned.
+        public MailSnapshot getSnapshot()
+        {
+            return mSnapshot.get();
+        }
+
+        public List<O365Mail_Message> getItems()
+        {
+            return mSnapshot.get().getItems();
+        }
+
+        // Returns the loaded messages grouped by conversation. The index is updated with
+        // each snapshot rather than rebuilt from it.
+        public ConversationIndex getConversations()
+        {
+            return mConversations;
+        }
+
+        // Returns the loaded message with the given id, or null
+        public O365Mail_Message getItem(String id)
+        {
+            return mSnapshot.get().getItem(id);
+        }
+
+        private MailSnapshot removeItems(Collection<String> removedIds)
+        {
+            return update(false, Collections.<O365Mail_Message>emptyList(), removedIds);
+        }
+
+        // Publishes a snapshot that drops removedIds from the current messages, or all of
+        // them when clearExisting is set, and appends the added messages that are not
+        // already loaded. The conversation index is updated with the same difference while
+        // holding its lock, so concurrent writers update it in the order they published.
+        private MailSnapshot update(
+                boolean clearExisting,
+                List<O365Mail_Message> addedItems,
+                Collection<String> removedIds)
+        {
+            while (true)
+            {
+                MailSnapshot current = mSnapshot.get();
+                int capacity = addedItems.size() + (clearExisting ? 0 : current.getItems().size());
+                List<O365Mail_Message> items = new ArrayList<O365Mail_Message>(capacity);
+                Map<String, O365Mail_Message> itemMap = new HashMap<String, O365Mail_Message>(
+                        capacity * 4 / 3 + 1);
+                List<O365Mail_Message> droppedItems = new ArrayList<O365Mail_Message>();
+                List<O365Mail_Message> newItems = new ArrayList<O365Mail_Message>();
+
+                if (!clearExisting)
+                {
+                    for (O365Mail_Message item : current.getItems())
+                    {
+                        if (!removedIds.contains(item.getID()))
+                        {
+                            items.add(item);
+                            itemMap.put(item.getID(), item);
+                        }
+                        else
+                        {
+                            droppedItems.add(item);
+                        }
+                    }
+                }
+                for (O365Mail_Message item : addedItems)
+                {
+                    if (!itemMap.containsKey(item.getID()))
+                    {
+                        items.add(item);
+                        itemMap.put(item.getID(), item);
+                        newItems.add(item);
+                    }
+                }
+
+                MailSnapshot next = new MailSnapshot(current.getVersion() + 1, items, itemMap);
+                synchronized (mConversations)
+                {
+                    if (mSnapshot.compareAndSet(current, next))
+                    {
+                        if (clearExisting)
+                        {
+                            mConversations.clear();
+                        }
+                        else
+                        {
+                            mConversations.removeMessages(droppedItems);
+                        }
+                        mConversations.addMessages(newItems);
+                        return next;
+                    }
+                }
+            }
+        }
     }
 
     /**
-     * Helper class for providing content for user interfaces created by Android template wizards.
+     * An immutable version of the loaded message list and its id map
      */
-    public class MailMessages
+    public static final class MailSnapshot
     {
-        public List<O365Mail_Message> ITEMS = new ArrayList<O365Mail_Message>();
-        public Map<String, O365Mail_Message> ITEM_MAP = new HashMap<String, O365Mail_Message>();
+        private static final MailSnapshot EMPTY = new MailSnapshot(
+                0,
+                new ArrayList<O365Mail_Message>(),
+                new HashMap<String, O365Mail_Message>());
+
+        private final int mVersion;
+        private final List<O365Mail_Message> mItems;
+        private final Map<String, O365Mail_Message> mItemMap;
+
+        private MailSnapshot(
+                int version,
+                List<O365Mail_Message> items,
+                Map<String, O365Mail_Message> itemMap)
+        {
+            mVersion = version;
+            mItems = Collections.unmodifiableList(items);
+            mItemMap = Collections.unmodifiableMap(itemMap);
+        }
+
+        // Increases by one each time a snapshot replaces the previous one
+        public int getVersion()
+        {
+            return mVersion;
+        }
+
+        public List<O365Mail_Message> getItems()
+        {
+            return mItems;
+        }
+
+        public O365Mail_Message getItem(String id)
+        {
+            return mItemMap.get(id);
+        }
     }
 
     /**
@@ -421,22 +1399,19 @@ public class O365MailItemsModel
     {
         private String id;
         private String subject = " ";
-        private String recipients = "";
-        private String ccRecipients = "";
-        private ItemBody itemBody;
-        private String itemBodyString = "";
+        // The formatted recipient lists, or null when they have to be formatted again
+        private volatile String recipients;
+        private volatile String ccRecipients;
         private Message thisMessage;
+        private volatile boolean hasBodyDetails;
+        private volatile List<Attachment> attachments;
 
-        // Sets the subject property of a message and
-        // sets the message item body (content) with the
-        // same subject string
+        // Sets the subject property of a message
         public void setSubject(String Subject)
         {
             subject = Subject;
-            if (this.itemBody != null)
+            if (thisMessage != null)
             {
-                this.itemBody.setContent(Subject);
-                this.itemBody.setContentType(BodyType.Text);
                 thisMessage.setSubject(Subject);
             }
         }
@@ -445,6 +1420,7 @@ public class O365MailItemsModel
         {
             thisMessage = message;
             this.id = message.getId();
+            invalidateRecipients();
         }
 
         // Updates the subject of the message
@@ -457,68 +1433,53 @@ public class O365MailItemsModel
             }
         }
 
-        // Returns a comma delimited list of recipient
-        // email addresses
+        // Returns a semicolon delimited list of recipient
+        // email addresses. The string is formatted once and reused
+        // until the recipients are replaced through this message.
         public String getMessageRecipients()
         {
-            try
+            String recipientString = recipients;
+            if (recipientString == null)
             {
-                // Get any previously invited attendees
-                if (thisMessage.getToRecipients() != null)
+                try
                 {
-                    recipients = makeRecipientsList(thisMessage.getToRecipients());
+                    recipientString = RecipientListCodec.format(thisMessage.getToRecipients());
+                    recipients = recipientString;
+                }
+                catch (Exception ex)
+                {
+                    Log.e("Exception on get recipients: " + ex.getMessage(), "");
+                    recipientString = "";
                 }
             }
-            catch (Exception ex)
-            {
-                Log.e("Exception on get recipients: " + ex.getMessage(), "");
-            }
-            return recipients;
+            return recipientString;
         }
 
         public String getCCMessageRecipients()
         {
-            try
+            String recipientString = ccRecipients;
+            if (recipientString == null)
             {
-                // Get any CC recipients
-                if (thisMessage.getCcRecipients() != null)
+                try
                 {
-                    ccRecipients = makeRecipientsList(thisMessage.getCcRecipients());
+                    recipientString = RecipientListCodec.format(thisMessage.getCcRecipients());
+                    ccRecipients = recipientString;
                 }
-            }
-            catch (Exception ex)
-            {
-                Log.e("Exception on get CC recipients: " + ex.getMessage(), "");
-            }
-            return ccRecipients;
-        }
-
-        private String makeRecipientsList(List<Recipient> recipients)
-        {
-            String recipientString = "";
-            for (Recipient r : recipients)
-            {
-                String charSeparator = "";
-                String recipientName = r.getEmailAddress().getAddress();
-
-                if (recipients.size() > 1)
+                catch (Exception ex)
                 {
-                    charSeparator = ";";
+                    Log.e("Exception on get CC recipients: " + ex.getMessage(), "");
+                    recipientString = "";
                 }
-
-                recipientString += recipientName + charSeparator;
             }
-
-            // Trim off trailing space and the comma that trails the recipient list
-            recipientString = recipientString.trim();
-            if (recipientString.endsWith(";"))
-            {
-                recipientString = recipientString.substring(0, recipientString.length() - 1);
-            }
-
             return recipientString;
         }
 
+        private void invalidateRecipients()
+        {
+            recipients = null;
+            ccRecipients = null;
+        }
+
 
         // Returns the email address of the sender
         public String getFrom()
@@ -529,6 +1490,25 @@ public class O365MailItemsModel
                     .getAddress();
         }
 
+        // Messages without a conversation, such as one being composed, are a
+        // conversation of their own
+        public String getConversationId()
+        {
+            String conversationId = thisMessage.getConversationId();
+            return conversationId == null ? id : conversationId;
+        }
+
+        public boolean isRead()
+        {
+            return Boolean.TRUE.equals(thisMessage.getIsRead());
+        }
+
+        public long getDateTimeReceivedMillis()
+        {
+            Calendar received = thisMessage.getDateTimeReceived();
+            return received == null ? 0 : received.getTimeInMillis();
+        }
+
         // Returns the subject of the message
         public String getSubject()
         {
@@ -551,73 +1531,100 @@ public class O365MailItemsModel
             return this.id;
         }
 
+        public String getChangeKey()
+        {
+            return thisMessage.getChangeKey();
+        }
+
         public void setID(String newId)
         {
             id = newId;
         }
 
+        // The body is kept in the MailBodyCache rather than on the message, so
+        // only recently opened bodies take up memory
         public void setItemBody(ItemBody body)
         {
-            this.itemBody = body;
-            this.itemBodyString = body.getContent();
+            getBodyCache().put(id, thisMessage.getChangeKey(), body.getContent());
         }
 
+        // Returns the body from the cache, or an empty string if it was never
+        // read or has since been dropped from the cache
         public String getItemBody()
         {
-            return itemBodyString;
+            String body = getBodyCache().get(id, thisMessage.getChangeKey());
+            return body == null ? "" : body;
         }
 
-        public Message getMessage()
+        // List loads leave the body and recipients out, so they are only present once
+        // the message was opened or prefetched
+        public boolean hasItemBody()
         {
-            return thisMessage;
+            return hasBodyDetails && getBodyCache().contains(id, thisMessage.getChangeKey());
         }
 
-        // Add new recipients to the existing list of message recipients
-        public void setMessageRecipients(String recipients)
+        // Returns the short plain text preview the service sends with the message header
+        public String getBodyPreview()
+        {
+            String preview = thisMessage.getBodyPreview();
+            return preview == null ? "" : preview;
+        }
+
+        // Caches the fields read by fetchMessageBody on this message
+        void setBodyDetails(Message message)
         {
-            if (thisMessage.getToRecipients() != null)
+            thisMessage.setToRecipients(message.getToRecipients());
+            thisMessage.setCcRecipients(message.getCcRecipients());
+            invalidateRecipients();
+            ItemBody body = message.getBody();
+            if (body == null)
             {
-                thisMessage.getToRecipients().clear();
+                body = new ItemBody();
+                body.setContent("");
             }
+            setItemBody(body);
+            hasBodyDetails = true;
+        }
 
-
-            Pattern pattern;
-            Matcher matcher;
-
-            String EMAIL_PATTERN =
-                    "^[_A-Za-z0-9-\\+]+(\\.[_A-Za-z0-9-]+)*@"
-                            + "[A-Za-z0-9-]+(\\.[A-Za-z0-9]+)*(\\.[A-Za-z]{2,})$";
-            pattern = Pattern.compile(EMAIL_PATTERN);
-
-            String[] recipientArray = recipients.split(";");
-            for (String recipientString : recipientArray)
+        // Takes over the body details of an earlier copy of the same message, unless the
+        // message changed on the server since that copy was read
+        void copyBodyDetails(O365Mail_Message loadedMessage)
+        {
+            String changeKey = thisMessage.getChangeKey();
+            if (!loadedMessage.hasBodyDetails || changeKey == null
+                    || !changeKey.equals(loadedMessage.getChangeKey()))
             {
-                // Add recipient if recipientString is an email address
-                matcher = pattern.matcher(recipientString);
-                if (matcher.matches())
-                {
-                    makeARecipient(recipientString.trim());
-                }
+                return;
             }
+            thisMessage.setToRecipients(loadedMessage.thisMessage.getToRecipients());
+            thisMessage.setCcRecipients(loadedMessage.thisMessage.getCcRecipients());
+            invalidateRecipients();
+            attachments = loadedMessage.attachments;
+            hasBodyDetails = true;
         }
 
-        private void makeARecipient(String aRecipient)
+        public Message getMessage()
         {
-            this.recipients = aRecipient;
-            Recipient recipient = new Recipient();
-            EmailAddress email = new EmailAddress();
-            email.setAddress(aRecipient);
-            recipient.setEmailAddress(email);
+            return thisMessage;
+        }
 
-            // Get the current list of message recipients and add the new recipient
-            // to the list
-            List<Recipient> listRecipients = thisMessage.getToRecipients();
-            if (listRecipients == null)
-            {
-                listRecipients = new ArrayList<Recipient>();
-            }
-            listRecipients.add(recipient);
-            thisMessage.setToRecipients(listRecipients);
+        // Returns the attachments read by fetchAttachments, or null if they were not read
+        public List<Attachment> getAttachments()
+        {
+            return attachments;
+        }
+
+        void setAttachments(List<Attachment> attachmentList)
+        {
+            attachments = Collections.unmodifiableList(new ArrayList<Attachment>(attachmentList));
+        }
+
+        // Replaces the message recipients with the valid email addresses
+        // in a semicolon delimited list
+        public void setMessageRecipients(String recipients)
+        {
+            thisMessage.setToRecipients(RecipientListCodec.parseRecipients(recipients));
+            invalidateRecipients();
         }
 
 
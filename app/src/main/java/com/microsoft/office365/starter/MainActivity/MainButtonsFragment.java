@@ -98,8 +98,7 @@ public class MainButtonsFragment extends Fragment implements OnClickListener {
 		case R.id.calendarButton:
 			capability = Constants.CALENDAR_CAPABILITY;
 			if (mApplication.getCalendarModel() != null) {
-				mApplication.getCalendarModel().getCalendar().ITEMS.clear();
-				mApplication.getCalendarModel().getCalendar().ITEM_MAP.clear();
+				mApplication.getCalendarModel().getCalendar().clear();
 			}
 			break;
         case R.id.mailButton:
@@ -263,6 +263,16 @@ public class O365APIsStart_Application extends Application {
         return mCalendarClient;
     }
 
+    // Returns the root of the mail REST API, for requests the OutlookClient
+    // cannot make, such as streaming an attachment
+    public String getMailEndpointUri() {
+        return getService(Constants.MAIL_CAPABILITY).getserviceEndpointUri();
+    }
+
+    public String getMailResourceId() {
+        return getService(Constants.MAIL_CAPABILITY).getserviceResourceId();
+    }
+
     // This method should get and cache the client. Returned the cached client.
     // It should be good for the life of the app.
     public OutlookClient getMailClient() {
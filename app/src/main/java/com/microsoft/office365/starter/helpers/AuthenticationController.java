@@ -174,6 +174,23 @@ public class AuthenticationController {
         return getInstance().dependencyResolver;
     }
 
+    /**
+     * Gets an access token for a resource from the token cache, refreshing it if needed.
+     * Blocks on the token service, so it must not be called on the UI thread.
+     *
+     * @param resourceId URL of the resource the token is for.
+     * @return the access token
+     */
+    public String getAccessToken(final String resourceId) throws Exception {
+        AuthenticationResult authenticationResult = getAuthenticationContext()
+                .acquireTokenSilentSync(resourceId, Constants.CLIENT_ID, mLoggedInUser);
+        if (authenticationResult == null
+                || authenticationResult.getStatus() != AuthenticationStatus.Succeeded) {
+            throw new Exception("No access token is available for " + resourceId);
+        }
+        return authenticationResult.getAccessToken();
+    }
+
     private boolean verifyAuthenticationContext() {
         if (this.contextActivity == null) {
             Log.e(ComponentID, "Must set context activity");
@@ -0,0 +1,149 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.helpers;
+
+/**
+ * Validates the email addresses typed as mail recipients and event attendees. The scanner
+ * accepts exactly the addresses matched by the pattern the mail and calendar code compiled on
+ * every call before:
+ * <pre>
+ * ^[_A-Za-z0-9-\+]+(\.[_A-Za-z0-9-]+)*@[A-Za-z0-9-]+(\.[A-Za-z0-9]+)*(\.[A-Za-z]{2,})$
+ * </pre>
+ * It reads each character once and allocates nothing, so a semicolon delimited list can be
+ * validated in place, one address range at a time.
+ */
+public final class EmailAddressValidator
+{
+    private EmailAddressValidator()
+    {
+    }
+
+    public static boolean isEmailAddress(CharSequence address)
+    {
+        return address != null && isEmailAddress(address, 0, address.length());
+    }
+
+    // Validates the characters of text from start (inclusive) to end (exclusive)
+    public static boolean isEmailAddress(CharSequence text, int start, int end)
+    {
+        // Local part: dot separated segments that may not be empty. '+' is only
+        // allowed before the first dot.
+        int i = start;
+        int segmentLength = 0;
+        boolean inFirstSegment = true;
+        while (i < end)
+        {
+            char c = text.charAt(i);
+            if (c == '@')
+            {
+                break;
+            }
+            if (c == '.')
+            {
+                if (segmentLength == 0)
+                {
+                    return false;
+                }
+                inFirstSegment = false;
+                segmentLength = 0;
+            }
+            else if (isLetterOrDigit(c) || c == '_' || c == '-' || (c == '+' && inFirstSegment))
+            {
+                segmentLength++;
+            }
+            else
+            {
+                return false;
+            }
+            i++;
+        }
+        if (i == end || segmentLength == 0)
+        {
+            return false;
+        }
+
+        // Domain: at least two labels. The first label may contain '-', the labels
+        // between the first and the last are letters and digits, and the last label is
+        // two or more letters.
+        int completedLabels = 0;
+        int labelLength = 0;
+        boolean labelHasHyphen = false;
+        boolean labelIsLetters = true;
+        for (i = i + 1; i < end; i++)
+        {
+            char c = text.charAt(i);
+            if (c == '.')
+            {
+                if (labelLength == 0 || (labelHasHyphen && completedLabels > 0))
+                {
+                    return false;
+                }
+                completedLabels++;
+                labelLength = 0;
+                labelHasHyphen = false;
+                labelIsLetters = true;
+            }
+            else if (isLetter(c))
+            {
+                labelLength++;
+            }
+            else if (c >= '0' && c <= '9')
+            {
+                labelLength++;
+                labelIsLetters = false;
+            }
+            else if (c == '-')
+            {
+                labelLength++;
+                labelHasHyphen = true;
+                labelIsLetters = false;
+            }
+            else
+            {
+                return false;
+            }
+        }
+        return completedLabels > 0 && labelLength >= 2 && labelIsLetters;
+    }
+
+    private static boolean isLetter(char c)
+    {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isLetterOrDigit(char c)
+    {
+        return isLetter(c) || (c >= '0' && c <= '9');
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
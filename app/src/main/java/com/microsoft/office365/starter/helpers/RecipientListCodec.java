@@ -0,0 +1,166 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.helpers;
+
+import com.microsoft.outlookservices.Attendee;
+import com.microsoft.outlookservices.EmailAddress;
+import com.microsoft.outlookservices.Recipient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts between recipient lists and the semicolon delimited address strings shown in the
+ * mail and calendar views. Both directions make a single pass over their input. Formatting
+ * appends into a builder that is reused by the calling thread, and parsing validates each
+ * address in place so only the valid addresses are copied out of the input string. As before,
+ * an entry with whitespace around the address is not a valid address.
+ */
+public final class RecipientListCodec
+{
+    // Builders that grew past this size while formatting a very large list are not kept
+    private static final int MAX_RETAINED_BUILDER_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> sBuilder = new ThreadLocal<StringBuilder>()
+    {
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder(256);
+        }
+    };
+
+    private interface RecipientFactory<T extends Recipient>
+    {
+        T create();
+    }
+
+    private static final RecipientFactory<Recipient> RECIPIENTS = new RecipientFactory<Recipient>()
+    {
+        @Override
+        public Recipient create()
+        {
+            return new Recipient();
+        }
+    };
+
+    private static final RecipientFactory<Attendee> ATTENDEES = new RecipientFactory<Attendee>()
+    {
+        @Override
+        public Attendee create()
+        {
+            return new Attendee();
+        }
+    };
+
+    private RecipientListCodec()
+    {
+    }
+
+    // Returns the addresses of the recipients separated by semicolons
+    public static String format(List<? extends Recipient> recipients)
+    {
+        if (recipients == null || recipients.isEmpty())
+        {
+            return "";
+        }
+
+        StringBuilder builder = sBuilder.get();
+        builder.setLength(0);
+        for (int i = 0, size = recipients.size(); i < size; i++)
+        {
+            EmailAddress email = recipients.get(i).getEmailAddress();
+            String address = email == null ? null : email.getAddress();
+            if (address == null)
+            {
+                continue;
+            }
+            if (builder.length() > 0)
+            {
+                builder.append(';');
+            }
+            builder.append(address);
+        }
+
+        String recipientString = builder.toString();
+        if (builder.capacity() > MAX_RETAINED_BUILDER_CAPACITY)
+        {
+            sBuilder.remove();
+        }
+        return recipientString;
+    }
+
+    // Returns a recipient for each valid email address in a semicolon delimited list
+    public static List<Recipient> parseRecipients(String recipients)
+    {
+        return parse(recipients, RECIPIENTS);
+    }
+
+    // Returns an attendee for each valid email address in a semicolon delimited list
+    public static List<Attendee> parseAttendees(String attendees)
+    {
+        return parse(attendees, ATTENDEES);
+    }
+
+    private static <T extends Recipient> List<T> parse(String list, RecipientFactory<T> factory)
+    {
+        List<T> recipients = new ArrayList<T>();
+        if (list == null || list.length() == 0)
+        {
+            return recipients;
+        }
+
+        int length = list.length();
+        int start = 0;
+        while (start <= length)
+        {
+            int end = list.indexOf(';', start);
+            if (end < 0)
+            {
+                end = length;
+            }
+
+            if (EmailAddressValidator.isEmailAddress(list, start, end))
+            {
+                EmailAddress email = new EmailAddress();
+                email.setAddress(list.substring(start, end));
+                T recipient = factory.create();
+                recipient.setEmailAddress(email);
+                recipients.add(recipient);
+            }
+            start = end + 1;
+        }
+        return recipients;
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************
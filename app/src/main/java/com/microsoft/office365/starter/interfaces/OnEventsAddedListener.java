@@ -15,14 +15,28 @@ import com.microsoft.office365.starter.Calendar.O365CalendarModel;
 public interface OnEventsAddedListener {
 	class setEventCollection {
 		List<O365CalendarModel.O365Calendar_Event> mEventCollection;
+		boolean mIsAppendedPage;
 
 		public List<O365CalendarModel.O365Calendar_Event> getEventCollection() {
 			return mEventCollection;
 		}
 
+		// True when the events were appended to the list while paging rather
+		// than loaded as a fresh first page
+		public boolean isAppendedPage() {
+			return mIsAppendedPage;
+		}
+
 		public setEventCollection(
 				List<O365CalendarModel.O365Calendar_Event> eventCollection) {
+			this(eventCollection, false);
+		}
+
+		public setEventCollection(
+				List<O365CalendarModel.O365Calendar_Event> eventCollection,
+				boolean isAppendedPage) {
 			mEventCollection = eventCollection;
+			mIsAppendedPage = isAppendedPage;
 		}
 
 	}
@@ -11,14 +11,28 @@ import java.util.List;
 public interface OnMessagesAddedListener {
     class MessageCollection {
         List<O365MailItemsModel.O365Mail_Message> mMessageCollection;
+        boolean mIsAppendedPage;
 
         public List<O365MailItemsModel.O365Mail_Message> getMessageCollection() {
             return mMessageCollection;
         }
 
+        // True when the messages were appended to the list while paging, or refreshed
+        // in place after the list was shown, rather than loaded as a fresh first page
+        public boolean isAppendedPage() {
+            return mIsAppendedPage;
+        }
+
         public MessageCollection(
                 List<O365MailItemsModel.O365Mail_Message> messageCollection) {
+            this(messageCollection, false);
+        }
+
+        public MessageCollection(
+                List<O365MailItemsModel.O365Mail_Message> messageCollection,
+                boolean isAppendedPage) {
             mMessageCollection = messageCollection;
+            mIsAppendedPage = isAppendedPage;
         }
 
     }
@@ -4,6 +4,8 @@
 
 package com.microsoft.office365.starter.interfaces;
 
+import java.util.Map;
+
 public interface OnOperationCompleteListener {
 	class OperationResult {
 		String mOperationResult;
@@ -34,6 +36,24 @@ public interface OnOperationCompleteListener {
 
 	}
 
+	// Result of an operation applied to several entities at once. The id is
+	// null; getFailures maps the id of each entity the operation failed on to
+	// the error reported for it.
+	class BatchOperationResult extends OperationResult {
+		Map<String, String> mFailures;
+
+		public Map<String, String> getFailures() {
+			return mFailures;
+		}
+
+		public BatchOperationResult(String operation, String operationResult,
+				Map<String, String> failures) {
+			super(operation, operationResult, null);
+			mFailures = failures;
+		}
+
+	}
+
 	public void onOperationComplete(OperationResult opResult);
 }
 // *********************************************************
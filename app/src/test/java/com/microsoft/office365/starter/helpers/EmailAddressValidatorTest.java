@@ -0,0 +1,316 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license. See full license at the bottom of this file.
+ */
+
+package com.microsoft.office365.starter.helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks EmailAddressValidator against the pattern it replaced, on hand picked addresses and on
+ * a generated corpus, and times both on a list of 10,000 recipients.
+ */
+public class EmailAddressValidatorTest
+{
+    // The pattern the mail and calendar code compiled on every call before
+    private static final String EMAIL_PATTERN =
+            "^[_A-Za-z0-9-\\+]+(\\.[_A-Za-z0-9-]+)*@[A-Za-z0-9-]+(\\.[A-Za-z0-9]+)*(\\.[A-Za-z]{2,})$";
+
+    private static final Pattern EMAIL = Pattern.compile(EMAIL_PATTERN);
+
+    // Characters the pattern treats differently, plus a few it never accepts
+    private static final String ALPHABET = "aZ09_-+.@ !#\u00e9";
+
+    private static final long SEED = 20150601L;
+    private static final int CORPUS_SIZE = 500000;
+    private static final int RECIPIENT_COUNT = 10000;
+    private static final int BENCHMARK_ROUNDS = 10;
+
+    @Test
+    public void matchesPatternOnKnownAddresses()
+    {
+        String[] addresses = {
+                "alex@contoso.com",
+                "alex.wilber@contoso.onmicrosoft.com",
+                "alex+news@contoso.com",
+                "alex.w+news@contoso.com",
+                "a_b-c@my-domain.co",
+                "alex@my-sub.domain.com",
+                "alex@sub.my-domain.com",
+                "alex@contoso.c",
+                "alex@contoso.c0m",
+                "alex@contoso",
+                "alex@.com",
+                "alex@contoso..com",
+                ".alex@contoso.com",
+                "alex.@contoso.com",
+                "alex..w@contoso.com",
+                "@contoso.com",
+                "alex@",
+                "alex",
+                "",
+                " alex@contoso.com",
+                "alex@contoso.com ",
+                "al ex@contoso.com",
+                "alex@@contoso.com",
+                "alex@con@toso.com",
+                "alex@123.45.com",
+                "alex@contoso.com.",
+                "-@-.aa",
+                "+@a.bc"
+        };
+        for (String address : addresses)
+        {
+            assertEquals(address, EMAIL.matcher(address).matches(),
+                    EmailAddressValidator.isEmailAddress(address));
+        }
+    }
+
+    @Test
+    public void matchesPatternOnGeneratedCorpus()
+    {
+        for (String address : makeCorpus(new Random(SEED), CORPUS_SIZE))
+        {
+            assertEquals(address, EMAIL.matcher(address).matches(),
+                    EmailAddressValidator.isEmailAddress(address));
+        }
+    }
+
+    @Test
+    public void validatesRangesOfARecipientList()
+    {
+        List<String> recipients = makeRecipients(new Random(SEED), RECIPIENT_COUNT);
+        StringBuilder recipientList = new StringBuilder();
+        for (String recipient : recipients)
+        {
+            recipientList.append(recipient).append(';');
+        }
+
+        int start = 0;
+        for (String recipient : recipients)
+        {
+            int end = start + recipient.length();
+            assertEquals(recipient, EMAIL.matcher(recipient).matches(),
+                    EmailAddressValidator.isEmailAddress(recipientList, start, end));
+            start = end + 1;
+        }
+    }
+
+    // Times the validator against the pattern on 10,000 recipients. The pattern is timed
+    // both compiled once and compiled on every call, the way it was used before. Only the
+    // results are asserted, the timings are printed.
+    @Test
+    public void benchmarkTenThousandRecipients()
+    {
+        List<String> recipients = makeRecipients(new Random(SEED), RECIPIENT_COUNT);
+
+        // Warm up all three, so the timings are of compiled code
+        int expected = countWithValidator(recipients);
+        assertEquals(expected, countWithPattern(recipients));
+        assertEquals(expected, countCompilingPattern(recipients));
+
+        long validatorNanos = Long.MAX_VALUE;
+        long patternNanos = Long.MAX_VALUE;
+        long compilingPatternNanos = Long.MAX_VALUE;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++)
+        {
+            long start = System.nanoTime();
+            assertEquals(expected, countWithValidator(recipients));
+            validatorNanos = Math.min(validatorNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            assertEquals(expected, countWithPattern(recipients));
+            patternNanos = Math.min(patternNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            assertEquals(expected, countCompilingPattern(recipients));
+            compilingPatternNanos = Math.min(compilingPatternNanos, System.nanoTime() - start);
+        }
+
+        System.out.println(String.format(
+                "%d recipients, best of %d rounds: validator %.2f ms, compiled pattern %.2f ms,"
+                        + " pattern compiled per call %.2f ms",
+                recipients.size(),
+                BENCHMARK_ROUNDS,
+                validatorNanos / 1e6,
+                patternNanos / 1e6,
+                compilingPatternNanos / 1e6));
+    }
+
+    private static int countWithValidator(List<String> recipients)
+    {
+        int valid = 0;
+        for (String recipient : recipients)
+        {
+            if (EmailAddressValidator.isEmailAddress(recipient))
+            {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    private static int countWithPattern(List<String> recipients)
+    {
+        int valid = 0;
+        for (String recipient : recipients)
+        {
+            if (EMAIL.matcher(recipient).matches())
+            {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    private static int countCompilingPattern(List<String> recipients)
+    {
+        int valid = 0;
+        for (String recipient : recipients)
+        {
+            if (Pattern.compile(EMAIL_PATTERN).matcher(recipient).matches())
+            {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    // Mostly valid addresses, with every tenth one broken the way typing breaks them
+    private static List<String> makeRecipients(Random random, int count)
+    {
+        List<String> recipients = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            String address = makeAddress(random);
+            recipients.add(i % 10 == 9 ? mutate(random, address) : address);
+        }
+        return recipients;
+    }
+
+    // Random strings over ALPHABET, well formed addresses, and well formed addresses with
+    // one character changed, in equal parts
+    private static List<String> makeCorpus(Random random, int count)
+    {
+        List<String> corpus = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            switch (i % 3)
+            {
+                case 0:
+                    corpus.add(makeRandomString(random, random.nextInt(16)));
+                    break;
+                case 1:
+                    corpus.add(makeAddress(random));
+                    break;
+                default:
+                    corpus.add(mutate(random, makeAddress(random)));
+                    break;
+            }
+        }
+        return corpus;
+    }
+
+    private static String makeAddress(Random random)
+    {
+        StringBuilder address = new StringBuilder();
+        int localSegments = 1 + random.nextInt(3);
+        for (int i = 0; i < localSegments; i++)
+        {
+            if (i > 0)
+            {
+                address.append('.');
+            }
+            address.append(makeLabel(random, "abcxyzABC019_-"));
+            if (i == 0 && random.nextInt(4) == 0)
+            {
+                address.append('+').append(makeLabel(random, "abc019"));
+            }
+        }
+        address.append('@').append(makeLabel(random, "abcxyz019-"));
+        int middleLabels = random.nextInt(3);
+        for (int i = 0; i < middleLabels; i++)
+        {
+            address.append('.').append(makeLabel(random, "abcxyz019"));
+        }
+        return address.append('.').append(makeLabel(random, "comorgnetuk")).toString();
+    }
+
+    private static String makeLabel(Random random, String characters)
+    {
+        StringBuilder label = new StringBuilder();
+        int length = 1 + random.nextInt(8);
+        for (int i = 0; i < length; i++)
+        {
+            label.append(characters.charAt(random.nextInt(characters.length())));
+        }
+        return label.toString();
+    }
+
+    private static String makeRandomString(Random random, int length)
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++)
+        {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+
+    // Replaces, inserts or deletes one character
+    private static String mutate(Random random, String address)
+    {
+        StringBuilder mutated = new StringBuilder(address);
+        int position = random.nextInt(address.length());
+        char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        switch (random.nextInt(3))
+        {
+            case 0:
+                mutated.setCharAt(position, c);
+                break;
+            case 1:
+                mutated.insert(position, c);
+                break;
+            default:
+                mutated.deleteCharAt(position);
+                break;
+        }
+        return mutated.toString();
+    }
+}
+
+// *********************************************************
+//
+// O365-Android-Start, https://github.com/OfficeDev/O365-Android-Start
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+// *********************************************************